@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package bench;
+
+import java.io.File;
+
+import de.loskutov.fs.command.FS;
+
+/**
+ * Runs all copy and matching engine benchmarks. The engines do not need a running
+ * Eclipse, so this is a plain Java application (FileSync and org.eclipse.core.runtime
+ * on the class path are enough). The builder is measured in a running workspace by
+ * {@link WorkspaceBenchmarks}.
+ * <p>
+ * Usage: AllBenchmarks [-csv file] [filter regexp]
+ * <p>
+ * Example: -Dbench.sizes=1048576 -Dbench.encodings=UTF-8 AllBenchmarks CopyDelegate1
+ * @author Andrey
+ */
+public class AllBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        String filter = null;
+        File csv = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("-csv".equals(args[i]) && i + 1 < args.length) {
+                csv = new File(args[++i]);
+            } else {
+                filter = args[i];
+            }
+        }
+        // errors are reported by the benchmarks itself, and there is no platform log
+        FS.enableLogging = false;
+
+        BenchRunner runner = new BenchRunner(filter, System.out);
+        PathMatchBenchmarks.runAll(runner);
+        LineIOBenchmarks.runAll(runner);
+        CopyBenchmarks.runAll(runner);
+        System.out.println("Consumed: " + runner.getSink());
+        if (csv != null) {
+            runner.writeCsv(csv);
+            System.out.println("Results written to " + csv.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+/**
+ * Generates reproducible benchmark input and parses benchmark parameters.
+ * @author Andrey
+ */
+public final class BenchData {
+
+    private static final String[] WORDS = { "public", "void", "value", "name",
+        "sync", "file", "path", "<entry>", "</entry>", "=", "äöü", "42" };
+
+    /** only representable in UTF-8 */
+    private static final String UNICODE_WORD = "€中";
+
+    private BenchData() {
+        // don't instantiate me
+    }
+
+    /**
+     * @param key system property name with comma separated list of int values
+     * @param defaults used if the property is not set
+     * @return parameter values
+     */
+    public static int[] getInts(String key, int[] defaults) {
+        String value = System.getProperty(key);
+        if (value == null || value.trim().length() == 0) {
+            return defaults;
+        }
+        StringTokenizer st = new StringTokenizer(value, ",");
+        int[] result = new int[st.countTokens()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = Integer.parseInt(st.nextToken().trim());
+        }
+        return result;
+    }
+
+    /**
+     * @param key system property name with comma separated list of values
+     * @param defaults used if the property is not set
+     * @return parameter values
+     */
+    public static String[] getStrings(String key, String[] defaults) {
+        String value = System.getProperty(key);
+        if (value == null || value.trim().length() == 0) {
+            return defaults;
+        }
+        StringTokenizer st = new StringTokenizer(value, ",");
+        String[] result = new String[st.countTokens()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = st.nextToken().trim();
+        }
+        return result;
+    }
+
+    /**
+     * @param keyCount
+     * @return variables map with keys "key0" .. "key[keyCount-1]"
+     */
+    public static Properties createVariables(int keyCount) {
+        Properties props = new Properties();
+        for (int i = 0; i < keyCount; i++) {
+            props.setProperty("key" + i, "value_of_the_key_" + i);
+        }
+        return props;
+    }
+
+    /**
+     * Creates text with lines of given length. If there are variables, every line
+     * contains one "${key}" reference.
+     * @param size approximate text size in characters
+     * @param lineLength line length without line end
+     * @param keyCount number of variables to refer
+     * @param unicode true to use characters not representable in ISO-8859-1
+     * @return the text
+     */
+    public static String createText(int size, int lineLength, int keyCount,
+            boolean unicode) {
+        Random random = new Random(size * 31L + lineLength * 17L + keyCount);
+        StringBuffer sb = new StringBuffer(size + lineLength);
+        StringBuffer line = new StringBuffer(lineLength + 32);
+        int lineNumber = 0;
+        while (sb.length() < size) {
+            line.setLength(0);
+            if (keyCount > 0) {
+                line.append("${key").append(lineNumber % keyCount).append("} ");
+            }
+            while (line.length() < lineLength) {
+                if (unicode && random.nextInt(8) == 0) {
+                    line.append(UNICODE_WORD);
+                } else {
+                    line.append(WORDS[random.nextInt(WORDS.length)]);
+                }
+                line.append(' ');
+            }
+            line.setLength(lineLength);
+            sb.append(line).append(lineNumber % 2 == 0 ? "\n" : "\r\n");
+            lineNumber++;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param size
+     * @return random binary content
+     */
+    public static byte[] createBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    public static void write(File file, byte[] bytes) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file, false);
+        try {
+            fos.write(bytes);
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * @return new empty temporary directory
+     */
+    public static File createTempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        if (!dir.delete() || !dir.mkdirs()) {
+            throw new IOException("Could not create temp dir " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * Deletes given file or directory with all children
+     */
+    public static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (int i = 0; i < children.length; i++) {
+                deleteTree(children[i]);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * @return human readable size, like "64K"
+     */
+    public static String formatSize(int size) {
+        if (size >= 1024 * 1024 && size % (1024 * 1024) == 0) {
+            return (size / (1024 * 1024)) + "M";
+        }
+        if (size >= 1024 && size % 1024 == 0) {
+            return (size / 1024) + "K";
+        }
+        return String.valueOf(size);
+    }
+}
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal micro benchmark harness: time based warm-up, then several time based
+ * measurement iterations, reported as mean time per operation, relative error and
+ * throughput.
+ * <p>
+ * Settings (system properties): "bench.warmup" and "bench.time" - warm-up and
+ * iteration time in ms, "bench.iterations" - number of measurement iterations.
+ * @author Andrey
+ */
+public final class BenchRunner {
+
+    private final long warmupNanos;
+
+    private final long iterationNanos;
+
+    private final int iterations;
+
+    private final Pattern filter;
+
+    private final PrintStream out;
+
+    private final List<Result> results;
+
+    /** consumes benchmark results, see {@link Benchmark#run()} */
+    private volatile long sink;
+
+    /**
+     * @param filter regular expression to select benchmarks by "name params", may
+     * be null
+     * @param out progress output
+     */
+    public BenchRunner(String filter, PrintStream out) {
+        super();
+        warmupNanos = Long.getLong("bench.warmup", 1000).longValue() * 1000000L;
+        iterationNanos = Long.getLong("bench.time", 1000).longValue() * 1000000L;
+        iterations = Math.max(1, Integer.getInteger("bench.iterations", 5).intValue());
+        this.filter = filter == null ? null : Pattern.compile(filter);
+        this.out = out;
+        results = new ArrayList<Result>();
+    }
+
+    /**
+     * Runs given benchmark, if it matches the filter
+     * @param name benchmark name, like "FS.copy"
+     * @param params parameters description, like "size=1024"
+     * @param bench
+     * @return result, or null if the benchmark was filtered out
+     */
+    public Result run(String name, String params, Benchmark bench) throws Exception {
+        if (filter != null && !filter.matcher(name + " " + params).find()) {
+            return null;
+        }
+        bench.setUp();
+        try {
+            measure(bench, warmupNanos);
+            double[] nanosPerOp = new double[iterations];
+            long totalOps = 0;
+            long totalBytes = 0;
+            long totalNanos = 0;
+            for (int i = 0; i < iterations; i++) {
+                long[] stats = measure(bench, iterationNanos);
+                nanosPerOp[i] = (double) stats[2] / stats[0];
+                totalOps += stats[0];
+                totalBytes += stats[1];
+                totalNanos += stats[2];
+            }
+            Result result = new Result(name, params, nanosPerOp, totalOps, totalBytes,
+                    totalNanos);
+            results.add(result);
+            out.println(result);
+            return result;
+        } finally {
+            bench.tearDown();
+        }
+    }
+
+    /**
+     * @return operations count, consumed value sum, elapsed nanos
+     */
+    private long[] measure(Benchmark bench, long nanos) throws Exception {
+        long ops = 0;
+        long bytes = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            bytes += bench.run();
+            ops++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < nanos);
+        sink += bytes;
+        return new long[] { ops, bytes, elapsed };
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    /**
+     * @return sum of all consumed benchmark results. Should be printed once after the
+     * run, so that the benchmarked work can't be eliminated as dead code
+     */
+    public long getSink() {
+        return sink;
+    }
+
+    /**
+     * Writes all results as CSV (header line plus one line per benchmark)
+     * @param file
+     */
+    public void writeCsv(File file) throws IOException {
+        PrintWriter pw = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(file), "UTF-8"));
+        try {
+            pw.println("name,params,ns_per_op,error_pct,ops,mb_per_s");
+            for (Result result : results) {
+                pw.println(result.toCsv());
+            }
+        } finally {
+            pw.close();
+        }
+    }
+
+    /**
+     * Result of a single benchmark
+     */
+    public static final class Result {
+        public final String name;
+
+        public final String params;
+
+        /** mean time per operation over all iterations */
+        public final double nanosPerOp;
+
+        /** relative standard deviation of iterations, in percent */
+        public final double errorPercent;
+
+        public final long ops;
+
+        /** throughput, or 0 if the benchmark does not report bytes */
+        public final double mbPerSecond;
+
+        Result(String name, String params, double[] nanosPerOp, long ops, long bytes,
+                long nanos) {
+            this.name = name;
+            this.params = params;
+            this.ops = ops;
+            double sum = 0;
+            for (int i = 0; i < nanosPerOp.length; i++) {
+                sum += nanosPerOp[i];
+            }
+            double mean = sum / nanosPerOp.length;
+            double variance = 0;
+            for (int i = 0; i < nanosPerOp.length; i++) {
+                variance += (nanosPerOp[i] - mean) * (nanosPerOp[i] - mean);
+            }
+            variance = nanosPerOp.length > 1 ? variance / (nanosPerOp.length - 1) : 0;
+            this.nanosPerOp = mean;
+            errorPercent = mean == 0 ? 0 : Math.sqrt(variance) * 100 / mean;
+            mbPerSecond = nanos == 0 ? 0 : (bytes / (1024.0 * 1024.0))
+                    / (nanos / 1000000000.0);
+        }
+
+        String toCsv() {
+            return String.format(Locale.ENGLISH, "%s,\"%s\",%.1f,%.1f,%d,%.2f", name,
+                    params, Double.valueOf(nanosPerOp), Double.valueOf(errorPercent),
+                    Long.valueOf(ops), Double.valueOf(mbPerSecond));
+        }
+
+        @Override
+        public String toString() {
+            String s = String.format(Locale.ENGLISH, "%-24s %-50s %14.1f ns/op  +-%5.1f%%",
+                    name, params, Double.valueOf(nanosPerOp), Double.valueOf(errorPercent));
+            if (mbPerSecond > 0) {
+                s += String.format(Locale.ENGLISH, "  %9.2f MB/s", Double.valueOf(mbPerSecond));
+            }
+            return s;
+        }
+    }
+}
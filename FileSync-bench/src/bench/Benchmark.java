@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package bench;
+
+/**
+ * Single benchmark case with fixed parameters, executed by {@link BenchRunner}.
+ * @author Andrey
+ */
+public interface Benchmark {
+
+    /**
+     * Called once before warm-up
+     */
+    void setUp() throws Exception;
+
+    /**
+     * Single measured operation.
+     * @return number of processed bytes (used for throughput), or 0. Benchmarks
+     * returning 0 should keep their results in a field, so that the JIT cannot
+     * remove the operation
+     */
+    long run() throws Exception;
+
+    /**
+     * Called once after measurement
+     */
+    void tearDown() throws Exception;
+}
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+/**
+ * Scale benchmarks of the FileSync builder: imports projects generated by
+ * {@link WorkspaceGenerator} into the running workspace and measures full, no-op,
+ * incremental and clean builds of them. Every phase runs once per project, so the
+ * numbers are single shot timings, as in a real build. Must run inside Eclipse, see
+ * {@link WorkspaceBenchmarks}.
+ * <p>
+ * Incremental phases change or remove files through the workspace, so that the
+ * platform creates the resource delta; only the build itself is timed. Parameters
+ * are the same as for {@link ScaleBenchmarks}.
+ * @author Andrey
+ */
+public class BuilderBenchmarks {
+
+    private final PrintStream out;
+
+    private final List<String> results;
+
+    public BuilderBenchmarks(PrintStream out) {
+        super();
+        this.out = out;
+        results = new ArrayList<String>();
+    }
+
+    /**
+     * Runs all phases for all configured project sizes
+     */
+    public void runAll() throws IOException, CoreException {
+        for (int f = 0; f < ScaleBenchmarks.FILES.length; f++) {
+            for (int m = 0; m < ScaleBenchmarks.MAPPINGS.length; m++) {
+                WorkspaceGenerator generator = new WorkspaceGenerator();
+                generator.setFiles(ScaleBenchmarks.FILES[f]);
+                generator.setMappings(ScaleBenchmarks.MAPPINGS[m]);
+                File workDir = BenchData.createTempDir("fsbuild");
+                try {
+                    run(generator, workDir);
+                } finally {
+                    BenchData.deleteTree(workDir);
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates and imports the project, runs all phases and deletes the project
+     * @param generator
+     * @param workDir directory for the project and all destinations
+     */
+    public void run(WorkspaceGenerator generator, File workDir) throws IOException,
+    CoreException {
+        // project name is the directory name, must be unique in the workspace
+        File projectDir = new File(workDir, "scale_" + generator.getFiles() + "_"
+                + generator.getMappings());
+        File destinationDir = new File(workDir, "destination");
+        String params = generator.toString();
+        out.println(params);
+
+        long start = System.nanoTime();
+        long bytes = generator.generate(projectDir, destinationDir);
+        report("generate", params, System.nanoTime() - start, null, bytes);
+
+        start = System.nanoTime();
+        IProject project = WorkspaceBuilds.importProject(projectDir);
+        report("import", params, System.nanoTime() - start, null, 0);
+        try {
+            runBuilds(generator, project, params);
+        } finally {
+            project.delete(true, true, new NullProgressMonitor());
+        }
+    }
+
+    private void runBuilds(WorkspaceGenerator generator, IProject project, String params)
+    throws IOException, CoreException {
+        NullProgressMonitor monitor = new NullProgressMonitor();
+        build("full", params, project, IncrementalProjectBuilder.FULL_BUILD);
+        build("full.unchanged", params, project, IncrementalProjectBuilder.FULL_BUILD);
+        build("incremental.unchanged", params, project,
+                IncrementalProjectBuilder.INCREMENTAL_BUILD);
+
+        File projectDir = project.getLocation().toFile();
+        int files = generator.getFiles();
+        int count = Math.max(1, files * ScaleBenchmarks.CHANGED_PERCENT / 100);
+        List<IFile> changed = new ArrayList<IFile>();
+        for (int i = 0; i < count; i++) {
+            IPath path = generator.modify(projectDir, (int) ((long) i * files / count), 1);
+            IFile file = project.getFile(path);
+            file.refreshLocal(IResource.DEPTH_ZERO, monitor);
+            changed.add(file);
+        }
+        build("incremental.changed", params, project,
+                IncrementalProjectBuilder.INCREMENTAL_BUILD);
+
+        for (IFile file : changed) {
+            file.delete(true, monitor);
+        }
+        build("incremental.removed", params, project,
+                IncrementalProjectBuilder.INCREMENTAL_BUILD);
+
+        build("clean", params, project, IncrementalProjectBuilder.CLEAN_BUILD);
+    }
+
+    private void build(String phase, String params, IProject project, int kind)
+    throws CoreException {
+        WorkspaceBuilds.Stats stats = WorkspaceBuilds.build(project, kind);
+        report(phase, params, stats.getNanos(), stats, stats.getBytes());
+    }
+
+    private void report(String phase, String params, long nanos,
+            WorkspaceBuilds.Stats stats, long bytes) {
+        double ms = nanos / 1000000.0;
+        double mbs = nanos == 0 ? 0 : (bytes / (1024.0 * 1024.0)) / (nanos / 1000000000.0);
+        long examined = stats == null ? 0 : stats.getExamined();
+        long copied = stats == null ? 0 : stats.getCopied();
+        long deleted = stats == null ? 0 : stats.getDeleted();
+        out.println(String.format(Locale.ENGLISH,
+                "  %-22s %12.1f ms %9d examined %9d copied %9d deleted %9.2f MB/s", phase,
+                Double.valueOf(ms), Long.valueOf(examined), Long.valueOf(copied), Long
+                .valueOf(deleted), Double.valueOf(mbs)));
+        results.add(String.format(Locale.ENGLISH, "%s,\"%s\",%.1f,%d,%d,%d,%d,%.2f", phase,
+                params, Double.valueOf(ms), Long.valueOf(examined), Long.valueOf(copied),
+                Long.valueOf(deleted), Long.valueOf(bytes), Double.valueOf(mbs)));
+    }
+
+    /**
+     * Writes all results as CSV (header line plus one line per phase)
+     * @param file
+     */
+    public void writeCsv(File file) throws IOException {
+        PrintWriter pw = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(file), "UTF-8"));
+        try {
+            pw.println("phase,params,ms,examined,copied,deleted,bytes,mb_per_s");
+            for (String line : results) {
+                pw.println(line);
+            }
+        } finally {
+            pw.close();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package bench;
+
+import java.io.File;
+
+import de.loskutov.fs.command.CopyDelegate;
+import de.loskutov.fs.command.CopyDelegate1;
+import de.loskutov.fs.command.FS;
+
+/**
+ * Benchmarks for the plain file copy and for both variable substitution engines.
+ * <p>
+ * Parameters (system properties, comma separated): "bench.sizes" (bytes),
+ * "bench.keys" (number of variables), "bench.lineLengths", "bench.encodings".
+ * @author Andrey
+ */
+public final class CopyBenchmarks {
+
+    static final int[] SIZES = BenchData.getInts("bench.sizes", new int[] { 1024,
+        64 * 1024, 1024 * 1024 });
+
+    static final int[] KEYS = BenchData.getInts("bench.keys", new int[] { 0, 10, 100 });
+
+    static final int[] LINE_LENGTHS = BenchData.getInts("bench.lineLengths", new int[] {
+        80, 1000 });
+
+    static final String[] ENCODINGS = BenchData.getStrings("bench.encodings",
+            new String[] { "ISO-8859-1", "UTF-8" });
+
+    private CopyBenchmarks() {
+        // don't instantiate me
+    }
+
+    public static void runAll(BenchRunner runner) throws Exception {
+        for (int i = 0; i < SIZES.length; i++) {
+            String params = "size=" + BenchData.formatSize(SIZES[i]);
+            runner.run("FS.copy", params, new FsCopy(SIZES[i], false));
+            runner.run("FS.copy.unchanged", params, new FsCopy(SIZES[i], true));
+        }
+        for (int s = 0; s < SIZES.length; s++) {
+            for (int k = 0; k < KEYS.length; k++) {
+                for (int l = 0; l < LINE_LENGTHS.length; l++) {
+                    for (int e = 0; e < ENCODINGS.length; e++) {
+                        String params = "size=" + BenchData.formatSize(SIZES[s])
+                                + " keys=" + KEYS[k] + " line=" + LINE_LENGTHS[l]
+                                + " enc=" + ENCODINGS[e];
+                        runner.run("CopyDelegate", params, new DelegateCopy(
+                                new CopyDelegate(), SIZES[s], KEYS[k], LINE_LENGTHS[l],
+                                ENCODINGS[e]));
+                        runner.run("CopyDelegate1", params, new DelegateCopy(
+                                new CopyDelegate1(), SIZES[s], KEYS[k], LINE_LENGTHS[l],
+                                ENCODINGS[e]));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Base class for benchmarks which copy one source file to one destination
+     */
+    abstract static class FileCopy implements Benchmark {
+        File dir;
+
+        File source;
+
+        File destination;
+
+        abstract byte[] createContent() throws Exception;
+
+        @Override
+        public void setUp() throws Exception {
+            dir = BenchData.createTempDir("fsbench");
+            source = new File(dir, "source");
+            destination = new File(dir, "destination");
+            BenchData.write(source, createContent());
+            FS.create(destination, true);
+            if (run() < 0) {
+                throw new IllegalStateException("Copy failed: " + this);
+            }
+        }
+
+        @Override
+        public void tearDown() throws Exception {
+            BenchData.deleteTree(dir);
+        }
+    }
+
+    static final class FsCopy extends FileCopy {
+        private final int size;
+
+        private final boolean unchanged;
+
+        FsCopy(int size, boolean unchanged) {
+            this.size = size;
+            this.unchanged = unchanged;
+        }
+
+        @Override
+        byte[] createContent() {
+            return BenchData.createBytes(size);
+        }
+
+        @Override
+        public long run() {
+            // "unchanged" uses the source time stamp, so only the file check is done
+            if (!FS.copy(source, destination, !unchanged)) {
+                return -1;
+            }
+            return unchanged ? 0 : size;
+        }
+    }
+
+    static final class DelegateCopy extends FileCopy {
+        private final CopyDelegate delegate;
+
+        private final int size;
+
+        private final int keys;
+
+        private final int lineLength;
+
+        private final String encoding;
+
+        DelegateCopy(CopyDelegate delegate, int size, int keys, int lineLength,
+                String encoding) {
+            this.delegate = delegate;
+            this.size = size;
+            this.keys = keys;
+            this.lineLength = lineLength;
+            this.encoding = encoding;
+        }
+
+        @Override
+        byte[] createContent() throws Exception {
+            boolean unicode = "UTF-8".equalsIgnoreCase(encoding);
+            return BenchData.createText(size, lineLength, keys, unicode).getBytes(encoding);
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            delegate.setEncoding(encoding);
+            delegate.setPropertiesMap(BenchData.createVariables(keys));
+            // always copy, see CopyDelegate.copy()
+            delegate.setUseCurrentDateForDestinationFiles(true);
+            super.setUp();
+        }
+
+        @Override
+        public long run() {
+            if (!delegate.copy(source, destination)) {
+                return -1;
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.loskutov.fs.command.LineReader;
+import de.loskutov.fs.command.LineWriter;
+
+/**
+ * In-memory benchmarks for {@link LineReader} and {@link LineWriter}, so that the
+ * line handling is measured without the file system.
+ * @author Andrey
+ */
+public final class LineIOBenchmarks {
+
+    private LineIOBenchmarks() {
+        // don't instantiate me
+    }
+
+    public static void runAll(BenchRunner runner) throws Exception {
+        int[] sizes = CopyBenchmarks.SIZES;
+        int[] lineLengths = CopyBenchmarks.LINE_LENGTHS;
+        String[] encodings = CopyBenchmarks.ENCODINGS;
+        for (int s = 0; s < sizes.length; s++) {
+            for (int l = 0; l < lineLengths.length; l++) {
+                for (int e = 0; e < encodings.length; e++) {
+                    String params = "size=" + BenchData.formatSize(sizes[s]) + " line="
+                            + lineLengths[l] + " enc=" + encodings[e];
+                    runner.run("LineReader", params, new Read(sizes[s], lineLengths[l],
+                            encodings[e]));
+                    runner.run("LineWriter", params, new Write(sizes[s], lineLengths[l],
+                            encodings[e]));
+                }
+            }
+        }
+    }
+
+    static final class Read implements Benchmark {
+        private final int size;
+
+        private final int lineLength;
+
+        private final String encoding;
+
+        private byte[] bytes;
+
+        Read(int size, int lineLength, String encoding) {
+            this.size = size;
+            this.lineLength = lineLength;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            boolean unicode = "UTF-8".equalsIgnoreCase(encoding);
+            bytes = BenchData.createText(size, lineLength, 0, unicode).getBytes(encoding);
+        }
+
+        @Override
+        public long run() throws Exception {
+            LineReader reader = new LineReader(new ByteArrayInputStream(bytes), encoding);
+            long chars = 0;
+            String line;
+            while ((line = reader.readLineToString()) != null) {
+                chars += line.length();
+            }
+            reader.close();
+            return chars == 0 ? 0 : bytes.length;
+        }
+
+        @Override
+        public void tearDown() {
+            bytes = null;
+        }
+    }
+
+    static final class Write implements Benchmark {
+        private final int size;
+
+        private final int lineLength;
+
+        private final String encoding;
+
+        private List<String> lines;
+
+        private final CountingOutputStream out = new CountingOutputStream();
+
+        Write(int size, int lineLength, String encoding) {
+            this.size = size;
+            this.lineLength = lineLength;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            boolean unicode = "UTF-8".equalsIgnoreCase(encoding);
+            String text = BenchData.createText(size, lineLength, 0, unicode);
+            LineReader reader = new LineReader(text, encoding);
+            lines = new ArrayList<String>();
+            String line;
+            while ((line = reader.readLineToString()) != null) {
+                lines.add(line);
+            }
+            reader.close();
+        }
+
+        @Override
+        public long run() throws Exception {
+            out.count = 0;
+            LineWriter writer = new LineWriter(out, encoding);
+            for (int i = 0; i < lines.size(); i++) {
+                writer.writeLine(lines.get(i));
+            }
+            writer.flush();
+            return out.count;
+        }
+
+        @Override
+        public void tearDown() {
+            lines = null;
+        }
+    }
+
+    /**
+     * Output stream which only counts written bytes
+     */
+    static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
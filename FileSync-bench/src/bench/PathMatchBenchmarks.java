@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package bench;
+
+import java.util.Random;
+
+import de.loskutov.fs.builder.CharOperation;
+import de.loskutov.fs.builder.SyncWizard;
+
+/**
+ * Benchmarks for the inclusion/exclusion pattern matching. One operation is one
+ * path checked against all patterns.
+ * <p>
+ * Parameters (system properties, comma separated): "bench.depths" (path segments),
+ * "bench.patterns" (number of patterns).
+ * @author Andrey
+ */
+public final class PathMatchBenchmarks {
+
+    static final int[] DEPTHS = BenchData.getInts("bench.depths", new int[] { 2, 6, 12 });
+
+    static final int[] PATTERNS = BenchData.getInts("bench.patterns", new int[] { 1, 10,
+        100 });
+
+    /** typical patterns, extended with generated ones if more are requested */
+    private static final String[] TEMPLATES = { "**/*.java", "**/CVS/**", "*.txt",
+        "src/**/test/*.xml", "**/.svn/", "bin/**", "**/*.class", "doc/**/*.html" };
+
+    private static final int PATH_COUNT = 1024;
+
+    private PathMatchBenchmarks() {
+        // don't instantiate me
+    }
+
+    public static void runAll(BenchRunner runner) throws Exception {
+        for (int d = 0; d < DEPTHS.length; d++) {
+            for (int p = 0; p < PATTERNS.length; p++) {
+                String params = "depth=" + DEPTHS[d] + " patterns=" + PATTERNS[p];
+                runner.run("CharOperation.pathMatch", params, new Match(DEPTHS[d],
+                        PATTERNS[p], false));
+                runner.run("SyncWizard.isExcluded", params, new Match(DEPTHS[d],
+                        PATTERNS[p], true));
+            }
+        }
+    }
+
+    static char[][] createPatterns(int count) {
+        char[][] patterns = new char[count][];
+        for (int i = 0; i < count; i++) {
+            String pattern;
+            if (i < TEMPLATES.length) {
+                pattern = TEMPLATES[i];
+            } else {
+                pattern = "**/gen" + i + "/**/*.tmp" + i;
+            }
+            patterns[i] = pattern.toCharArray();
+        }
+        return patterns;
+    }
+
+    static char[][] createPaths(int depth) {
+        Random random = new Random(depth);
+        String[] segments = { "src", "de", "loskutov", "test", "CVS", "resources",
+            "main", "java", "web", "images" };
+        String[] extensions = { ".java", ".xml", ".txt", ".class", ".html", ".png" };
+        char[][] paths = new char[PATH_COUNT][];
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < PATH_COUNT; i++) {
+            sb.setLength(0);
+            for (int j = 0; j < depth - 1; j++) {
+                sb.append(segments[random.nextInt(segments.length)]).append('/');
+            }
+            sb.append("File").append(i).append(extensions[random.nextInt(extensions.length)]);
+            paths[i] = sb.toString().toCharArray();
+        }
+        return paths;
+    }
+
+    static final class Match implements Benchmark {
+        private final int depth;
+
+        private final int patternCount;
+
+        private final boolean wizard;
+
+        private char[][] patterns;
+
+        private char[][] paths;
+
+        private int index;
+
+        /** keeps the match results alive, see {@link Benchmark#run()} */
+        long hits;
+
+        Match(int depth, int patternCount, boolean wizard) {
+            this.depth = depth;
+            this.patternCount = patternCount;
+            this.wizard = wizard;
+        }
+
+        @Override
+        public void setUp() {
+            patterns = createPatterns(patternCount);
+            paths = createPaths(depth);
+        }
+
+        @Override
+        public long run() {
+            char[] path = paths[index++ & (PATH_COUNT - 1)];
+            if (wizard) {
+                if (SyncWizard.isExcluded(path, null, patterns, false)) {
+                    hits++;
+                }
+                return 0;
+            }
+            for (int i = 0; i < patterns.length; i++) {
+                if (CharOperation.pathMatch(patterns[i], path, true, '/')) {
+                    hits++;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public void tearDown() {
+            patterns = null;
+            paths = null;
+        }
+    }
+}
@@ -0,0 +1,385 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+
+import de.loskutov.fs.builder.DeltaRecorder;
+import de.loskutov.fs.builder.FileSyncBuilder;
+import de.loskutov.fs.command.FileMapping;
+import de.loskutov.fs.properties.ProjectProperties;
+
+/**
+ * Replays builds recorded by {@link DeltaRecorder} in a running workspace, using a
+ * temporary copy of the project and temporary destinations. Reports latency and
+ * throughput per replayed build.
+ * <p>
+ * Full and clean builds restore the recorded project snapshot. Incremental builds
+ * apply the recorded "A/C/R" entries to the project with the workspace API, so that
+ * the platform creates the resource delta and runs the FileSync builder exactly as
+ * for the recorded build. Must run inside Eclipse, see {@link WorkspaceBenchmarks}.
+ * @author Andrey
+ */
+public class Replay {
+
+    private static final IPath SETTINGS_PATH = new Path(FileSyncBuilder.SETTINGS_DIR)
+    .append(FileSyncBuilder.SETTINGS_FILE);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File recordDir;
+
+    private final File projectDir;
+
+    private final File destinationDir;
+
+    private final List<String[]> results;
+
+    private final IProgressMonitor monitor;
+
+    private IProject project;
+
+    /**
+     * @param recordDir recorded project directory: [recordDir]/[project]
+     * @param workDir directory for the project copy and destinations
+     */
+    public Replay(File recordDir, File workDir) {
+        super();
+        this.recordDir = recordDir;
+        projectDir = new File(workDir, "project");
+        destinationDir = new File(workDir, "destination");
+        results = new ArrayList<String[]>();
+        monitor = new NullProgressMonitor();
+    }
+
+    /**
+     * Writes results of all replays as CSV
+     * @param replays
+     * @param csv
+     */
+    public static void writeCsv(List<Replay> replays, File csv) throws IOException {
+        PrintStream out = new PrintStream(new FileOutputStream(csv), false, "UTF-8");
+        try {
+            out.println("run,build,kind,entries,examined,copied,deleted,bytes,ms,MB/s");
+            for (int i = 0; i < replays.size(); i++) {
+                for (String[] row : replays.get(i).results) {
+                    out.print(i + 1);
+                    for (int j = 0; j < row.length; j++) {
+                        out.print(',');
+                        out.print(row[j]);
+                    }
+                    out.println();
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Replays all recorded builds in the recorded order
+     */
+    public void run(PrintStream out) throws IOException, CoreException {
+        out.println("Replaying " + recordDir);
+        out.println(String.format("%6s %-12s %8s %8s %8s %8s %12s %10s %8s", "build",
+                "kind", "entries", "examined", "copied", "deleted", "bytes", "ms", "MB/s"));
+        List<String> lines = readLines(new File(recordDir, DeltaRecorder.BUILDS_FILE));
+        for (String line : lines) {
+            int space = line.indexOf(' ');
+            if (space <= 0) {
+                continue;
+            }
+            String seq = line.substring(0, space);
+            String kind = line.substring(space + 1).trim();
+            File buildDir = new File(recordDir, seq);
+            replay(seq, kind, buildDir, out);
+        }
+    }
+
+    /**
+     * Deletes the project copy from the workspace and from the disk
+     */
+    public void dispose() throws CoreException {
+        if (project != null) {
+            project.delete(true, true, monitor);
+            project = null;
+        }
+    }
+
+    private void replay(String seq, String kind, File buildDir, PrintStream out)
+    throws IOException, CoreException {
+        int entries;
+        int buildKind;
+        if (DeltaRecorder.KIND_INCREMENTAL.equals(kind)) {
+            if (project == null) {
+                out.println(String.format("%6s %-12s no project snapshot yet, skipped",
+                        seq, kind));
+                return;
+            }
+            entries = applyDelta(buildDir);
+            buildKind = IncrementalProjectBuilder.INCREMENTAL_BUILD;
+        } else {
+            entries = restoreSnapshot(new File(buildDir, DeltaRecorder.FILES_DIR));
+            if (project == null) {
+                out.println(String.format("%6s %-12s no project description, skipped",
+                        seq, kind));
+                return;
+            }
+            buildKind = DeltaRecorder.KIND_CLEAN.equals(kind) ? IncrementalProjectBuilder.CLEAN_BUILD
+                    : IncrementalProjectBuilder.FULL_BUILD;
+        }
+        WorkspaceBuilds.Stats stats = WorkspaceBuilds.build(project, buildKind);
+        long nanos = stats.getNanos();
+        double ms = nanos / 1000000.0;
+        double mbs = nanos == 0 ? 0 : stats.getBytes() * 1000000000.0 / nanos / 1024 / 1024;
+        out.println(String.format("%6s %-12s %8d %8d %8d %8d %12d %10.2f %8.2f", seq, kind,
+                Integer.valueOf(entries), Long.valueOf(stats.getExamined()),
+                Long.valueOf(stats.getCopied()), Long.valueOf(stats.getDeleted()),
+                Long.valueOf(stats.getBytes()), Double.valueOf(ms), Double.valueOf(mbs)));
+        results.add(new String[] { seq, kind, String.valueOf(entries),
+                String.valueOf(stats.getExamined()), String.valueOf(stats.getCopied()),
+                String.valueOf(stats.getDeleted()), String.valueOf(stats.getBytes()),
+                String.format("%.3f", Double.valueOf(ms)),
+                String.format("%.3f", Double.valueOf(mbs)) });
+    }
+
+    /**
+     * Replaces the project content with the recorded snapshot. The project is
+     * imported into the workspace with the first snapshot.
+     * @return number of restored files
+     */
+    private int restoreSnapshot(File filesDir) throws IOException, CoreException {
+        if (project != null) {
+            IResource[] members = project.members();
+            for (int i = 0; i < members.length; i++) {
+                if (!IProjectDescription.DESCRIPTION_FILE_NAME.equals(members[i]
+                        .getName())) {
+                    members[i].delete(true, monitor);
+                }
+            }
+        }
+        int count = copyTree(filesDir, projectDir);
+        redirectSettings();
+        if (project == null) {
+            if (new File(projectDir, IProjectDescription.DESCRIPTION_FILE_NAME).isFile()) {
+                project = WorkspaceBuilds.importProject(projectDir);
+            }
+        } else {
+            project.refreshLocal(IResource.DEPTH_INFINITE, monitor);
+        }
+        return count;
+    }
+
+    /**
+     * Applies recorded delta to the project copy, in one workspace operation
+     * @return number of delta entries
+     */
+    private int applyDelta(File buildDir) throws IOException, CoreException {
+        final File filesDir = new File(buildDir, DeltaRecorder.FILES_DIR);
+        final List<String> lines = readLines(new File(buildDir, DeltaRecorder.DELTA_FILE));
+        ResourcesPlugin.getWorkspace().run(new IWorkspaceRunnable() {
+            @Override
+            public void run(IProgressMonitor pm) throws CoreException {
+                for (String line : lines) {
+                    if (line.length() >= 5) {
+                        apply(line, filesDir);
+                    }
+                }
+            }
+        }, monitor);
+        return lines.size();
+    }
+
+    private void apply(String line, File filesDir) throws CoreException {
+        char kind = line.charAt(0);
+        boolean isFile = line.charAt(2) == DeltaRecorder.FILE;
+        IPath path = new Path(line.substring(4));
+        IResource resource = isFile ? project.getFile(path) : project.getFolder(path);
+        if (kind == DeltaRecorder.REMOVED) {
+            // children of removed folders are listed after the folder
+            if (resource.exists()) {
+                resource.delete(true, monitor);
+            }
+            return;
+        }
+        createParents(resource.getParent());
+        if (!isFile) {
+            if (!resource.exists()) {
+                ((IFolder) resource).create(true, true, monitor);
+            }
+            return;
+        }
+        IFile file = (IFile) resource;
+        InputStream in = open(new File(filesDir, path.toOSString()));
+        if (file.exists()) {
+            file.setContents(in, true, false, monitor);
+        } else {
+            file.create(in, true, monitor);
+        }
+        if (SETTINGS_PATH.equals(path)) {
+            try {
+                redirectSettings();
+            } catch (IOException e) {
+                throw error("Failed to redirect destinations", e);
+            }
+            file.refreshLocal(IResource.DEPTH_ZERO, monitor);
+        }
+    }
+
+    private void createParents(IContainer container) throws CoreException {
+        if (container.exists() || !(container instanceof IFolder)) {
+            return;
+        }
+        createParents(container.getParent());
+        ((IFolder) container).create(true, true, monitor);
+    }
+
+    private static InputStream open(File file) throws CoreException {
+        try {
+            return new FileInputStream(file);
+        } catch (IOException e) {
+            throw error("Recorded file is missing: " + file, e);
+        }
+    }
+
+    private static CoreException error(String message, Throwable e) {
+        return new CoreException(new Status(IStatus.ERROR, "FileSync_bench", message, e));
+    }
+
+    /**
+     * Rewrites the settings file of the project copy on disk, so that all
+     * destinations point to the temporary destination directory
+     */
+    private void redirectSettings() throws IOException {
+        File settings = new File(projectDir, SETTINGS_PATH.toOSString());
+        if (!settings.isFile()) {
+            return;
+        }
+        Properties props = new Properties();
+        FileInputStream in = new FileInputStream(settings);
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+        IPath projectPath = new Path(projectDir.getAbsolutePath());
+        IPath destinationPath = new Path(destinationDir.getAbsolutePath());
+        for (Object key : props.keySet().toArray()) {
+            String name = (String) key;
+            if (!name.startsWith(FileMapping.FULL_MAP_PREFIX)) {
+                continue;
+            }
+            FileMapping mapping = new FileMapping(props.getProperty(name), projectPath);
+            if (mapping.getSourcePath() == null) {
+                continue;
+            }
+            if (mapping.getDestinationPath() != null) {
+                mapping.setDestinationPath(destinationPath.append(name.replace('|', '_')));
+            }
+            props.setProperty(name, mapping.encode());
+        }
+        props.setProperty(ProjectProperties.KEY_DEFAULT_DESTINATION, destinationPath
+                .append("default").toPortableString());
+        FileOutputStream fos = new FileOutputStream(settings);
+        try {
+            props.store(fos, null);
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Copies recorded files with plain streams, so that they don't show up in the
+     * FileSync traces
+     * @return number of copied files
+     */
+    private static int copyTree(File source, File destination) throws IOException {
+        File[] children = source.listFiles();
+        if (children == null) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = 0; i < children.length; i++) {
+            File child = children[i];
+            File target = new File(destination, child.getName());
+            if (child.isDirectory()) {
+                target.mkdirs();
+                count += copyTree(child, target);
+            } else {
+                destination.mkdirs();
+                copy(child, target);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void copy(File source, File destination) throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        InputStream in = new FileInputStream(source);
+        try {
+            OutputStream out = new FileOutputStream(destination);
+            try {
+                int read;
+                while ((read = in.read(buf)) > 0) {
+                    out.write(buf, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().length() > 0) {
+                    lines.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.eclipse.core.runtime.IPath;
+
+import de.loskutov.fs.command.FS;
+import de.loskutov.fs.standalone.ProjectConfig;
+import de.loskutov.fs.standalone.TreeSync;
+
+/**
+ * Scale benchmarks: generates projects with {@link WorkspaceGenerator} and measures
+ * full, no-op, incremental and clean syncs of them. Every phase runs once per project,
+ * so the numbers are single shot timings of a "cold" engine, as in a real build.
+ * <p>
+ * These benchmarks drive the standalone engine ({@link TreeSync}) only, which shares
+ * the mapping, copy and substitution code with the builder, but not the resource
+ * deltas and the workspace. The builder itself is measured by
+ * {@link BuilderBenchmarks} in a running workspace, see {@link WorkspaceBenchmarks};
+ * the numbers here are an extra, to separate engine costs from platform costs.
+ * <p>
+ * Parameters (system properties, comma separated): "scale.files", "scale.mappings",
+ * "scale.changedPercent" (files changed or removed by incremental phases), all other
+ * project settings as described in {@link WorkspaceGenerator#WorkspaceGenerator()}.
+ * <p>
+ * Usage: ScaleBenchmarks [-csv file] [-keep dir]
+ * @author Andrey
+ */
+public class ScaleBenchmarks {
+
+    static final int[] FILES = BenchData.getInts("scale.files", new int[] { 1000,
+        10000 });
+
+    static final int[] MAPPINGS = BenchData.getInts("scale.mappings", new int[] { 1, 4 });
+
+    static final int CHANGED_PERCENT = Integer.getInteger("scale.changedPercent", 1)
+    .intValue();
+
+    private final PrintStream out;
+
+    private final List<String> results;
+
+    public ScaleBenchmarks(PrintStream out) {
+        super();
+        this.out = out;
+        results = new ArrayList<String>();
+    }
+
+    public static void main(String[] args) throws Exception {
+        File csv = null;
+        File keepDir = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("-csv".equals(args[i]) && i + 1 < args.length) {
+                csv = new File(args[++i]);
+            } else if ("-keep".equals(args[i]) && i + 1 < args.length) {
+                keepDir = new File(args[++i]);
+            }
+        }
+        // errors are reported by the engine itself, and there is no platform log
+        FS.enableLogging = false;
+
+        ScaleBenchmarks benchmarks = new ScaleBenchmarks(System.out);
+        for (int f = 0; f < FILES.length; f++) {
+            for (int m = 0; m < MAPPINGS.length; m++) {
+                WorkspaceGenerator generator = new WorkspaceGenerator();
+                generator.setFiles(FILES[f]);
+                generator.setMappings(MAPPINGS[m]);
+                File workDir;
+                if (keepDir != null) {
+                    workDir = new File(keepDir, "scale_" + FILES[f] + "_" + MAPPINGS[m]);
+                } else {
+                    workDir = BenchData.createTempDir("fsscale");
+                }
+                try {
+                    benchmarks.run(generator, workDir);
+                } finally {
+                    if (keepDir == null) {
+                        BenchData.deleteTree(workDir);
+                    }
+                }
+            }
+        }
+        if (csv != null) {
+            benchmarks.writeCsv(csv);
+            System.out.println("Results written to " + csv.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Generates the project and runs all phases
+     * @param generator
+     * @param workDir directory for the project and all destinations
+     */
+    public void run(WorkspaceGenerator generator, File workDir) throws IOException {
+        File projectDir = new File(workDir, "project");
+        File destinationDir = new File(workDir, "destination");
+        String params = generator.toString();
+        out.println(params);
+
+        long start = System.nanoTime();
+        long bytes = generator.generate(projectDir, destinationDir);
+        report("generate", params, System.nanoTime() - start, null, bytes);
+
+        ProjectConfig config = new ProjectConfig(projectDir);
+        config.load();
+        TreeSync sync = new TreeSync(config, "UTF-8");
+
+        start = System.nanoTime();
+        TreeSync.Stats stats = sync.fullSync(false);
+        report("full", params, System.nanoTime() - start, stats, stats.getBytes());
+
+        start = System.nanoTime();
+        stats = sync.fullSync(false);
+        report("full.unchanged", params, System.nanoTime() - start, stats, stats
+                .getBytes());
+
+        int files = generator.getFiles();
+        int count = Math.max(1, files * CHANGED_PERCENT / 100);
+        List<IPath> changed = new ArrayList<IPath>();
+        for (int i = 0; i < count; i++) {
+            changed.add(generator.modify(projectDir, (int) ((long) i * files / count), 1));
+        }
+        List<IPath> none = Collections.emptyList();
+        start = System.nanoTime();
+        stats = sync.incrementalSync(changed, none);
+        report("incremental.changed", params, System.nanoTime() - start, stats, stats
+                .getBytes());
+
+        for (IPath path : changed) {
+            FS.delete(new File(projectDir, path.toOSString()), false);
+        }
+        start = System.nanoTime();
+        stats = sync.incrementalSync(none, changed);
+        report("incremental.removed", params, System.nanoTime() - start, stats, stats
+                .getBytes());
+
+        start = System.nanoTime();
+        stats = sync.fullSync(true);
+        report("clean", params, System.nanoTime() - start, stats, stats.getBytes());
+    }
+
+    private void report(String phase, String params, long nanos, TreeSync.Stats stats,
+            long bytes) {
+        double ms = nanos / 1000000.0;
+        double mbs = nanos == 0 ? 0 : (bytes / (1024.0 * 1024.0)) / (nanos / 1000000000.0);
+        int examined = stats == null ? 0 : stats.getExamined();
+        int copied = stats == null ? 0 : stats.getCopied();
+        int deleted = stats == null ? 0 : stats.getDeleted();
+        out.println(String.format(Locale.ENGLISH,
+                "  %-22s %12.1f ms %9d examined %9d copied %9d deleted %9.2f MB/s", phase,
+                Double.valueOf(ms), Integer.valueOf(examined), Integer.valueOf(copied),
+                Integer.valueOf(deleted), Double.valueOf(mbs)));
+        results.add(String.format(Locale.ENGLISH, "%s,\"%s\",%.1f,%d,%d,%d,%d,%.2f", phase,
+                params, Double.valueOf(ms), Integer.valueOf(examined), Integer
+                .valueOf(copied), Integer.valueOf(deleted), Long.valueOf(bytes), Double
+                .valueOf(mbs)));
+    }
+
+    /**
+     * Writes all results as CSV (header line plus one line per phase)
+     * @param file
+     */
+    public void writeCsv(File file) throws IOException {
+        PrintWriter pw = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(file), "UTF-8"));
+        try {
+            pw.println("phase,params,ms,examined,copied,deleted,bytes,mb_per_s");
+            for (String line : results) {
+                pw.println(line);
+            }
+        } finally {
+            pw.close();
+        }
+    }
+}
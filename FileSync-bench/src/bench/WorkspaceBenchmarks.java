@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Benchmarks of the FileSync builder in a running workspace. Run this class as
+ * "JUnit Plug-in Test" with "Run in UI thread" off and "Headless mode" as
+ * application, benchmark parameters are given as VM arguments (system properties).
+ * Workspace auto build is disabled while benchmarks run, all builds are started
+ * explicitly.
+ * <p>
+ * Builder scale benchmarks ({@link BuilderBenchmarks}): parameters as for
+ * {@link ScaleBenchmarks}, "scale.csv" (optional CSV file).
+ * <p>
+ * Replay of builds recorded with the "de.loskutov.FileSync/debug/recordDir" option:
+ * "replay.dir" (recorded project directory: [recordDir]/[project]), "replay.repeat"
+ * (number of replays, default 1), "replay.csv" (optional CSV file). The replay is
+ * skipped if "replay.dir" is not set.
+ * @author Andrey
+ */
+public class WorkspaceBenchmarks extends TestCase {
+
+    private boolean autoBuilding;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        autoBuilding = WorkspaceBuilds.setAutoBuilding(false);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        WorkspaceBuilds.setAutoBuilding(autoBuilding);
+        super.tearDown();
+    }
+
+    public void testScale() throws Exception {
+        BuilderBenchmarks benchmarks = new BuilderBenchmarks(System.out);
+        benchmarks.runAll();
+        String csv = System.getProperty("scale.csv");
+        if (csv != null) {
+            benchmarks.writeCsv(new File(csv));
+            System.out.println("Results written to " + new File(csv).getAbsolutePath());
+        }
+    }
+
+    public void testReplay() throws Exception {
+        String dir = System.getProperty("replay.dir");
+        if (dir == null) {
+            System.out.println("testReplay skipped, \"replay.dir\" is not set");
+            return;
+        }
+        File recordDir = new File(dir);
+        assertTrue("Missing recording: " + recordDir, recordDir.isDirectory());
+        int repeat = Integer.getInteger("replay.repeat", 1).intValue();
+        List<Replay> replays = new ArrayList<Replay>();
+        for (int i = 0; i < repeat; i++) {
+            File workDir = BenchData.createTempDir("fsreplay");
+            Replay replay = new Replay(recordDir, workDir);
+            try {
+                replay.run(System.out);
+            } finally {
+                replay.dispose();
+                BenchData.deleteTree(workDir);
+            }
+            replays.add(replay);
+        }
+        String csv = System.getProperty("replay.csv");
+        if (csv != null) {
+            Replay.writeCsv(replays, new File(csv));
+            System.out.println("Results written to " + new File(csv).getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package bench;
+
+import java.io.File;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceDescription;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.jobs.Job;
+
+import de.loskutov.fs.builder.FileSyncBuilder;
+import de.loskutov.fs.metrics.MappingMetrics;
+import de.loskutov.fs.metrics.SyncMetrics;
+
+/**
+ * Workspace operations of the benchmarks running inside Eclipse: project import and
+ * timed builds. Build counters are taken from {@link SyncMetrics}, which is reset
+ * before each build.
+ * @author Andrey
+ */
+public final class WorkspaceBuilds {
+
+    /**
+     * Timing and counters of a single build
+     */
+    public static final class Stats {
+        long nanos;
+        long examined;
+        long copied;
+        long deleted;
+        long bytes;
+
+        /**
+         * @return build duration, including FileSync jobs started by the build
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getExamined() {
+            return examined;
+        }
+
+        /**
+         * @return number of copied files, with or without variables substitution
+         */
+        public long getCopied() {
+            return copied;
+        }
+
+        public long getDeleted() {
+            return deleted;
+        }
+
+        /**
+         * @return number of bytes written to the destinations
+         */
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    private WorkspaceBuilds() {
+        // don't instantiate me
+    }
+
+    /**
+     * Creates and opens the project stored in given directory (it must contain the
+     * ".project" file). The project stays in that directory.
+     * @param projectDir
+     * @return opened project
+     */
+    public static IProject importProject(File projectDir) throws CoreException {
+        IWorkspace workspace = ResourcesPlugin.getWorkspace();
+        IProjectDescription description = workspace.loadProjectDescription(new Path(
+                new File(projectDir, IProjectDescription.DESCRIPTION_FILE_NAME)
+                .getAbsolutePath()));
+        description.setLocation(new Path(projectDir.getAbsolutePath()));
+        IProject project = workspace.getRoot().getProject(description.getName());
+        NullProgressMonitor monitor = new NullProgressMonitor();
+        project.create(description, monitor);
+        project.open(monitor);
+        return project;
+    }
+
+    /**
+     * @param enabled
+     * @return previous state of the workspace auto build
+     */
+    public static boolean setAutoBuilding(boolean enabled) throws CoreException {
+        IWorkspace workspace = ResourcesPlugin.getWorkspace();
+        IWorkspaceDescription description = workspace.getDescription();
+        boolean old = description.isAutoBuilding();
+        description.setAutoBuilding(enabled);
+        workspace.setDescription(description);
+        return old;
+    }
+
+    /**
+     * Runs the build and waits for the FileSync jobs started by it
+     * @param project
+     * @param kind one of IncrementalProjectBuilder build kinds
+     * @return build timing and FileSync counters
+     */
+    public static Stats build(IProject project, int kind) throws CoreException {
+        SyncMetrics.getDefault().reset();
+        NullProgressMonitor monitor = new NullProgressMonitor();
+        Stats stats = new Stats();
+        long start = System.nanoTime();
+        project.build(kind, monitor);
+        try {
+            Job.getJobManager().join(FileSyncBuilder.class, monitor);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        stats.nanos = System.nanoTime() - start;
+
+        // see SyncMetricsMXBean.getMappings() for the key format
+        String prefix = project.getName() + ": ";
+        Map<String, MappingMetrics> mappings = SyncMetrics.getDefault().getMappings();
+        for (Map.Entry<String, MappingMetrics> entry : mappings.entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                continue;
+            }
+            MappingMetrics metrics = entry.getValue();
+            stats.examined += metrics.getExamined();
+            stats.copied += metrics.getCopied() + metrics.getSubstituted();
+            stats.deleted += metrics.getDeleted();
+            stats.bytes += metrics.getBytesWritten();
+        }
+        return stats;
+    }
+}
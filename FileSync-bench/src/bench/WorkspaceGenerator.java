@@ -0,0 +1,373 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+import de.loskutov.fs.builder.FileSyncBuilder;
+import de.loskutov.fs.command.FileMapping;
+import de.loskutov.fs.properties.ProjectProperties;
+
+/**
+ * Generates FileSync projects of arbitrary size for scale tests. The generated
+ * project contains ".project" with the FileSync builder and the FileSync settings, so
+ * it can be imported into a workspace, or used directly by the standalone engine.
+ * <p>
+ * Layout: mapping "k" syncs "src/m[k]" to "[destination]/m[k]", file "i" belongs to
+ * mapping "i % mappings" and is stored in a directory tree of given depth, so that
+ * every leaf directory has about "filesPerDir" files. Contents of file "i" depend only
+ * on the seed and "i" and on the modification count, so files can be changed or
+ * re-created without keeping the file list in memory (millions of files).
+ * <p>
+ * All settings can be given as system properties "gen.[name]", see
+ * {@link #WorkspaceGenerator()}.
+ * @author Andrey
+ */
+public class WorkspaceGenerator {
+
+    public static final String SOURCE_DIR = "src";
+
+    public static final String VARIABLES_FILE = "vars.properties";
+
+    public static final String EXCLUDED_EXTENSION = "tmp";
+
+    private static final String[] WORDS = { "public", "void", "value", "name", "sync",
+        "file", "path", "<entry>", "</entry>", "=", "42" };
+
+    private int files;
+
+    private int depth;
+
+    private int filesPerDir;
+
+    private int minSize;
+
+    private int maxSize;
+
+    private int textPercent;
+
+    private int placeholderPercent;
+
+    private int keys;
+
+    private int mappings;
+
+    private int excludedPercent;
+
+    private long seed;
+
+    /** reused by all files, at least maxSize long */
+    private byte[] buffer;
+
+    /**
+     * Creates generator with settings from system properties (defaults in brackets):
+     * "gen.files" (1000), "gen.depth" (3), "gen.filesPerDir" (100), "gen.minSize" and
+     * "gen.maxSize" (100 and 65536 bytes, log-uniform distributed), "gen.textPercent"
+     * (80), "gen.placeholderPercent" (percent of text lines with variables, 10),
+     * "gen.keys" (20), "gen.mappings" (1), "gen.excludedPercent" (files matching the
+     * exclusion pattern, 5) and "gen.seed" (42).
+     */
+    public WorkspaceGenerator() {
+        super();
+        files = Integer.getInteger("gen.files", 1000).intValue();
+        depth = Integer.getInteger("gen.depth", 3).intValue();
+        filesPerDir = Integer.getInteger("gen.filesPerDir", 100).intValue();
+        minSize = Integer.getInteger("gen.minSize", 100).intValue();
+        maxSize = Integer.getInteger("gen.maxSize", 64 * 1024).intValue();
+        textPercent = Integer.getInteger("gen.textPercent", 80).intValue();
+        placeholderPercent = Integer.getInteger("gen.placeholderPercent", 10).intValue();
+        keys = Integer.getInteger("gen.keys", 20).intValue();
+        mappings = Integer.getInteger("gen.mappings", 1).intValue();
+        excludedPercent = Integer.getInteger("gen.excludedPercent", 5).intValue();
+        seed = Long.getLong("gen.seed", 42).longValue();
+    }
+
+    /**
+     * Creates the project. Existing files are overwritten, but not deleted.
+     * @param projectDir project root directory
+     * @param destinationDir root directory for all mapping destinations
+     * @return total size of generated files
+     */
+    public long generate(File projectDir, File destinationDir) throws IOException {
+        writeProjectFiles(projectDir, destinationDir);
+        long bytes = 0;
+        for (int i = 0; i < files; i++) {
+            bytes += writeFile(projectDir, i, 0);
+        }
+        return bytes;
+    }
+
+    /**
+     * Changes contents of given file
+     * @param projectDir
+     * @param index file index
+     * @param modification modification count, should be > 0 and increase with each
+     * call for the same file
+     * @return project relative path of the changed file
+     */
+    public IPath modify(File projectDir, int index, int modification) throws IOException {
+        IPath path = getPath(index);
+        File file = new File(projectDir, path.toOSString());
+        long lastModified = file.lastModified();
+        writeFile(projectDir, index, modification);
+        // file systems with coarse timestamps would hide the change from the up-to-date
+        // check, which compares time stamps and sizes
+        if (file.lastModified() - lastModified < 2000) {
+            file.setLastModified(lastModified + 2000);
+        }
+        return path;
+    }
+
+    /**
+     * @param index file index
+     * @return project relative path of given file
+     */
+    public IPath getPath(int index) {
+        int mapping = index % mappings;
+        int leaf = index / filesPerDir;
+        int fanout = getFanout();
+        StringBuffer sb = new StringBuffer(64);
+        sb.append(SOURCE_DIR).append("/m").append(mapping);
+        for (int level = 0; level < depth; level++) {
+            sb.append("/d").append(leaf % fanout);
+            leaf /= fanout;
+        }
+        sb.append("/f").append(index).append('.').append(getExtension(index));
+        return new Path(sb.toString());
+    }
+
+    /**
+     * @return number of directories per tree level, so that there are enough leaf
+     * directories for all files
+     */
+    private int getFanout() {
+        if (depth <= 0) {
+            return 1;
+        }
+        int leafDirs = Math.max(1, (files + filesPerDir - 1) / filesPerDir);
+        return Math.max(1, (int) Math.ceil(Math.pow(leafDirs, 1.0 / depth)));
+    }
+
+    private String getExtension(int index) {
+        Random random = new Random(seed + index);
+        if (random.nextInt(100) < excludedPercent) {
+            return EXCLUDED_EXTENSION;
+        }
+        return random.nextInt(100) < textPercent ? "txt" : "bin";
+    }
+
+    private long writeFile(File projectDir, int index, int modification)
+    throws IOException {
+        File file = new File(projectDir, getPath(index).toOSString());
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        Random random = new Random((seed + index) * 31 + modification);
+        int size = getSize(random);
+        if (buffer == null || buffer.length < size) {
+            buffer = new byte[Math.max(size, maxSize)];
+        }
+        if (file.getName().endsWith(".bin")) {
+            random.nextBytes(buffer);
+        } else {
+            fillText(random, size);
+        }
+        FileOutputStream fos = new FileOutputStream(file, false);
+        try {
+            fos.write(buffer, 0, size);
+        } finally {
+            fos.close();
+        }
+        return size;
+    }
+
+    /**
+     * @return log-uniform distributed size: small files are much more frequent
+     */
+    private int getSize(Random random) {
+        if (maxSize <= minSize) {
+            return minSize;
+        }
+        double min = Math.log(Math.max(1, minSize));
+        double max = Math.log(maxSize);
+        return (int) Math.exp(min + random.nextDouble() * (max - min));
+    }
+
+    private void fillText(Random random, int size) {
+        int pos = 0;
+        while (pos < size) {
+            if (keys > 0 && random.nextInt(100) < placeholderPercent) {
+                pos = append(pos, size, "${key" + random.nextInt(keys) + "} ");
+            }
+            int lineEnd = Math.min(size, pos + 40 + random.nextInt(60));
+            while (pos < lineEnd - 1) {
+                pos = append(pos, lineEnd - 1, WORDS[random.nextInt(WORDS.length)]);
+                pos = append(pos, lineEnd - 1, " ");
+            }
+            pos = append(pos, size, "\n");
+        }
+    }
+
+    /**
+     * Appends ASCII string to the buffer, at most until given limit
+     * @return new buffer position
+     */
+    private int append(int pos, int limit, String s) {
+        for (int i = 0; i < s.length() && pos < limit; i++) {
+            buffer[pos++] = (byte) s.charAt(i);
+        }
+        return pos;
+    }
+
+    private void writeProjectFiles(File projectDir, File destinationDir) throws IOException {
+        File settingsDir = new File(projectDir, FileSyncBuilder.SETTINGS_DIR);
+        if (!settingsDir.isDirectory() && !settingsDir.mkdirs()) {
+            throw new IOException("Could not create directory " + settingsDir);
+        }
+        PrintWriter pw = createWriter(new File(projectDir, ".project"));
+        try {
+            pw.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            pw.println("<projectDescription>");
+            pw.println("\t<name>" + projectDir.getName() + "</name>");
+            pw.println("\t<comment></comment>");
+            pw.println("\t<projects></projects>");
+            pw.println("\t<buildSpec>");
+            pw.println("\t\t<buildCommand>");
+            pw.println("\t\t\t<name>" + FileSyncBuilder.BUILDER_ID + "</name>");
+            pw.println("\t\t\t<arguments></arguments>");
+            pw.println("\t\t</buildCommand>");
+            pw.println("\t</buildSpec>");
+            pw.println("\t<natures></natures>");
+            pw.println("</projectDescription>");
+        } finally {
+            pw.close();
+        }
+
+        boolean useVariables = keys > 0 && placeholderPercent > 0;
+        if (useVariables) {
+            pw = createWriter(new File(projectDir, VARIABLES_FILE));
+            try {
+                for (int i = 0; i < keys; i++) {
+                    pw.println("key" + i + "=value_of_the_key_" + i);
+                }
+            } finally {
+                pw.close();
+            }
+        }
+
+        IPath projectPath = new Path(projectDir.getAbsolutePath());
+        IPath destinationPath = new Path(destinationDir.getAbsolutePath());
+        IPath[] exclusions = excludedPercent > 0 ? new IPath[] { new Path("**/*."
+                + EXCLUDED_EXTENSION) } : new IPath[0];
+        pw = createWriter(new File(settingsDir, FileSyncBuilder.SETTINGS_FILE));
+        try {
+            pw.println(ProjectProperties.KEY_CLEAN_ON_CLEAN_BUILD + "=true");
+            pw.println("eclipse.preferences.version=1");
+            for (int k = 0; k < mappings; k++) {
+                FileMapping mapping = new FileMapping(new Path(SOURCE_DIR + "/m" + k),
+                        destinationPath.append("m" + k), useVariables ? new Path(
+                                VARIABLES_FILE) : null, new IPath[0], exclusions,
+                                projectPath);
+                pw.println(escape(FileMapping.FULL_MAP_PREFIX + k) + "="
+                        + escape(mapping.encode()));
+            }
+        } finally {
+            pw.close();
+        }
+    }
+
+    /**
+     * Escapes characters which are special in properties files
+     */
+    private static String escape(String s) {
+        StringBuffer sb = new StringBuffer(s.length() + 8);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' || c == ':' || c == '=') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static PrintWriter createWriter(File file) throws IOException {
+        return new PrintWriter(new OutputStreamWriter(new FileOutputStream(file, false),
+                "UTF-8"));
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    public void setFiles(int files) {
+        this.files = files;
+    }
+
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    public void setFilesPerDir(int filesPerDir) {
+        this.filesPerDir = filesPerDir;
+    }
+
+    public void setSizes(int minSize, int maxSize) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+    }
+
+    public void setTextPercent(int textPercent) {
+        this.textPercent = textPercent;
+    }
+
+    public void setPlaceholderPercent(int placeholderPercent) {
+        this.placeholderPercent = placeholderPercent;
+    }
+
+    public void setKeys(int keys) {
+        this.keys = keys;
+    }
+
+    public int getMappings() {
+        return mappings;
+    }
+
+    public void setMappings(int mappings) {
+        this.mappings = mappings;
+    }
+
+    public void setExcludedPercent(int excludedPercent) {
+        this.excludedPercent = excludedPercent;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return human readable settings, used as benchmark parameters
+     */
+    @Override
+    public String toString() {
+        return "files=" + files + " depth=" + depth + " sizes="
+        + BenchData.formatSize(minSize) + "-" + BenchData.formatSize(maxSize)
+        + " text=" + textPercent + "% vars=" + placeholderPercent + "% maps="
+        + mappings + " excl=" + excludedPercent + "%";
+    }
+}
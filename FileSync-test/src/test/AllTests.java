@@ -20,6 +20,7 @@ public class AllTests {
 		//$JUnit-BEGIN$
 		suite.addTestSuite(TestBuilder.class);
 		suite.addTestSuite(TestFS.class);
+		suite.addTestSuite(TestAllocation.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,262 @@
+package test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+import de.loskutov.fs.builder.SyncOperation;
+import de.loskutov.fs.builder.SyncWizard;
+import de.loskutov.fs.command.CopyDelegate;
+import de.loskutov.fs.command.CopyDelegate1;
+import de.loskutov.fs.command.FS;
+import de.loskutov.fs.command.FileMapping;
+
+/**
+ * Guards the per resource code paths against allocation regressions. Budgets are
+ * bytes per operation, measured with the thread allocation counter of the JVM; if
+ * the JVM does not support it, the tests do nothing. Allocation differs between JVMs
+ * and GC settings, so absolute budgets are about twice the measured values, and
+ * budgets are relative to a baseline wherever one exists.
+ */
+public class TestAllocation extends TestCase {
+
+	private static final int WARMUP = 20000;
+
+	private static final int COUNT = 20000;
+
+	private static final IPath PROJECT_PATH = new Path("/work/project");
+
+	static final IPath FILE_PATH = new Path("src/de/loskutov/fs/Example.java");
+
+	TestWizard wizard;
+
+	private File tempDir;
+
+	/** consumes results, so that the measured code cannot be removed */
+	static volatile Object sink;
+
+	/**
+	 * Exposes protected methods
+	 */
+	static class TestWizard extends SyncWizard {
+		@Override
+		public void setMappings(FileMapping[] mappings) {
+			super.setMappings(mappings);
+		}
+
+		@Override
+		public boolean matchFilter(IPath path, boolean isFolder) {
+			return super.matchFilter(path, isFolder);
+		}
+
+		@Override
+		public List getMappings(IPath path, boolean isFolder, boolean includeExcludes) {
+			return super.getMappings(path, isFolder, includeExcludes);
+		}
+
+		@Override
+		public SyncOperation createOperation(List mappingList, IPath absSourcePath,
+				IPath relativePath, boolean folder) {
+			return super.createOperation(mappingList, absSourcePath, relativePath, folder);
+		}
+	}
+
+	/**
+	 * Measured operation
+	 */
+	interface Operation {
+		void run() throws Exception;
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		FS.enableLogging = false;
+		wizard = new TestWizard();
+		wizard.setMappings(new FileMapping[] {
+				createMapping("src|/work/dest|,|,|,"),
+				createMapping("doc|/work/doc|,|**/*.bak|,") });
+		tempDir = new File(System.getProperty("java.io.tmpdir"), "fsallocDir");
+		FS.create(tempDir, false);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		FS.delete(tempDir, true);
+		FS.enableLogging = true;
+		super.tearDown();
+	}
+
+	private static FileMapping createMapping(String encoded) {
+		return new FileMapping(encoded, PROJECT_PATH);
+	}
+
+	/**
+	 * @return allocated bytes per operation, or -1 if not supported
+	 */
+	private static long measure(Operation operation) throws Exception {
+		return measure(operation, WARMUP, COUNT);
+	}
+
+	/**
+	 * @return allocated bytes per operation, or -1 if not supported
+	 */
+	private static long measure(Operation operation, int warmup, int count)
+			throws Exception {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		if (!threads.isThreadAllocatedMemorySupported()
+				|| !threads.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+		for (int i = 0; i < warmup; i++) {
+			operation.run();
+		}
+		long id = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(id);
+		for (int i = 0; i < count; i++) {
+			operation.run();
+		}
+		long bytes = threads.getThreadAllocatedBytes(id) - before;
+		return bytes / count;
+	}
+
+	private static void assertBudget(String name, long budget, long bytes) {
+		if (bytes < 0) {
+			// not supported by this JVM
+			return;
+		}
+		assertTrue(name + " allocates " + bytes + " bytes/op, budget is " + budget,
+				bytes <= budget);
+	}
+
+	public void testMatchFilter() throws Exception {
+		long bytes = measure(new Operation() {
+			public void run() {
+				sink = Boolean.valueOf(wizard.matchFilter(FILE_PATH, false));
+			}
+		});
+		// no patterns: nothing to convert, the budget only absorbs JVM noise
+		assertBudget("matchFilter", 64, bytes);
+
+		final IPath docPath = new Path("doc/guide/index.html");
+		bytes = measure(new Operation() {
+			public void run() {
+				sink = Boolean.valueOf(wizard.matchFilter(docPath, false));
+			}
+		});
+		// path converted once for pattern matching
+		assertBudget("matchFilter with exclusions", 512, bytes);
+	}
+
+	public void testGetMappings() throws Exception {
+		long bytes = measure(new Operation() {
+			public void run() {
+				sink = wizard.getMappings(FILE_PATH, false, false);
+			}
+		});
+		// cached list for the path
+		assertBudget("getMappings", 64, bytes);
+	}
+
+	public void testCreateOperation() throws Exception {
+		final List mappings = wizard.getMappings(FILE_PATH, false, false);
+		final IPath location = PROJECT_PATH.append(FILE_PATH);
+		SyncOperation operation = wizard.createOperation(mappings, location, FILE_PATH,
+				false);
+		assertEquals(1, operation.size());
+		assertEquals(new File("/work/dest/de/loskutov/fs/Example.java"), operation
+				.getDestination(0));
+		assertFalse(operation.isSubstitute(0));
+		// mappings are shared and must not carry per resource state
+		assertSame(mappings.get(0), operation.getMapping(0));
+
+		long bytes = measure(new Operation() {
+			public void run() {
+				sink = wizard.createOperation(mappings, location, FILE_PATH, false);
+			}
+		});
+		// two paths, destination string and file, the operation and its arrays
+		assertBudget("createOperation", 1024, bytes);
+	}
+
+	public void testCopyUnchanged() throws Exception {
+		final File source = new File(tempDir, "source.txt");
+		final File destination = new File(tempDir, "destination.txt");
+		write(source, "some text\n", 100);
+		assertTrue(FS.create(destination, true));
+		assertTrue(FS.copy(source, destination, false));
+		// newer JVMs allocate in each file attribute lookup, the budget is therefore
+		// relative to a single lookup: FS.copy needs two existence checks and the time
+		// stamps and sizes of both files, six lookups, so twelve leave headroom
+		long statBytes = measure(new Operation() {
+			public void run() {
+				sink = Boolean.valueOf(source.isFile());
+			}
+		});
+		long bytes = measure(new Operation() {
+			public void run() {
+				sink = Boolean.valueOf(FS.copy(source, destination, false));
+			}
+		});
+		assertBudget("FS.copy unchanged", 12 * statBytes + 64, bytes);
+	}
+
+	public void testCopyDelegate1PerLine() throws Exception {
+		final int lines = 1000;
+		String line = "line with ${key1} and ${key2} variables, and some more text\n";
+		File source = new File(tempDir, "source.txt");
+		File destination = new File(tempDir, "destination.txt");
+		write(source, line, lines);
+		Properties props = new Properties();
+		for (int i = 0; i < 20; i++) {
+			props.setProperty("key" + i, "value" + i);
+		}
+		assertTrue(FS.create(destination, true));
+		// the regular expression based implementation is the baseline; both read and
+		// replace line by line, so they allocate about the same
+		long baseline = measureCopy(new CopyDelegate2(), props, source, destination);
+		long bytes = measureCopy(new CopyDelegate1(), props, source, destination);
+		assertBudget("CopyDelegate1 per line", 2 * baseline / lines, bytes / lines);
+	}
+
+	/**
+	 * @return allocated bytes per copy, or -1 if not supported
+	 */
+	private static long measureCopy(final CopyDelegate delegate, Properties props,
+			final File source, final File destination) throws Exception {
+		delegate.setEncoding("UTF-8");
+		delegate.setPropertiesMap(props);
+		return measure(new Operation() {
+			public void run() {
+				// not up to date anymore
+				destination.setLastModified(0);
+				sink = Boolean.valueOf(delegate.copy(source, destination));
+			}
+		}, 200, 200);
+	}
+
+	private static void write(File file, String text, int times) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			for (int i = 0; i < times; i++) {
+				writer.write(text);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+}
@@ -36,13 +36,13 @@ import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.jface.viewers.StructuredSelection;
 import org.osgi.framework.Bundle;
 
-import de.loskutov.fs.FileSyncPlugin;
 import de.loskutov.fs.actions.ForceFileSyncActionDelegate;
 import de.loskutov.fs.builder.FileSyncBuilder;
 import de.loskutov.fs.command.FileMapping;
 import de.loskutov.fs.preferences.FileSyncConstants;
 import de.loskutov.fs.properties.ProjectHelper;
 import de.loskutov.fs.properties.ProjectProperties;
+import de.loskutov.fs.ui.FileSyncUIPlugin;
 
 public class TestBuilder extends TestCase {
 	private static final String PREFIX_EXCL_FROM_SYNC = "resources";
@@ -83,7 +83,7 @@ public class TestBuilder extends TestCase {
 
 	public TestBuilder() {
 		super();
-		IPreferenceStore store = FileSyncPlugin.getDefault().getPreferenceStore();
+		IPreferenceStore store = FileSyncUIPlugin.getDefault().getPreferenceStore();
 		store.setValue(FileSyncConstants.KEY_ASK_USER, false);
 		monitor = new NullProgressMonitor();
 		allDestFiles = new ArrayList<File>();
@@ -601,6 +601,47 @@ public class TestBuilder extends TestCase {
 		waitForBuilder();
 	}
 
+	public void testCleanBuild() throws Exception {
+		FileSyncBuilder builder = createBuilder(srcProj);
+
+		change();
+		waitForBuilder();
+		checkAfterChange();
+
+		// orphans: not existing in the source project
+		File mappingDest = new File(destPaths[0], srcRootDirs[0]);
+		String subFolder = null;
+		for (IResource member : srcProj.getFolder(srcRootDirs[0]).members()) {
+			if (member.getType() == IResource.FOLDER) {
+				subFolder = member.getName();
+				break;
+			}
+		}
+		assertNotNull(subFolder);
+		File produced = new File(mappingDest, subFolder);
+		assertTrue(produced.isDirectory());
+		File orphanFile = new File(produced, "orphan.txt");
+		File orphanDir = new File(produced, "orphanDir");
+		assertTrue(orphanFile.createNewFile());
+		assertTrue(orphanDir.mkdir());
+		assertTrue(new File(orphanDir, "orphan.txt").createNewFile());
+		// mapping destination could be shared with other projects
+		File sharedFile = new File(mappingDest, "shared.txt");
+		assertTrue(sharedFile.createNewFile());
+
+		builder.build(IncrementalProjectBuilder.CLEAN_BUILD, monitor);
+		waitForBuilder();
+
+		assertFalse("not deleted: " + orphanFile, orphanFile.exists());
+		assertFalse("not deleted: " + orphanDir, orphanDir.exists());
+		assertTrue("deleted: " + sharedFile, sharedFile.exists());
+		assertTrue(sharedFile.delete());
+		checkAfterChange();
+
+		delete();
+		waitForBuilder();
+	}
+
 	private void waitForBuilder() throws Exception {
 		IJobManager jobManager = Job.getJobManager();
 		synchronized (this) {
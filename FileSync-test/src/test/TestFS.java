@@ -7,18 +7,24 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
 
 import junit.framework.TestCase;
 
+import org.eclipse.core.runtime.Path;
 import org.junit.Ignore;
 
 import de.loskutov.fs.command.CopyDelegate;
 import de.loskutov.fs.command.CopyDelegate1;
+import de.loskutov.fs.command.DestinationMirror;
 import de.loskutov.fs.command.FS;
+import de.loskutov.fs.command.FileMapping;
+import de.loskutov.fs.command.ParallelDelete;
 
 public class TestFS extends TestCase {
 
@@ -123,6 +129,85 @@ public class TestFS extends TestCase {
 		assertTrue(result);
 	}
 
+	public void testDeleteTree() throws Exception {
+		File dir = tempDir;
+		int count = createTree(dir, 3, 6, 5);
+		assertTrue(count > 0);
+		assertTrue(dir.isDirectory());
+
+		ParallelDelete delete = new ParallelDelete(null);
+		boolean result = delete.delete(dir);
+		assertTrue(result);
+		assertFalse(dir.exists());
+		assertTrue(delete.getFailures().isEmpty());
+		// all files, sub directories and the root itself
+		assertEquals(count + 1, delete.getDeletedCount());
+
+		createTree(dir, 2, 2, 2);
+		result = FS.delete(dir, true);
+		assertTrue(result);
+		assertFalse(dir.exists());
+
+		// single I/O permit on the device
+		count = createTree(dir, 3, 4, 2);
+		delete = new ParallelDelete(null, 1);
+		result = delete.delete(dir);
+		assertTrue(result);
+		assertFalse(dir.exists());
+		assertEquals(count + 1, delete.getDeletedCount());
+	}
+
+	public void testMirrorOrphans() throws Exception {
+		File root = new File(tempDir, "mirror");
+		File mappingDest = new File(root, "dest");
+		File produced = new File(mappingDest, "a");
+		File expected = new File(produced, "expected.txt");
+		File orphan = new File(produced, "orphan.txt");
+		// may belong to other projects
+		File shared = new File(mappingDest, "other.txt");
+		File sharedRoot = new File(root, "other.txt");
+		try {
+			assertTrue(produced.mkdirs());
+			assertTrue(expected.createNewFile());
+			assertTrue(orphan.createNewFile());
+			assertTrue(shared.createNewFile());
+			assertTrue(sharedRoot.createNewFile());
+
+			FileMapping mapping = new FileMapping(new Path("src"), new Path(mappingDest
+					.getAbsolutePath()), null, null, null, new Path(tempDir.getAbsolutePath()));
+			Set<File> roots = DestinationMirror.getRoots(new FileMapping[] { mapping },
+					new Path(root.getAbsolutePath()));
+			DestinationMirror mirror = new DestinationMirror();
+			mirror.add(root, true);
+			mirror.add(mappingDest, true);
+			mirror.add(produced, true);
+			mirror.add(expected, false);
+
+			List<File> orphans = mirror.getOrphans(roots);
+			assertEquals(Collections.singletonList(orphan), orphans);
+		} finally {
+			FS.delete(root, true);
+		}
+	}
+
+	/**
+	 * @return number of created files and directories (without the root)
+	 */
+	static int createTree(File dir, int depth, int dirs, int files) throws IOException {
+		assertTrue(dir.mkdirs());
+		int count = 0;
+		for (int i = 0; i < files; i++) {
+			assertTrue(new File(dir, "file" + i + ".txt").createNewFile());
+			count++;
+		}
+		if (depth > 0) {
+			for (int i = 0; i < dirs; i++) {
+				count += createTree(new File(dir, "dir" + i), depth - 1, dirs, files) + 1;
+			}
+		}
+		return count;
+	}
+
 	public void testIsSame() throws Exception {
 		byte[] randomBytes = createRandomBytes(500);
 
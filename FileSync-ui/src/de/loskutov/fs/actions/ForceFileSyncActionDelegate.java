@@ -18,11 +18,7 @@ import org.eclipse.core.resources.IProjectNature;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.IAdaptable;
-import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
-import org.eclipse.core.runtime.Status;
-import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.action.IAction;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.preference.IPreferenceStore;
@@ -32,10 +28,11 @@ import org.eclipse.swt.widgets.Event;
 import org.eclipse.ui.actions.ActionDelegate;
 import org.eclipse.ui.handlers.HandlerUtil;
 
-import de.loskutov.fs.FileSyncPlugin;
 import de.loskutov.fs.builder.FileSyncBuilder;
+import de.loskutov.fs.builder.SyncScheduler;
 import de.loskutov.fs.preferences.FileSyncConstants;
 import de.loskutov.fs.properties.ProjectHelper;
+import de.loskutov.fs.ui.FileSyncUIPlugin;
 
 /**
  * @author Andrey
@@ -67,15 +64,15 @@ public class ForceFileSyncActionDelegate extends ActionDelegate implements IHand
      */
     public FileSyncBuilder getOrCreateBuilder() {
         if (project == null) {
-            FileSyncPlugin.error("Could not run FileSync builder - project is null!",
+            FileSyncUIPlugin.error("Could not run FileSync builder - project is null!",
                     null);
             return null;
         }
-        IPreferenceStore store = FileSyncPlugin.getDefault().getPreferenceStore();
+        IPreferenceStore store = FileSyncUIPlugin.getDefault().getPreferenceStore();
         boolean askUser = store.getBoolean(FileSyncConstants.KEY_ASK_USER);
         if (ProjectHelper.isBuilderDisabled(project)) {
             if (askUser) {
-                MessageDialog.openInformation(FileSyncPlugin.getShell(),
+                MessageDialog.openInformation(FileSyncUIPlugin.getShell(),
                         "FileSync builder is disabled!",
                         "Please activate FileSync builder for project '"
                                 + project.getName() + "' under\n"
@@ -87,7 +84,7 @@ public class ForceFileSyncActionDelegate extends ActionDelegate implements IHand
         if (!ProjectHelper.hasBuilder(project)) {
             boolean ok = true; // TODO should be taken from prefs
             if(askUser){
-                ok = MessageDialog.openQuestion(FileSyncPlugin.getShell(),
+                ok = MessageDialog.openQuestion(FileSyncUIPlugin.getShell(),
                         "FileSync builder is not enabled!",
                         "Should FileSync builder be enabled for project '"
                                 + project.getName() + "' ?");
@@ -101,16 +98,8 @@ public class ForceFileSyncActionDelegate extends ActionDelegate implements IHand
     }
 
     private void sync(FileSyncBuilder builder) {
-        final FileSyncBuilder finalBuilder = builder;
-
-        final Job myJob = new Job("Full project sync") {
-            @Override
-            public IStatus run(IProgressMonitor monitor) {
-                finalBuilder.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
-                return Status.OK_STATUS;//new JobStatus(IStatus.INFO, 0, this, "", null);
-            }
-        };
-        myJob.schedule();
+        SyncScheduler.getDefault().scheduleBuild(builder,
+                IncrementalProjectBuilder.FULL_BUILD, "Full project sync", 0);
     }
 
     //    private FileSyncBuilder getBuilder() {
@@ -122,7 +111,7 @@ public class ForceFileSyncActionDelegate extends ActionDelegate implements IHand
     //        //        try {
     //        //            commands = project.getDescription().getBuildSpec();
     //        //        } catch (CoreException e) {
-    //        //            FileSyncPlugin.error("Could not get builder info from project " + project.getName(), e);
+    //        //            FileSyncUIPlugin.error("Could not get builder info from project " + project.getName(), e);
     //        //            return null;
     //        //        }
     //        // the hack for problem above
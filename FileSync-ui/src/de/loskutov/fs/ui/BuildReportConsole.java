@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.ui;
+
+import java.io.IOException;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.ui.console.ConsolePlugin;
+import org.eclipse.ui.console.IConsole;
+import org.eclipse.ui.console.IConsoleManager;
+import org.eclipse.ui.console.MessageConsole;
+import org.eclipse.ui.console.MessageConsoleStream;
+
+import de.loskutov.fs.FileSyncPlugin;
+import de.loskutov.fs.metrics.BuildReport;
+
+/**
+ * Prints FileSync build reports to the "FileSync" console
+ * @author Andrey
+ */
+public class BuildReportConsole implements BuildReport.Listener {
+
+    private static final String CONSOLE_NAME = "FileSync";
+
+    private MessageConsole console;
+
+    public BuildReportConsole() {
+        super();
+    }
+
+    @Override
+    public void reportFinished(BuildReport report) {
+        MessageConsoleStream stream = getConsole().newMessageStream();
+        stream.println(report.toString());
+        try {
+            stream.close();
+        } catch (IOException e) {
+            FileSyncPlugin.log("Failed to write FileSync build report", e,
+                    IStatus.WARNING);
+        }
+    }
+
+    private synchronized MessageConsole getConsole() {
+        if (console != null) {
+            return console;
+        }
+        IConsoleManager manager = ConsolePlugin.getDefault().getConsoleManager();
+        IConsole[] consoles = manager.getConsoles();
+        for (int i = 0; i < consoles.length; i++) {
+            if (CONSOLE_NAME.equals(consoles[i].getName())
+                    && consoles[i] instanceof MessageConsole) {
+                console = (MessageConsole) consoles[i];
+                return console;
+            }
+        }
+        console = new MessageConsole(CONSOLE_NAME,
+                FileSyncUIPlugin.getImageDescriptor("icons/refresh.gif"));
+        manager.addConsoles(new IConsole[] { console });
+        return console;
+    }
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.ui;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.jface.resource.ImageRegistry;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.plugin.AbstractUIPlugin;
+import org.eclipse.ui.preferences.ScopedPreferenceStore;
+
+import de.loskutov.fs.FileSyncPlugin;
+import de.loskutov.fs.preferences.FileSyncConstants;
+
+/**
+ * The UI plugin class to be used in the desktop: property page, actions and
+ * dialogs on top of the headless FileSync core.
+ */
+public class FileSyncUIPlugin extends AbstractUIPlugin {
+
+    private static FileSyncUIPlugin plugin;
+
+    public static final String PLUGIN_ID = "de.loskutov.FileSync.ui";
+
+    private IPreferenceStore preferenceStore;
+
+    /**
+     * The constructor.
+     */
+    public FileSyncUIPlugin() {
+        super();
+        if(plugin != null){
+            throw new IllegalStateException("FileSync UI plugin is singleton!");
+        }
+        plugin = this;
+    }
+
+    /**
+     * Returns the shared instance.
+     */
+    public static FileSyncUIPlugin getDefault() {
+        return plugin;
+    }
+
+    /**
+     * All FileSync preferences are stored in the core plugin node, so that they are
+     * available without UI and existing workspace settings remain valid.
+     */
+    @Override
+    public synchronized IPreferenceStore getPreferenceStore() {
+        if (preferenceStore == null) {
+            preferenceStore = new ScopedPreferenceStore(new InstanceScope(),
+                    FileSyncPlugin.PLUGIN_ID);
+        }
+        return preferenceStore;
+    }
+
+    public static void error(String message, Throwable error) {
+        Shell shell = getShell();
+        if(message == null){
+            message = "";
+        }
+        if (error != null) {
+            message = message + " " + error.getMessage();
+        }
+        IPreferenceStore store = getDefault().getPreferenceStore();
+        if (store.getBoolean(FileSyncConstants.KEY_ASK_USER)) {
+            MessageDialog.openError(shell, "FileSync error", message);
+        }
+        FileSyncPlugin.log(message, error, IStatus.ERROR);
+    }
+
+    public static Shell getShell() {
+        return getDefault().getWorkbench().getActiveWorkbenchWindow().getShell();
+    }
+
+    /**
+     * Returns an image descriptor for the image file at the given plug-in
+     * relative path.
+     *
+     * @param path
+     *            the path
+     * @return the image descriptor
+     */
+    public static ImageDescriptor getImageDescriptor(String path) {
+        if (path == null) {
+            return null;
+        }
+        ImageRegistry imageRegistry = getDefault().getImageRegistry();
+        ImageDescriptor imageDescriptor = imageRegistry.getDescriptor(path);
+        if (imageDescriptor == null) {
+            imageDescriptor = imageDescriptorFromPlugin(PLUGIN_ID, path);
+            imageRegistry.put(path, imageDescriptor);
+        }
+        return imageDescriptor;
+    }
+
+    public static Image getImage(String path) {
+        if (path == null) {
+            return null;
+        }
+        // prefetch image, if not jet there
+        ImageDescriptor imageDescriptor = getImageDescriptor(path);
+        if (imageDescriptor != null) {
+            return getDefault().getImageRegistry().get(path);
+        }
+        // TODO error message
+        return null;
+    }
+}
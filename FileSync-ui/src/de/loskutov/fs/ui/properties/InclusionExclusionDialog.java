@@ -6,7 +6,7 @@
  * http://www.eclipse.org/legal/epl-v10.html
  * Contributor:  Andrey Loskutov - initial API and implementation
  *******************************************************************************/
-package de.loskutov.fs.properties;
+package de.loskutov.fs.ui.properties;
 
 import java.text.MessageFormat;
 import java.util.ArrayList;
@@ -43,7 +43,6 @@ import org.eclipse.ui.model.WorkbenchContentProvider;
 import org.eclipse.ui.model.WorkbenchLabelProvider;
 import org.eclipse.ui.views.navigator.ResourceComparator;
 
-import de.loskutov.fs.FileSyncPlugin;
 import de.loskutov.fs.dialogs.DialogField;
 import de.loskutov.fs.dialogs.IDialogFieldListener;
 import de.loskutov.fs.dialogs.IListAdapter;
@@ -51,6 +50,7 @@ import de.loskutov.fs.dialogs.LayoutUtil;
 import de.loskutov.fs.dialogs.ListDialogField;
 import de.loskutov.fs.dialogs.TypedElementSelectionValidator;
 import de.loskutov.fs.dialogs.TypedViewerFilter;
+import de.loskutov.fs.ui.FileSyncUIPlugin;
 
 public class InclusionExclusionDialog extends StatusDialog {
 
@@ -75,7 +75,7 @@ public class InclusionExclusionDialog extends StatusDialog {
         private final Image elementImage;
 
         public ExclusionInclusionLabelProvider(String key, ImageDescriptor descriptor) {
-            ImageRegistry registry = FileSyncPlugin.getDefault().getImageRegistry();
+            ImageRegistry registry = FileSyncUIPlugin.getDefault().getImageRegistry();
             if (registry.getDescriptor(key) == null) {
                 registry.put(key, descriptor);
             }
@@ -126,10 +126,10 @@ public class InclusionExclusionDialog extends StatusDialog {
 
         exclPatternList = createListContents(entryToEdit, PathListElement.EXCLUSION,
                 excLabel,
-                FileSyncPlugin.getImageDescriptor("icons/remove_from_path.gif"),
+                FileSyncUIPlugin.getImageDescriptor("icons/remove_from_path.gif"),
                 excButtonLabels);
         inclPatternList = createListContents(entryToEdit, PathListElement.INCLUSION,
-                incLabel, FileSyncPlugin.getImageDescriptor("icons/add_to_path.gif"),
+                incLabel, FileSyncUIPlugin.getImageDescriptor("icons/add_to_path.gif"),
                 incButtonLabels);
         if (focusOnExcluded) {
             exclPatternList.postSetFocusOnDialogField(parent.getDisplay());
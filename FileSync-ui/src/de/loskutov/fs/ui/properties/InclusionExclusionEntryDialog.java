@@ -6,7 +6,7 @@
  * http://www.eclipse.org/legal/epl-v10.html
  * Contributor:  Andrey Loskutov - initial API and implementation
  *******************************************************************************/
-package de.loskutov.fs.properties;
+package de.loskutov.fs.ui.properties;
 
 import java.text.MessageFormat;
 import java.util.List;
@@ -6,7 +6,7 @@
  * http://www.eclipse.org/legal/epl-v10.html
  * Contributor:  Andrey Loskutov - initial API and implementation
  *******************************************************************************/
-package de.loskutov.fs.properties;
+package de.loskutov.fs.ui.properties;
 
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.IPath;
@@ -15,7 +15,7 @@ import org.eclipse.swt.graphics.Image;
 import org.eclipse.ui.ISharedImages;
 import org.eclipse.ui.ide.IDE;
 
-import de.loskutov.fs.FileSyncPlugin;
+import de.loskutov.fs.ui.FileSyncUIPlugin;
 
 public class PathListLabelProvider extends LabelProvider {
 
@@ -154,25 +154,25 @@ public class PathListLabelProvider extends LabelProvider {
             } else {
                 key = ISharedImages.IMG_OBJ_FOLDER;
             }
-            return FileSyncPlugin.getDefault().getWorkbench().getSharedImages().getImage(key);
+            return FileSyncUIPlugin.getDefault().getWorkbench().getSharedImages().getImage(key);
         } else if (element instanceof PathListElementAttribute) {
             String key = ((PathListElementAttribute) element).getKey();
             if (key.equals(PathListElement.VARIABLES)) {
                 Object value = ((PathListElementAttribute) element).getValue();
                 Object defValue = ((PathListElementAttribute) element).getDefaultValue();
                 if(value == null){
-                    return FileSyncPlugin.getImage("icons/no_variables.gif");
+                    return FileSyncUIPlugin.getImage("icons/no_variables.gif");
                 }
                 if(value.equals(defValue) || defValue == null){
-                    return FileSyncPlugin.getImage("icons/variables.gif");
+                    return FileSyncUIPlugin.getImage("icons/variables.gif");
                 }
-                return FileSyncPlugin.getImage("icons/extra_variables.gif");
+                return FileSyncUIPlugin.getImage("icons/extra_variables.gif");
             } else if (key.equals(PathListElement.DESTINATION)) {
-                return FileSyncPlugin.getImage("icons/output_folder.gif");
+                return FileSyncUIPlugin.getImage("icons/output_folder.gif");
             } else if (key.equals(PathListElement.EXCLUSION)) {
-                return FileSyncPlugin.getImage("icons/remove_from_path.gif");
+                return FileSyncUIPlugin.getImage("icons/remove_from_path.gif");
             } else if (key.equals(PathListElement.INCLUSION)) {
-                return FileSyncPlugin.getImage("icons/add_to_path.gif");
+                return FileSyncUIPlugin.getImage("icons/add_to_path.gif");
             }
         }
         return null;
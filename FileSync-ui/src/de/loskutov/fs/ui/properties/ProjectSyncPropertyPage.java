@@ -6,7 +6,7 @@
  * http://www.eclipse.org/legal/epl-v10.html
  * Contributor:  Andrey Loskutov - initial API and implementation
  *******************************************************************************/
-package de.loskutov.fs.properties;
+package de.loskutov.fs.ui.properties;
 
 import java.io.File;
 import java.text.CollationKey;
@@ -82,6 +82,8 @@ import de.loskutov.fs.dialogs.StringDialogField;
 import de.loskutov.fs.dialogs.TreeListDialogField;
 import de.loskutov.fs.dialogs.TypedElementSelectionValidator;
 import de.loskutov.fs.dialogs.TypedViewerFilter;
+import de.loskutov.fs.properties.ProjectHelper;
+import de.loskutov.fs.properties.ProjectProperties;
 
 public class ProjectSyncPropertyPage extends PropertyPage implements
 IStatusChangeListener {
@@ -7,7 +7,7 @@
  * Contributor:  Andrey Loskutov - initial API and implementation
  *******************************************************************************/
 
-package de.loskutov.fs.properties;
+package de.loskutov.fs.ui.properties;
 
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -8,22 +8,19 @@
  *******************************************************************************/
 package de.loskutov.fs;
 
-import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Plugin;
 import org.eclipse.core.runtime.Status;
-import org.eclipse.jface.dialogs.MessageDialog;
-import org.eclipse.jface.preference.IPreferenceStore;
-import org.eclipse.jface.resource.ImageDescriptor;
-import org.eclipse.jface.resource.ImageRegistry;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.widgets.Shell;
-import org.eclipse.ui.plugin.AbstractUIPlugin;
+import org.osgi.framework.BundleContext;
 
-import de.loskutov.fs.preferences.FileSyncConstants;
+import de.loskutov.fs.metrics.SyncMetrics;
+import de.loskutov.fs.metrics.TraceWriter;
+import de.loskutov.fs.properties.ProjectProperties;
 
 /**
- * The main plugin class to be used in the desktop.
+ * The main plugin class of the (headless) sync engine. UI parts are contributed by
+ * the "de.loskutov.FileSync.ui" bundle.
  */
-public class FileSyncPlugin extends AbstractUIPlugin {
+public class FileSyncPlugin extends Plugin {
 
     private static FileSyncPlugin plugin;
 
@@ -40,29 +37,31 @@ public class FileSyncPlugin extends AbstractUIPlugin {
         plugin = this;
     }
 
+    @Override
+    public void start(BundleContext context) throws Exception {
+        super.start(context);
+        SyncMetrics.getDefault().register();
+    }
+
+    @Override
+    public void stop(BundleContext context) throws Exception {
+        ProjectProperties.removeAllInstances();
+        SyncMetrics.getDefault().unregister();
+        TraceWriter.close();
+        super.stop(context);
+    }
+
     /**
-     * Returns the shared instance.
+     * Returns the shared instance, or null if the plugin is not running (for example
+     * if the sync engine is used outside of Eclipse).
      */
     public static FileSyncPlugin getDefault() {
         return plugin;
     }
 
-    public static void error(String message, Throwable error) {
-        Shell shell = FileSyncPlugin.getShell();
-        if(message == null){
-            message = "";
-        }
-        if (error != null) {
-            message = message + " " + error.getMessage();
-        }
-        IPreferenceStore store = getDefault().getPreferenceStore();
-        if (store.getBoolean(FileSyncConstants.KEY_ASK_USER)) {
-            MessageDialog.openError(shell, "FileSync error", message);
-        }
-        log(message, error, IStatus.ERROR);
-    }
-
     /**
+     * Logs to the Eclipse error log, or to the standard error stream if the plugin is
+     * not running.
      * @param statusID
      *            one of IStatus. constants like IStatus.ERROR etc
      * @param error
@@ -75,47 +74,17 @@ public class FileSyncPlugin extends AbstractUIPlugin {
             }
         }
         Status status = new Status(statusID, PLUGIN_ID, 0, messageID, error);
-        getDefault().getLog().log(status);
-        if(getDefault().isDebugging()){
-            System.out.println(status);
-        }
-    }
-
-    public static Shell getShell() {
-        return getDefault().getWorkbench().getActiveWorkbenchWindow().getShell();
-    }
-
-    /**
-     * Returns an image descriptor for the image file at the given plug-in
-     * relative path.
-     *
-     * @param path
-     *            the path
-     * @return the image descriptor
-     */
-    public static ImageDescriptor getImageDescriptor(String path) {
-        if (path == null) {
-            return null;
-        }
-        ImageRegistry imageRegistry = getDefault().getImageRegistry();
-        ImageDescriptor imageDescriptor = imageRegistry.getDescriptor(path);
-        if (imageDescriptor == null) {
-            imageDescriptor = imageDescriptorFromPlugin(PLUGIN_ID, path);
-            imageRegistry.put(path, imageDescriptor);
-        }
-        return imageDescriptor;
-    }
-
-    public static Image getImage(String path) {
-        if (path == null) {
-            return null;
+        FileSyncPlugin fsPlugin = getDefault();
+        if (fsPlugin == null || fsPlugin.getBundle() == null) {
+            System.err.println(status);
+            if (error != null) {
+                error.printStackTrace();
+            }
+            return;
         }
-        // prefetch image, if not jet there
-        ImageDescriptor imageDescriptor = getImageDescriptor(path);
-        if (imageDescriptor != null) {
-            return getDefault().getImageRegistry().get(path);
+        fsPlugin.getLog().log(status);
+        if(fsPlugin.isDebugging()){
+            System.out.println(status);
         }
-        // TODO error message
-        return null;
     }
 }
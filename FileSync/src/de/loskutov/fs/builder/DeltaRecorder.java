@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.builder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
+
+import de.loskutov.fs.FileSyncPlugin;
+
+/**
+ * Records the builds FileSync sees (resource deltas and file contents) to disk, so
+ * that they can be replayed later (see "bench.Replay" in the FileSync-bench project).
+ * <p>
+ * Enabled by the "de.loskutov.FileSync/debug/recordDir" option in ".options" or by the
+ * "fs.recorddir" system property, the value is the output directory. Layout per project:
+ * <pre>
+ * [recordDir]/[project]/builds.txt            one line per build: "[seq] [kind]"
+ * [recordDir]/[project]/[seq]/files/...       full or clean build: project snapshot
+ * [recordDir]/[project]/[seq]/delta.txt       incremental build: "[A|C|R] [F|D] [path]"
+ * [recordDir]/[project]/[seq]/files/...       incremental build: added/changed files
+ * </pre>
+ * Paths are project relative, the FileSync settings are part of the snapshots. Build
+ * numbers continue the ones already recorded in the directory, so that the builds of
+ * all sessions are replayed in the right order.
+ * <p>
+ * Files are copied with plain streams, not with {@link de.loskutov.fs.command.FS},
+ * so that recording does not show up in the traces and performance statistics of the
+ * recorded builds.
+ * @author Andrey
+ */
+public final class DeltaRecorder {
+
+    public static final String BUILDS_FILE = "builds.txt";
+
+    public static final String DELTA_FILE = "delta.txt";
+
+    public static final String FILES_DIR = "files";
+
+    public static final String KIND_FULL = "FULL";
+
+    public static final String KIND_CLEAN = "CLEAN";
+
+    public static final String KIND_INCREMENTAL = "INCREMENTAL";
+
+    public static final char ADDED = 'A';
+
+    public static final char CHANGED = 'C';
+
+    public static final char REMOVED = 'R';
+
+    public static final char FILE = 'F';
+
+    public static final char FOLDER = 'D';
+
+    private static final String RECORD_OPTION = FileSyncPlugin.PLUGIN_ID
+            + "/debug/recordDir";
+
+    private static final File RECORD_DIR = getRecordDir();
+
+    /** true if builds are recorded */
+    public static final boolean ENABLED = RECORD_DIR != null;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** key is project name, value is the last recorded build number */
+    private static final Map<String, Integer> SEQUENCES = new HashMap<String, Integer>();
+
+    private DeltaRecorder() {
+        // don't instantiate me
+    }
+
+    private static File getRecordDir() {
+        String dirName = System.getProperty("fs.recorddir");
+        if (dirName == null && Platform.isRunning()) {
+            dirName = Platform.getDebugOption(RECORD_OPTION);
+        }
+        if (dirName == null || dirName.trim().length() == 0) {
+            return null;
+        }
+        return new File(dirName.trim());
+    }
+
+    /**
+     * Records the full project state. Should be called only if {@link #ENABLED}.
+     * @param project
+     * @param clean true for clean build
+     */
+    public static void recordFull(IProject project, boolean clean) {
+        final File buildDir = startBuild(project, clean ? KIND_CLEAN : KIND_FULL);
+        if (buildDir == null) {
+            return;
+        }
+        try {
+            project.accept(new IResourceVisitor() {
+                @Override
+                public boolean visit(IResource resource) {
+                    if (resource.getType() == IResource.FILE) {
+                        copy(resource, buildDir);
+                    }
+                    return true;
+                }
+            });
+        } catch (CoreException e) {
+            FileSyncPlugin.log("Failed to record project '" + project.getName() + "'", e,
+                    IStatus.WARNING);
+        }
+    }
+
+    /**
+     * Records given delta. Should be called only if {@link #ENABLED}.
+     * @param project
+     * @param delta
+     */
+    public static void recordDelta(IProject project, IResourceDelta delta) {
+        final File buildDir = startBuild(project, KIND_INCREMENTAL);
+        if (buildDir == null) {
+            return;
+        }
+        final StringBuffer sb = new StringBuffer();
+        try {
+            delta.accept(new IResourceDeltaVisitor() {
+                @Override
+                public boolean visit(IResourceDelta child) {
+                    IResource resource = child.getResource();
+                    if (resource.getType() == IResource.PROJECT) {
+                        return true;
+                    }
+                    boolean isFile = resource.getType() == IResource.FILE;
+                    char kind;
+                    switch (child.getKind()) {
+                    case IResourceDelta.ADDED:
+                        kind = ADDED;
+                        break;
+                    case IResourceDelta.REMOVED:
+                        kind = REMOVED;
+                        break;
+                    case IResourceDelta.CHANGED:
+                        if (!isFile || (child.getFlags() & IResourceDelta.CONTENT) == 0) {
+                            return true;
+                        }
+                        kind = CHANGED;
+                        break;
+                    default:
+                        return true;
+                    }
+                    sb.append(kind).append(' ').append(isFile ? FILE : FOLDER).append(' ')
+                    .append(resource.getProjectRelativePath().toPortableString())
+                    .append('\n');
+                    if (isFile && kind != REMOVED) {
+                        copy(resource, buildDir);
+                    }
+                    return true;
+                }
+            });
+            write(new File(buildDir, DELTA_FILE), sb.toString(), false);
+        } catch (CoreException e) {
+            FileSyncPlugin.log("Failed to record delta of project '" + project.getName()
+                    + "'", e, IStatus.WARNING);
+        } catch (IOException e) {
+            FileSyncPlugin.log("Failed to record delta of project '" + project.getName()
+                    + "'", e, IStatus.WARNING);
+        }
+    }
+
+    /**
+     * @return directory for the new build, or null if it could not be created
+     */
+    private static File startBuild(IProject project, String kind) {
+        File projectDir = new File(RECORD_DIR, project.getName());
+        synchronized (SEQUENCES) {
+            Integer last = SEQUENCES.get(project.getName());
+            int seq = last == null ? getLastSequence(projectDir) + 1 : last.intValue() + 1;
+            File buildDir = new File(projectDir, String.valueOf(seq));
+            // existing directory: recorded by another Eclipse at the same time?
+            while (buildDir.exists()) {
+                buildDir = new File(projectDir, String.valueOf(++seq));
+            }
+            SEQUENCES.put(project.getName(), Integer.valueOf(seq));
+            if (!buildDir.mkdirs()) {
+                FileSyncPlugin.log("Failed to create directory '" + buildDir + "'", null,
+                        IStatus.WARNING);
+                return null;
+            }
+            try {
+                write(new File(projectDir, BUILDS_FILE), seq + " " + kind + "\n", true);
+            } catch (IOException e) {
+                FileSyncPlugin.log("Failed to record build of project '"
+                        + project.getName() + "'", e, IStatus.WARNING);
+                return null;
+            }
+            return buildDir;
+        }
+    }
+
+    /**
+     * @return highest build number recorded in given directory, 0 if there are none
+     */
+    private static int getLastSequence(File projectDir) {
+        int last = 0;
+        String[] names = projectDir.list();
+        if (names == null) {
+            return last;
+        }
+        for (int i = 0; i < names.length; i++) {
+            try {
+                last = Math.max(last, Integer.parseInt(names[i]));
+            } catch (NumberFormatException e) {
+                // not a build directory
+            }
+        }
+        return last;
+    }
+
+    private static void copy(IResource resource, File buildDir) {
+        IPath location = resource.getLocation();
+        if (location == null) {
+            return;
+        }
+        File destination = new File(new File(buildDir, FILES_DIR), resource
+                .getProjectRelativePath().toOSString());
+        File parent = destination.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            FileSyncPlugin.log("Failed to create directory '" + parent + "'", null,
+                    IStatus.WARNING);
+            return;
+        }
+        try {
+            copy(location.toFile(), destination);
+        } catch (IOException e) {
+            FileSyncPlugin.log("Failed to record file '" + location + "'", e,
+                    IStatus.WARNING);
+        }
+    }
+
+    private static void copy(File source, File destination) throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        InputStream in = new FileInputStream(source);
+        try {
+            OutputStream out = new FileOutputStream(destination);
+            try {
+                int read;
+                while ((read = in.read(buf)) > 0) {
+                    out.write(buf, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void write(File file, String text, boolean append) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file, append), "UTF-8");
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+    }
+}
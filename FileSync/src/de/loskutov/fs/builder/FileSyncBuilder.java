@@ -8,8 +8,10 @@
  *******************************************************************************/
 package de.loskutov.fs.builder;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IProject;
@@ -24,14 +26,17 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Path;
-import org.eclipse.core.runtime.Status;
-import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
 
 import de.loskutov.fs.FileSyncPlugin;
-import de.loskutov.fs.command.FileMapping;
+import de.loskutov.fs.metrics.BuildReport;
+import de.loskutov.fs.metrics.SyncEvents;
+import de.loskutov.fs.metrics.TraceWriter;
+import de.loskutov.fs.properties.MappingConfig;
+import de.loskutov.fs.properties.MappingDiff;
 import de.loskutov.fs.properties.ProjectProperties;
 
 /**
@@ -59,17 +64,24 @@ implements IPreferenceChangeListener {
 
     public static final Integer MAPPING_CHANGED_IN_GUI = Integer.valueOf(MAPPING_CHANGED_IN_GUI_BUILD);
 
+    /** settings or variables files are changed in the workspace */
+    public static final int MAPPING_CHANGED_BUILD = 998;
+
     private boolean wizardNotAvailable;
 
     private boolean disabled;
 
     private IProject project2;
 
-    private long modificationStamp;
+    private long modificationStamp = IResource.NULL_STAMP;
 
     private Long mappingHashCode;
 
-    private final Map pathToTimeStamp;
+    /** settings the destinations are in sync with, null if unknown */
+    private MappingConfig syncedConfig;
+
+    /** project relative path of a variables file to its modification stamp */
+    private final Map<IPath, Long> pathToTimeStamp;
 
     volatile boolean ignorePrefChange;
 
@@ -80,7 +92,7 @@ implements IPreferenceChangeListener {
     /** called by Eclipse through reflection */
     public FileSyncBuilder() {
         super();
-        pathToTimeStamp = new HashMap();
+        pathToTimeStamp = new HashMap<IPath, Long>();
     }
 
     /** caled by us on click */
@@ -134,7 +146,11 @@ implements IPreferenceChangeListener {
         updateVisitorFlags(props);
 
         SyncWizard wizard = new SyncWizard();
+        BuildReport report = BuildReport.create(getKindName(kind) + " build of '"
+                + getProjectInternal().getName() + "'");
+        wizard.setReport(report);
         IProject[] result = NO_PROJECTS;
+        long start = System.nanoTime();
         try {
             switch (kind) {
             case AUTO_BUILD:
@@ -150,7 +166,10 @@ implements IPreferenceChangeListener {
                 break;
             case MAPPING_CHANGED_IN_GUI_BUILD:
                 args.put(MAPPING_CHANGED_IN_GUI, MAPPING_CHANGED_IN_GUI);
-                result = buildFull(args, props, wizard, monitor);
+                result = buildMappingChanged(args, props, wizard, monitor);
+                break;
+            case MAPPING_CHANGED_BUILD:
+                result = buildMappingChanged(args, props, wizard, monitor);
                 break;
             case FULL_BUILD: // fall-through
             default:
@@ -158,6 +177,9 @@ implements IPreferenceChangeListener {
                 break;
             }
             wizardNotAvailable = false;
+            if (report != null) {
+                report.finish();
+            }
         } catch (IllegalArgumentException e) {
             if (!wizardNotAvailable) {
                 FileSyncPlugin.log("Couldn't run file sync for project '"
@@ -174,11 +196,63 @@ implements IPreferenceChangeListener {
                 wizardNotAvailable = true;
             }
             return NO_PROJECTS;
+        } finally {
+            if (SyncEvents.BUILD_ENABLED) {
+                IProject project = getProjectInternal();
+                SyncEvents.record(SyncEvents.BUILD, project, start, getKindName(kind)
+                        + " build of '" + project.getName() + "'");
+            }
+            if (TraceWriter.ENABLED) {
+                TraceWriter.span(TraceWriter.CAT_BUILD, getKindName(kind) + " build of '"
+                        + getProjectInternal().getName() + "'", start);
+            }
         }
 
         return result;
     }
 
+    private static String getKindName(int kind) {
+        switch (kind) {
+        case AUTO_BUILD:
+            return "auto";
+        case INCREMENTAL_BUILD:
+            return "incremental";
+        case CLEAN_BUILD:
+            return "clean";
+        case MAPPING_CHANGED_IN_GUI_BUILD:
+            // fall through
+        case MAPPING_CHANGED_BUILD:
+            return "mapping changed";
+        case FULL_BUILD:
+            return "full";
+        default:
+            return "unknown (" + kind + ")";
+        }
+    }
+
+    /**
+     * Instead of locking the entire workspace, we only need the own project and the
+     * destination containers in the workspace (if any), so that other projects could
+     * be built and modified concurrently.
+     */
+    @Override
+    public ISchedulingRule getRule(int kind, Map args) {
+        IProject project = getProjectInternal();
+        if (project == null || isDisabled()) {
+            return project;
+        }
+        ProjectProperties props = ProjectProperties.getInstance(project);
+        if (props == null) {
+            return project;
+        }
+        MappingConfig config = props.getConfig();
+        if (config == null) {
+            // build will not do anything
+            return project;
+        }
+        return SyncWizard.getSchedulingRule(project, config);
+    }
+
     /**
      * Automatic build
      * @param args build parameters
@@ -207,6 +281,45 @@ implements IPreferenceChangeListener {
         return NO_PROJECTS;
     }
 
+    /**
+     * Build after settings change: only source folders of added, changed or removed
+     * mappings are synchronized, if possible. Otherwise full build.
+     * @param args build parameters
+     * @param wizard
+     * @param monitor progress indicator
+     * @return IProject[] related projects list
+     */
+    private IProject[] buildMappingChanged(Map args, ProjectProperties props,
+            SyncWizard wizard, IProgressMonitor monitor) {
+        IProject currentProject = getProjectInternal();
+        if (currentProject == null) {
+            return NO_PROJECTS;
+        }
+        MappingConfig config = props.getConfig();
+        MappingDiff diff = MappingDiff.compute(syncedConfig, config);
+        if (diff.isFull()) {
+            return buildFull(args, props, wizard, monitor);
+        }
+        SyncWizard removedWizard = null;
+        if (diff.getRemoved().length > 0) {
+            removedWizard = new SyncWizard();
+            try {
+                removedWizard.setProjectProps(props, syncedConfig);
+            } catch (IllegalArgumentException e) {
+                // old settings were not usable, so nothing to clean up
+                return buildFull(args, props, wizard, monitor);
+            }
+        }
+        wizard.setProjectProps(props, config);
+        if (!diff.isEmpty()) {
+            diffProjectBuild(currentProject, diff, wizard, removedWizard, monitor);
+        }
+        if (!monitor.isCanceled()) {
+            syncedConfig = config;
+        }
+        return NO_PROJECTS;
+    }
+
     /**
      * Full build
      * @param args build parameters
@@ -248,63 +361,49 @@ implements IPreferenceChangeListener {
             if (resourceDelta.getAffectedChildren().length == 0) {
                 //                FileSyncPlugin.log("nothing happens because delta is empty", null, IStatus.INFO);
             } else {
+                if (DeltaRecorder.ENABLED) {
+                    DeltaRecorder.recordDelta(currentProject, resourceDelta);
+                }
                 /*
                  * check if my own props file is changed - before going to
                  * synchronize all other files
                  */
                 FSPropsChecker propsChecker = new FSPropsChecker(monitor, props);
-                try {
-                    resourceDelta.accept(propsChecker, false);
-                } catch (CoreException e) {
-                    FileSyncPlugin.log("Errors during sync of the resource delta:"
-                            + resourceDelta + " for project '" + currentProject.getName()
-                            + "'", e, IStatus.ERROR);
+                long start = System.nanoTime();
+                propsChecker.check(resourceDelta);
+                if (SyncEvents.PROPS_ENABLED) {
+                    SyncEvents.record(SyncEvents.PROPS, currentProject, start,
+                            "delta of '" + currentProject.getName() + "'");
                 }
                 // props are in-sync now
                 wizard.setProjectProps(props);
                 int elementCount = countDeltaElement(resourceDelta);
 
                 if (propsChecker.propsChanged) {
-                    Job[] jobs = Job.getJobManager().find(FileSyncBuilder.class);
-                    if (jobs.length == 0) {
-                        // start full build (not clean!) because properties are changed!!!
-                        Job job = new Job("Filesync") {
-                            @Override
-                            public boolean belongsTo(Object family) {
-                                return family == FileSyncBuilder.class;
-                            }
-
-                            @Override
-                            protected IStatus run(IProgressMonitor monitor1) {
-                                build(FULL_BUILD, monitor1);
-                                return Status.OK_STATUS;
-                            }
-                        };
+                    /*
+                     * start build (not clean!) because properties are changed!!! It syncs
+                     * the folders of changed mappings only, or entire project if needed.
+                     * we starting the full build intensionally asynchron, because the current
+                     * build need to be finished first. The background is not completely clear for
+                     * me, but interrupting the build here lead to failures of "delete"
+                     * test case, if variables files are deleted too.
+                     * So let the current build finish and shedule another one to do
+                     * the sync again, with changed preferences
+                     */
+                    if (!MappingDiff.compute(syncedConfig, props.getConfig()).isFull()) {
                         /*
-                         * we starting the full build intensionally asynchron, because the current
-                         * build need to be finished first. The background is not completely clear for
-                         * me, but interrupting the build here lead to failures of "delete"
-                         * test case, if variables files are deleted too.
-                         * So let the current build finish and shedule another one to do
-                         * the full sync again, with changed preferences
+                         * the scheduled build syncs changed mappings only, so other
+                         * changes from the same delta (like after "git pull") must be
+                         * synchronized now, with the new settings
                          */
-                        job.setUser(false);
-                        job.schedule(1000);
+                        visitDelta(currentProject, resourceDelta, elementCount, wizard,
+                                monitor);
                     }
+                    SyncScheduler.getDefault().scheduleBuild(this, MAPPING_CHANGED_BUILD,
+                            "Filesync", 1000);
                 } else {
-                    try {
-                        monitor.beginTask("Incremental file sync", elementCount);
-                        final FSDeltaVisitor visitor = new FSDeltaVisitor(monitor, wizard);
-                        resourceDelta.accept(visitor, visitorFlags);
-                    } catch (CoreException e) {
-                        FileSyncPlugin.log(
-                                "Errors during sync of the resource delta:"
-                                        + resourceDelta + " for project '"
-                                        + currentProject + "'", e, IStatus.ERROR);
-                    } finally {
-                        wizard.cleanUp(monitor);
-                        monitor.done();
-                    }
+                    visitDelta(currentProject, resourceDelta, elementCount, wizard,
+                            monitor);
                 }
             }
         }
@@ -312,6 +411,38 @@ implements IPreferenceChangeListener {
         return result;
     }
 
+    /**
+     * Synchronizes all resources from the delta
+     * @param project the project
+     * @param resourceDelta non empty delta
+     * @param elementCount number of delta elements
+     * @param wizard
+     * @param monitor a progress indicator
+     */
+    private void visitDelta(IProject project, IResourceDelta resourceDelta,
+            int elementCount, SyncWizard wizard, IProgressMonitor monitor) {
+        long visitStart = System.nanoTime();
+        try {
+            monitor.beginTask("Incremental file sync", elementCount);
+            final FSDeltaVisitor visitor = new FSDeltaVisitor(monitor, wizard);
+            resourceDelta.accept(visitor, visitorFlags);
+            BuildReport report = wizard.getReport();
+            if (report != null) {
+                report.addTraversal(System.nanoTime() - visitStart);
+            }
+            if (SyncEvents.TRAVERSAL_ENABLED) {
+                SyncEvents.record(SyncEvents.TRAVERSAL, project, visitStart, elementCount
+                        + " delta elements of '" + project.getName() + "'");
+            }
+        } catch (CoreException e) {
+            FileSyncPlugin.log("Errors during sync of the resource delta:" + resourceDelta
+                    + " for project '" + project + "'", e, IStatus.ERROR);
+        } finally {
+            wizard.cleanUp(monitor);
+            monitor.done();
+        }
+    }
+
     /**
      * Process all files in the project
      * @param project the project
@@ -322,6 +453,9 @@ implements IPreferenceChangeListener {
             ProjectProperties props, SyncWizard wizard, final IProgressMonitor monitor,
             boolean clean) {
 
+        if (DeltaRecorder.ENABLED) {
+            DeltaRecorder.recordFull(project, clean);
+        }
         if (!args.containsKey(MAPPING_CHANGED_IN_GUI) && wizard.getProjectProps() == null) {
             /*
              * check if my own props file is changed - before going to
@@ -329,11 +463,11 @@ implements IPreferenceChangeListener {
              * initiated by changing mapping in the GUI
              */
             FSPropsChecker propsChecker = new FSPropsChecker(monitor, props);
-            try {
-                project.accept(propsChecker, IResource.DEPTH_INFINITE, false);
-            } catch (CoreException e) {
-                FileSyncPlugin.log("Error during visiting project: " + project.getName(),
-                        e, IStatus.ERROR);
+            long start = System.nanoTime();
+            propsChecker.check(project);
+            if (SyncEvents.PROPS_ENABLED) {
+                SyncEvents.record(SyncEvents.PROPS, project, start, "project '"
+                        + project.getName() + "'");
             }
         }
         // props are in-sync now
@@ -348,7 +482,26 @@ implements IPreferenceChangeListener {
             }
             final FSResourceVisitor visitor = new FSResourceVisitor(monitor, wizard,
                     clean);
+            long start = System.nanoTime();
             project.accept(visitor, IResource.DEPTH_INFINITE, visitorFlags);
+            if (wizard.getReport() != null) {
+                wizard.getReport().addTraversal(System.nanoTime() - start);
+            }
+            if (SyncEvents.TRAVERSAL_ENABLED) {
+                SyncEvents.record(SyncEvents.TRAVERSAL, project, start, elementCount
+                        + " elements of '" + project.getName() + "'");
+            }
+            if (clean) {
+                // project is completely visited, so all remaining destinations are orphans
+                boolean ok = wizard.reconcileMirror(monitor);
+                if (!ok) {
+                    FileSyncPlugin.log("Errors during clean sync of project '"
+                            + project.getName() + "'", null, IStatus.WARNING);
+                }
+            }
+            if (!monitor.isCanceled()) {
+                syncedConfig = wizard.getConfig();
+            }
         } catch (CoreException e) {
             FileSyncPlugin.log("Error during visiting project: " + project.getName(), e,
                     IStatus.ERROR);
@@ -358,6 +511,67 @@ implements IPreferenceChangeListener {
         }
     }
 
+    /**
+     * Applies settings difference: visits only source folders of changed mappings,
+     * deletes destinations of removed mappings, which are not used anymore, and copies
+     * resources to destinations of added mappings.
+     * @param project the project
+     * @param diff non empty difference
+     * @param wizard wizard with the current settings
+     * @param removedWizard wizard with the old settings, null if no mappings are removed
+     * @param monitor a progress indicator
+     */
+    private void diffProjectBuild(IProject project, MappingDiff diff, SyncWizard wizard,
+            SyncWizard removedWizard, IProgressMonitor monitor) {
+        if (removedWizard != null) {
+            removedWizard.setMappings(diff.getRemoved());
+            removedWizard.setSuccessor(wizard);
+            removedWizard.setReport(wizard.getReport());
+        }
+        SyncWizard addedWizard = null;
+        if (diff.getAdded().length > 0) {
+            addedWizard = new SyncWizard();
+            addedWizard.setProjectProps(wizard.getProjectProps(), wizard.getConfig());
+            addedWizard.setMappings(diff.getAdded());
+            addedWizard.setReport(wizard.getReport());
+        }
+        IPath[] roots = diff.getAffectedRoots();
+        long start = System.nanoTime();
+        try {
+            monitor.beginTask("Sync of changed mappings (" + diff + ")",
+                    IProgressMonitor.UNKNOWN);
+            FSDiffVisitor visitor = new FSDiffVisitor(monitor, wizard, removedWizard,
+                    addedWizard);
+            for (int i = 0; i < roots.length; i++) {
+                IResource root = roots[i].segmentCount() == 0 ? project : project
+                        .findMember(roots[i]);
+                if (root != null) {
+                    root.accept(visitor, IResource.DEPTH_INFINITE, visitorFlags);
+                }
+            }
+            if (wizard.getReport() != null) {
+                wizard.getReport().addTraversal(System.nanoTime() - start);
+            }
+            if (SyncEvents.TRAVERSAL_ENABLED) {
+                SyncEvents.record(SyncEvents.TRAVERSAL, project, start, roots.length
+                        + " changed mapping roots of '" + project.getName() + "'");
+            }
+        } catch (CoreException e) {
+            FileSyncPlugin.log("Error during visiting project: " + project.getName(), e,
+                    IStatus.ERROR);
+        } finally {
+            // successor is used by the removed wizard, so it is cleaned up last
+            if (removedWizard != null) {
+                removedWizard.cleanUp(monitor);
+            }
+            if (addedWizard != null) {
+                addedWizard.cleanUp(monitor);
+            }
+            wizard.cleanUp(monitor);
+            monitor.done();
+        }
+    }
+
     /**
      * Count the number of sub-resources of a project
      * @param project a project
@@ -400,6 +614,8 @@ implements IPreferenceChangeListener {
         props.addPreferenceChangeListener(this);
         updateVisitorFlags(props);
         mappingHashCode = props.getHashCode();
+        // destinations are expected to be in sync with the stored settings
+        syncedConfig = props.getConfig();
     }
 
     private void updateVisitorFlags(ProjectProperties props) {
@@ -418,21 +634,13 @@ implements IPreferenceChangeListener {
     }
 
     /**
-     * remember the timestamp for the project settings file
-     * @return true, if the timestamp was changed since first run
+     * remember the modification stamp for the project settings file
+     * @return true, if the stamp was changed since first run
      */
     protected boolean checkSettingsTimestamp(IResource settingsFile) {
         long oldStamp = modificationStamp;
-        IPath location = settingsFile.getLocation();
-        if(location == null){
-            return true;
-        }
-        long localTimeStamp = location.toFile().lastModified();
-        boolean changed = oldStamp != 0 && oldStamp != localTimeStamp;
-        if (oldStamp == 0 || changed) {
-            modificationStamp = localTimeStamp;
-        }
-        return changed;
+        modificationStamp = settingsFile.getModificationStamp();
+        return oldStamp != IResource.NULL_STAMP && oldStamp != modificationStamp;
     }
 
     protected void checkCancel(IProgressMonitor monitor, SyncWizard wizard) {
@@ -476,7 +684,11 @@ implements IPreferenceChangeListener {
             }
             String resStr = delta.getResource().toString();
             monitor.subTask("sync: " + resStr);
+            long start = TraceWriter.ENABLED ? System.nanoTime() : 0;
             boolean ok = wizard.sync(delta, monitor);
+            if (TraceWriter.ENABLED) {
+                TraceWriter.span(TraceWriter.CAT_VISIT, resStr, start);
+            }
             if (!ok) {
                 FileSyncPlugin.log("Errors during sync of the resource delta: '" + resStr
                         + "' in project '" + delta.getResource().getProject().getName()
@@ -528,7 +740,11 @@ implements IPreferenceChangeListener {
             }
             String resStr = resource.getProjectRelativePath().toString();
             monitor.subTask("check for " + resStr);
+            long start = TraceWriter.ENABLED ? System.nanoTime() : 0;
             boolean ok = wizard.sync(resource, monitor, clean);
+            if (TraceWriter.ENABLED) {
+                TraceWriter.span(TraceWriter.CAT_VISIT, resStr, start);
+            }
             if (!ok) {
                 FileSyncPlugin.log("Errors during sync of the resource '" + resStr
                         + "' in project '" + resource.getProject().getName() + "'", null,
@@ -539,7 +755,63 @@ implements IPreferenceChangeListener {
         }
     }
 
-    private class FSPropsChecker implements IResourceVisitor, IResourceDeltaVisitor {
+    /**
+     * Visits source folders of changed mappings
+     * @author Andrey
+     */
+    private class FSDiffVisitor implements IResourceVisitor {
+        private final IProgressMonitor monitor;
+
+        private final SyncWizard wizard;
+
+        private final SyncWizard removedWizard;
+
+        private final SyncWizard addedWizard;
+
+        /**
+         * @param monitor
+         * @param wizard wizard with the current settings
+         * @param removedWizard may be null
+         * @param addedWizard may be null
+         */
+        public FSDiffVisitor(IProgressMonitor monitor, SyncWizard wizard,
+                SyncWizard removedWizard, SyncWizard addedWizard) {
+            this.monitor = monitor;
+            this.wizard = wizard;
+            this.removedWizard = removedWizard;
+            this.addedWizard = addedWizard;
+        }
+
+        @Override
+        public boolean visit(IResource resource) {
+            monitor.worked(1);
+            checkCancel(monitor, wizard);
+            if (resource.getType() == IResource.PROJECT) {
+                return true;
+            }
+            boolean ok = true;
+            if (removedWizard != null && removedWizard.checkResource(resource)) {
+                ok &= removedWizard.delete(resource, false, monitor);
+            }
+            if (addedWizard != null && addedWizard.checkResource(resource)) {
+                ok &= addedWizard.sync(resource, monitor, false);
+            }
+            if (!ok) {
+                FileSyncPlugin.log("Errors during sync of the resource '"
+                        + resource.getProjectRelativePath() + "' in project '"
+                        + resource.getProject().getName() + "'", null, IStatus.WARNING);
+            }
+            // roots are source folders of mappings, so always visit children
+            return true;
+        }
+    }
+
+    /**
+     * Checks if the settings file or the variables files of the mappings are changed.
+     * Only these resources are looked up in the delta (or project), so that a delta
+     * without them is not traversed at all.
+     */
+    private class FSPropsChecker {
         private final IProgressMonitor monitor;
 
         private final ProjectProperties props;
@@ -551,104 +823,84 @@ implements IPreferenceChangeListener {
             this.props = props;
         }
 
-        @SuppressWarnings("unchecked")
-        @Override
-        public boolean visit(IResource resource) {
+        void check(IResourceDelta delta) {
             if (monitor.isCanceled()) {
                 throw new OperationCanceledException();
             }
-            if (resource.getType() == IResource.PROJECT) {
-                return true;
+            IResourceDelta settings = delta.findMember(SETTINGS_PATH);
+            if (settings != null && checkSettings(settings.getResource())) {
+                return;
             }
-
-            boolean continueVisit = isSettingsDir(resource);
-            if (continueVisit && isSettingsFile(resource)
-                    && checkSettingsTimestamp(resource)) {
-                // mappings changed
-                ignorePrefChange = true;
-                props.refreshPreferences();
-                Long hashCode = props.getHashCode();
-                ignorePrefChange = false;
-                if (!hashCode.equals(mappingHashCode)) {
-                    propsChanged = true;
-                    continueVisit = false;
-                    mappingHashCode = hashCode;
-                    updateVisitorFlags(props);
+            for (IPath variablesPath : getVariablesPaths()) {
+                IResourceDelta member = delta.findMember(variablesPath);
+                if (member != null
+                        && checkVariables(member.getResource(), variablesPath)) {
+                    return;
                 }
-            } else {
-                // check if variables are changed in any directory
-                continueVisit = true;
-                FileMapping[] mappings = props.getMappings();
-                for (int i = 0; i < mappings.length; i++) {
-                    IPath variablesPath = mappings[i].getVariablesPath();
-                    if (variablesPath != null) {
-                        boolean match = variablesPath.equals(resource
-                                .getProjectRelativePath());
-                        if (match) {
-                            Long time = (Long) pathToTimeStamp.get(variablesPath);
-                            IPath location = resource.getLocation();
-                            if(location == null){
-                                // full refresh here?
-                                return true;
-                            }
-                            long newTime = location.toFile().lastModified();
-                            if (time != null && time.longValue() != newTime) {
-                                time = Long.valueOf(newTime);
-                                pathToTimeStamp.put(variablesPath, time);
-                                // we could stop and do full build, because vars are changed
-                                props.refreshPathMap();
-                                Long hashCode = props.getHashCode();
-                                if (!hashCode.equals(mappingHashCode)) {
-                                    continueVisit = false;
-                                    propsChanged = true;
-                                    mappingHashCode = hashCode;
-                                    break;
-                                }
-                            } else if (time == null) {
-                                time = Long.valueOf(newTime);
-                                pathToTimeStamp.put(variablesPath, time);
-                            }
-                        }
-                    }
+            }
+        }
+
+        void check(IProject project) {
+            if (monitor.isCanceled()) {
+                throw new OperationCanceledException();
+            }
+            IResource settings = project.findMember(SETTINGS_PATH);
+            if (settings != null && checkSettings(settings)) {
+                return;
+            }
+            for (IPath variablesPath : getVariablesPaths()) {
+                IResource member = project.findMember(variablesPath);
+                if (member != null && checkVariables(member, variablesPath)) {
+                    return;
                 }
             }
-            // visit children only from settings directory
-            return continueVisit;
         }
 
-        /**
-         * @param file
-         * @return true if this resource is my own prefs file
-         */
-        private boolean isSettingsFile(IResource file) {
-            // the directory is already ok, so we check only for the file name
-            IPath relativePath = file.getProjectRelativePath();
-            if (relativePath == null) {
-                return false;
+        private Set<IPath> getVariablesPaths() {
+            MappingConfig config = props.getConfig();
+            if (config == null) {
+                return Collections.emptySet();
             }
-            return SETTINGS_FILE.equals(relativePath.lastSegment());
+            return config.getVariablesPaths();
         }
 
         /**
-         * @param dir
-         * @return true if this resource is my own prefs directory
+         * @return true if the mappings are changed
          */
-        private boolean isSettingsDir(IResource dir) {
-            IPath relativePath = dir.getProjectRelativePath();
-            // should match 1:1 to the settings dir, which is always under the
-            // project root
-            if (relativePath == null || relativePath.segmentCount() > 2) {
+        private boolean checkSettings(IResource settingsFile) {
+            if (!checkSettingsTimestamp(settingsFile)) {
                 return false;
             }
-            return SETTINGS_DIR.equals(relativePath.segment(0));
+            // mappings changed
+            ignorePrefChange = true;
+            props.refreshPreferences();
+            Long hashCode = props.getHashCode();
+            ignorePrefChange = false;
+            if (!hashCode.equals(mappingHashCode)) {
+                propsChanged = true;
+                mappingHashCode = hashCode;
+                updateVisitorFlags(props);
+            }
+            return propsChanged;
         }
 
-        /* (non-Javadoc)
-         * @see org.eclipse.core.resources.IResourceDeltaVisitor#visit(org.eclipse.core.resources.IResourceDelta)
+        /**
+         * @return true if the mappings are changed
          */
-        @Override
-        public boolean visit(IResourceDelta delta) {
-            return visit(delta.getResource());
+        private boolean checkVariables(IResource variablesFile, IPath variablesPath) {
+            long newTime = variablesFile.getModificationStamp();
+            Long time = pathToTimeStamp.put(variablesPath, Long.valueOf(newTime));
+            if (time == null || time.longValue() == newTime) {
+                return false;
+            }
+            // we could stop and do full build, because vars are changed
+            props.refreshPathMap();
+            Long hashCode = props.getHashCode();
+            if (!hashCode.equals(mappingHashCode)) {
+                propsChanged = true;
+                mappingHashCode = hashCode;
+            }
+            return propsChanged;
         }
     }
 
@@ -664,23 +916,8 @@ implements IPreferenceChangeListener {
         if (!ProjectProperties.KEY_PROJECT.equals(key)) {
             return;
         }
-        Job[] jobs = Job.getJobManager().find(getClass());
-        if (jobs.length == 0) {
-            final Job myJob = new Job("Mapping is changed => full project sync") {
-                @Override
-                public boolean belongsTo(Object family) {
-                    return family == FileSyncBuilder.class;
-                }
-
-                @Override
-                public IStatus run(IProgressMonitor monitor) {
-                    build(MAPPING_CHANGED_IN_GUI_BUILD, monitor);
-                    return Status.OK_STATUS;//new JobStatus(IStatus.INFO, 0, this, "", null);
-                }
-            };
-            myJob.setUser(false);
-            myJob.schedule();
-        }
+        SyncScheduler.getDefault().scheduleBuild(this, MAPPING_CHANGED_IN_GUI_BUILD,
+                "Mapping is changed => full project sync", 0);
     }
 
     /**
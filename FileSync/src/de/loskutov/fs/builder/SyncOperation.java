@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.builder;
+
+import java.io.File;
+
+import org.eclipse.core.runtime.IPath;
+
+import de.loskutov.fs.command.FileMapping;
+
+/**
+ * Sync operation for one resource: the source, its resolved destinations and the
+ * way each destination has to be written. Created by {@link SyncWizard} while
+ * planning, and consumed by copy and delete, so that no per resource state is kept in
+ * the (shared) file mappings.
+ * <p>
+ * An operation is used by one thread only and is not modified after planning.
+ * @author Andrey
+ */
+public final class SyncOperation {
+
+    private final IPath relativePath;
+
+    private final boolean folder;
+
+    private final FileMapping[] mappings;
+
+    private final File[] destinations;
+
+    private final boolean[] substitute;
+
+    private int size;
+
+    /**
+     * @param relativePath project relative path of the source resource
+     * @param folder true if the source resource is a container
+     * @param capacity max. number of destinations
+     */
+    SyncOperation(IPath relativePath, boolean folder, int capacity) {
+        super();
+        this.relativePath = relativePath;
+        this.folder = folder;
+        mappings = new FileMapping[capacity];
+        destinations = new File[capacity];
+        substitute = new boolean[capacity];
+    }
+
+    /**
+     * Adds destination for given mapping. Variables are substituted only for files,
+     * and only if the mapping has variables.
+     * @param fm
+     * @param destination
+     */
+    void add(FileMapping fm, File destination) {
+        mappings[size] = fm;
+        destinations[size] = destination;
+        substitute[size] = !folder && fm.getVariablesPath() != null
+        && fm.getVariables() != null;
+        size++;
+    }
+
+    /**
+     * @return project relative path of the source resource
+     */
+    public IPath getRelativePath() {
+        return relativePath;
+    }
+
+    /**
+     * @return true if the source resource is a container
+     */
+    public boolean isFolder() {
+        return folder;
+    }
+
+    /**
+     * @return number of destinations
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i destination index
+     * @return mapping, which has produced the destination
+     */
+    public FileMapping getMapping(int i) {
+        return mappings[i];
+    }
+
+    /**
+     * @param i destination index
+     * @return destination file, which could not yet exist on file system
+     */
+    public File getDestination(int i) {
+        return destinations[i];
+    }
+
+    /**
+     * @param file
+     * @return true if given file is one of the destinations
+     */
+    public boolean contains(File file) {
+        for (int i = 0; i < size; i++) {
+            if (destinations[i].equals(file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param i destination index
+     * @return true if variables should be substituted during copy (if the source has
+     * text content type), false for plain copy
+     */
+    public boolean isSubstitute(int i) {
+        return substitute[i];
+    }
+}
@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.builder;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+
+import de.loskutov.fs.FileSyncPlugin;
+import de.loskutov.fs.preferences.FileSyncConstants;
+
+/**
+ * Workspace wide coordination of all sync work.
+ * <p>
+ * All background sync jobs are scheduled here (at most one waiting job per project),
+ * and every single file operation on the destination side has to get an I/O permit
+ * first. The number of permits is limited globally and per destination "device",
+ * so that many projects syncing at the same time to the same (network) drive do not
+ * thrash it. Permits are given in the FIFO order, so that one big project cannot
+ * starve the others.
+ * @author Andrey
+ */
+public final class SyncScheduler implements IPreferenceChangeListener {
+
+    private static final long WAIT_INTERVAL = 200;
+
+    private static SyncScheduler instance;
+
+    /** key is IProject, value is the last scheduled job for this project */
+    private final ConcurrentMap<IProject, Job> projectJobs;
+
+    /** key is device key, value is the semaphore for this device */
+    private final Map<String, Semaphore> devicePermits;
+
+    private volatile Semaphore globalPermits;
+
+    private volatile int devicePermitCount;
+
+    private SyncScheduler() {
+        super();
+        projectJobs = new ConcurrentHashMap<IProject, Job>();
+        devicePermits = new ConcurrentHashMap<String, Semaphore>();
+        initLimits();
+    }
+
+    public static synchronized SyncScheduler getDefault() {
+        if (instance == null) {
+            instance = new SyncScheduler();
+            if (Platform.isRunning()) {
+                IEclipsePreferences prefs = InstanceScope.INSTANCE
+                        .getNode(FileSyncPlugin.PLUGIN_ID);
+                prefs.addPreferenceChangeListener(instance);
+            }
+        }
+        return instance;
+    }
+
+    private void initLimits() {
+        if (!Platform.isRunning()) {
+            devicePermitCount = FileSyncConstants.DEFAULT_MAX_PARALLEL_IO_PER_DEVICE;
+            devicePermits.clear();
+            globalPermits = new Semaphore(FileSyncConstants.DEFAULT_MAX_PARALLEL_IO, true);
+            return;
+        }
+        int global = Platform.getPreferencesService().getInt(FileSyncPlugin.PLUGIN_ID,
+                FileSyncConstants.KEY_MAX_PARALLEL_IO, FileSyncConstants.DEFAULT_MAX_PARALLEL_IO,
+                null);
+        int perDevice = Platform.getPreferencesService().getInt(FileSyncPlugin.PLUGIN_ID,
+                FileSyncConstants.KEY_MAX_PARALLEL_IO_PER_DEVICE,
+                FileSyncConstants.DEFAULT_MAX_PARALLEL_IO_PER_DEVICE, null);
+        devicePermitCount = Math.max(1, perDevice);
+        // permits already given out are returned to the old semaphores, see Permit
+        devicePermits.clear();
+        globalPermits = new Semaphore(Math.max(1, global), true);
+    }
+
+    @Override
+    public void preferenceChange(PreferenceChangeEvent event) {
+        String key = event.getKey();
+        if (FileSyncConstants.KEY_MAX_PARALLEL_IO.equals(key)
+                || FileSyncConstants.KEY_MAX_PARALLEL_IO_PER_DEVICE.equals(key)) {
+            initLimits();
+        }
+    }
+
+    /**
+     * Schedules background build of given kind for the project of given builder. If
+     * there is already a build job for this project waiting to be run, nothing
+     * happens: the waiting job will see all the changes anyway.
+     * @param builder
+     * @param kind build kind
+     * @param name job name
+     * @param delay job delay, ms
+     */
+    public void scheduleBuild(final FileSyncBuilder builder, final int kind, String name,
+            long delay) {
+        final IProject project = builder.getProjectInternal();
+        if (project == null) {
+            return;
+        }
+        synchronized (projectJobs) {
+            Job job = projectJobs.get(project);
+            if (job != null
+                    && (job.getState() == Job.WAITING || job.getState() == Job.SLEEPING)) {
+                return;
+            }
+            job = new Job(name) {
+                @Override
+                public boolean belongsTo(Object family) {
+                    return family == FileSyncBuilder.class;
+                }
+
+                @Override
+                protected IStatus run(IProgressMonitor monitor) {
+                    try {
+                        builder.build(kind, monitor);
+                    } finally {
+                        projectJobs.remove(project, this);
+                    }
+                    return Status.OK_STATUS;
+                }
+            };
+            job.setUser(false);
+            job.setRule(builder.getRule(kind, null));
+            projectJobs.put(project, job);
+            job.schedule(delay);
+        }
+    }
+
+    /**
+     * Waits for the I/O permit to do a single file operation on given destination.
+     * @param destination
+     * @param monitor
+     * @return the permit, which must be released after the I/O operation in the
+     * finally block, or null if the monitor was cancelled while waiting
+     */
+    public Permit acquire(File destination, IProgressMonitor monitor) {
+        Semaphore device = getDevicePermits(destination);
+        if (!acquire(device, monitor)) {
+            return null;
+        }
+        // device first: don't block global permit while waiting for the busy device
+        Semaphore global = globalPermits;
+        if (!acquire(global, monitor)) {
+            device.release();
+            return null;
+        }
+        return new Permit(device, global);
+    }
+
+    private static boolean acquire(Semaphore semaphore, IProgressMonitor monitor) {
+        try {
+            while (!semaphore.tryAcquire(WAIT_INTERVAL, TimeUnit.MILLISECONDS)) {
+                if (monitor.isCanceled()) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return max. number of parallel I/O operations per destination device. Code
+     * which does parallel I/O on one device with a single permit (like recursive
+     * delete) should not use more threads as this
+     */
+    public int getDevicePermitCount() {
+        return devicePermitCount;
+    }
+
+    private Semaphore getDevicePermits(File destination) {
+        String key = getDeviceKey(destination);
+        Semaphore semaphore = devicePermits.get(key);
+        if (semaphore == null) {
+            synchronized (devicePermits) {
+                semaphore = devicePermits.get(key);
+                if (semaphore == null) {
+                    semaphore = new Semaphore(devicePermitCount, true);
+                    devicePermits.put(key, semaphore);
+                }
+            }
+        }
+        return semaphore;
+    }
+
+    /**
+     * Java 6 cannot tell us real mount points, so we use the device (like "C:")
+     * or the UNC share (like "//server/share") on Windows, and the first two path
+     * segments (like "/mnt/share") elsewhere.
+     * @param file
+     * @return the key of the "device" the given file belongs to
+     */
+    static String getDeviceKey(File file) {
+        IPath path = new Path(file.getAbsolutePath());
+        if (path.isUNC()) {
+            return "//" + path.uptoSegment(2).toString().replaceFirst("^/+", "");
+        }
+        String device = path.getDevice();
+        if (device != null) {
+            return device.toUpperCase();
+        }
+        return path.uptoSegment(2).toString();
+    }
+
+    /**
+     * I/O permit for a single file operation
+     */
+    public static final class Permit {
+        private final Semaphore device;
+
+        private final Semaphore global;
+
+        private boolean released;
+
+        Permit(Semaphore device, Semaphore global) {
+            this.device = device;
+            this.global = global;
+        }
+
+        public void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            global.release();
+            device.release();
+        }
+    }
+}
@@ -10,31 +10,44 @@ package de.loskutov.fs.builder;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Properties;
+import java.util.Map;
+import java.util.TreeSet;
 
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.IPathVariableManager;
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
-import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IResourceRuleFactory;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.content.IContentDescription;
 import org.eclipse.core.runtime.content.IContentType;
-import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.MultiRule;
 
 import de.loskutov.fs.FileSyncPlugin;
-import de.loskutov.fs.command.CopyDelegate;
-import de.loskutov.fs.command.CopyDelegate1;
+import de.loskutov.fs.command.DestinationMirror;
 import de.loskutov.fs.command.FS;
+import de.loskutov.fs.command.FileCopier;
 import de.loskutov.fs.command.FileMapping;
+import de.loskutov.fs.command.MappingMatcher;
 import de.loskutov.fs.command.PathVariableHelper;
+import de.loskutov.fs.metrics.BuildReport;
+import de.loskutov.fs.metrics.MappingMetrics;
+import de.loskutov.fs.metrics.SyncEvents;
+import de.loskutov.fs.metrics.TraceWriter;
+import de.loskutov.fs.metrics.SyncMetrics;
+import de.loskutov.fs.properties.MappingConfig;
 import de.loskutov.fs.properties.ProjectProperties;
 
 /**
@@ -43,8 +56,21 @@ import de.loskutov.fs.properties.ProjectProperties;
  * @author Andrey
  */
 public class SyncWizard {
-    protected static final IContentType TEXT_TYPE = Platform.getContentTypeManager()
-            .getContentType("org.eclipse.core.runtime.text"); //$NON-NLS-1$
+    private static final String TEXT_TYPE_ID = "org.eclipse.core.runtime.text"; //$NON-NLS-1$
+
+    /** initialized lazily, so that static helpers could be used without platform */
+    private static IContentType textType;
+
+    /**
+     * Orders containers so that the deepest one comes first
+     */
+    private static final Comparator<IContainer> DEEPEST_FIRST = new Comparator<IContainer>() {
+        @Override
+        public int compare(IContainer c1, IContainer c2) {
+            return MappingMatcher.DEEPEST_FIRST.compare(c1.getProjectRelativePath(), c2
+                    .getProjectRelativePath());
+        }
+    };
 
 
     /**
@@ -52,6 +78,9 @@ public class SyncWizard {
      */
     private FileMapping[] mappings;
 
+    /** matches paths against the mappings, null if there are no mappings */
+    private MappingMatcher matcher;
+
     /**
      * Default destination root
      */
@@ -59,9 +88,19 @@ public class SyncWizard {
 
     private ProjectProperties projectProps;
 
+    /** settings snapshot used by this wizard */
+    private MappingConfig config;
+
     /**
-     * True if all existing destination directories/files should be deleted
-     * before sync destination to project files.
+     * Wizard with the new settings, if this one applies removed mappings: destinations
+     * of the successor are never deleted. Null otherwise
+     */
+    private SyncWizard successor;
+
+    /**
+     * True if all existing destination directories/files which are not in sync
+     * with project files should be deleted on clean build (destination "mirrors"
+     * the project).
      * Currently it seems that Eclipse does not use "clean" flag for builders
      */
     private boolean deleteDestinationOnCleanBuild;
@@ -73,71 +112,114 @@ public class SyncWizard {
 
     private boolean needRefreshAffectedProjects;
 
-    private CopyDelegate copyDelegate;
+    private FileCopier copier;
+
+    /**
+     * Destination files and directories which should exist after the current clean
+     * build, or null if no mirror reconciliation is running
+     */
+    private DestinationMirror mirror;
+
+    /**
+     * Parents of deleted resources: their destination directories may be empty now
+     * and so should be deleted too. Collected during the build and processed once
+     * at the end, deepest first. Null if nothing was deleted
+     */
+    private TreeSet<IContainer> emptyParents;
+
+    private final SyncScheduler scheduler;
+
+    /** key is FileMapping, value are the counters of this mapping */
+    private Map<FileMapping, MappingMetrics> mappingMetrics;
+
+    /** timing report of the current build, may be null */
+    private BuildReport report;
 
     public SyncWizard() {
         super();
+        scheduler = SyncScheduler.getDefault();
     }
 
-    private void createCopyDelegate() {
-        String delegate = System.getProperty("fs.copydelegate", null);
-        if("CopyDelegate".equals(delegate)) {
-            copyDelegate = new CopyDelegate();
-        } else {
-            // this is always more performant solution. The first one is for tests only
-            copyDelegate = new CopyDelegate1();
-        }
-    }
-
-    private void initCopyDelegate(IFile file, FileMapping fm) {
-        if(copyDelegate == null){
-            createCopyDelegate();
-        }
+    private static String getCharset(IFile file) {
         try {
-            copyDelegate.setEncoding(file.getCharset());
+            return file.getCharset();
         } catch (CoreException e) {
-            copyDelegate.setEncoding("ISO-8859-1");
             FileSyncPlugin.log("Failed to get charset for file '"
                     + file.getName() + "', ISO-8859-1 used", e,
                     IStatus.WARNING);
+            return "ISO-8859-1";
         }
-        Properties propertiesMap = fm.getVariables();
-        copyDelegate.setPropertiesMap(propertiesMap);
     }
 
     public void setProjectProps(ProjectProperties props) throws IllegalArgumentException {
+        // one consistent snapshot for the entire build, settings changes during the
+        // build are used by the next one
+        setProjectProps(props, props.getConfig());
+    }
+
+    /**
+     * @param props
+     * @param config settings snapshot to use, may be an older one than the current
+     * snapshot of the properties
+     * @throws IllegalArgumentException if the settings are not usable
+     */
+    public void setProjectProps(ProjectProperties props, MappingConfig config)
+    throws IllegalArgumentException {
         projectProps = props;
-        mappings = props.getMappings();
-        if (mappings == null || mappings.length == 0) {
+        this.config = config;
+        setMappings(config == null ? null : config.getMappings());
+        if (config == null || mappings == null || mappings.length == 0) {
             throw new IllegalArgumentException("FileSync mapping is missing."
                     + " Don't panic, simply call your project owner.");
         }
-        IEclipsePreferences preferences = props.getPreferences(false);
-        String root = preferences.get(ProjectProperties.KEY_DEFAULT_DESTINATION, "");
-
-        PathVariableHelper pvh = new PathVariableHelper();
-        IPath projectPath = props.getProject().getLocation();
-        rootPath = pvh.resolveVariable(root, projectPath);
+        rootPath = config.getRootPath();
 
         if ((rootPath == null || rootPath.isEmpty()) && usesDefaultOutputFolder()) {
             throw new IllegalArgumentException("Default target folder is required"
                     + " by one of mappings but not specified in properties!");
         }
 
-        setDeleteDestinationOnCleanBuild(preferences.getBoolean(
-                ProjectProperties.KEY_CLEAN_ON_CLEAN_BUILD, false));
-        useCurrentDateForDestinationFiles = preferences.getBoolean(
-                ProjectProperties.KEY_USE_CURRENT_DATE, false);
-    }
+        setDeleteDestinationOnCleanBuild(config.isCleanOnCleanBuild());
+        useCurrentDateForDestinationFiles = config.isUseCurrentDate();
 
-    private boolean usesDefaultOutputFolder() {
+        String projectName = props.getProject().getName();
+        copier = new FileCopier(useCurrentDateForDestinationFiles, projectName);
+        // mappings are not modified during the build: identity is enough, and does
+        // not need the mapping fingerprint
+        mappingMetrics = new IdentityHashMap<FileMapping, MappingMetrics>();
         for (int i = 0; i < mappings.length; i++) {
-            IPath path = mappings[i].getDestinationPath();
-            if (path == null || path.isEmpty()) {
-                return true;
-            }
+            mappingMetrics.put(mappings[i], SyncMetrics.getDefault().getMapping(
+                    projectName, mappings[i]));
         }
-        return false;
+    }
+
+    /**
+     * @return settings snapshot used by this wizard, null if not set
+     */
+    public MappingConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Sets the wizard with the new settings, if this wizard is used to delete
+     * destinations of removed mappings: destinations still used by the successor for
+     * the same resources are kept.
+     * @param successor may be null
+     */
+    void setSuccessor(SyncWizard successor) {
+        this.successor = successor;
+    }
+
+    /**
+     * @param mappings all known file mappings, may be null
+     */
+    protected void setMappings(FileMapping[] mappings) {
+        this.mappings = mappings;
+        matcher = mappings == null ? null : new MappingMatcher(mappings);
+    }
+
+    private boolean usesDefaultOutputFolder() {
+        return matcher.usesDefaultDestination();
     }
 
     /**
@@ -172,13 +254,7 @@ public class SyncWizard {
     }
 
     public boolean hasMappedChildren(IPath path, boolean isFolder) {
-        for (int i = 0; i < mappings.length; i++) {
-            FileMapping fm = mappings[i];
-            if (path.isPrefixOf(fm.getSourcePath())) {
-                return true;
-            }
-        }
-        return false;
+        return matcher.hasMappedChildren(path);
     }
 
     public boolean hasMappedChildren(IResourceDelta delta) {
@@ -231,52 +307,193 @@ public class SyncWizard {
     }
 
     /**
-     * Delete target directory / file first (if "deleteDestinationOnFullBuild"
-     * is true), then copy source file/dir
+     * Copy source file/dir. On clean build with "deleteDestinationOnCleanBuild" set,
+     * destination is not deleted but reconciled with the source tree: only changed
+     * files are copied, and orphans are removed by {@link #reconcileMirror(IProgressMonitor)}
+     * after the entire project is visited.
      * @param res
      * @param monitor
+     * @param clean
      * @return true only if this operation was successfull
      */
     public boolean sync(IResource res, IProgressMonitor monitor, boolean clean) {
-        boolean ok = true;
         if (clean && deleteDestinationOnCleanBuild) {
-            ok = delete(res, clean, monitor);
-            if (!ok) {
-                return ok;
-            }
+            return mirror(res, monitor);
+        }
+        boolean ok = true;
+        if (!clean || matchFilter(res)) {
+            ok = copy(res, monitor);
+        }
+        if (ok) {
             needRefreshAffectedProjects = true;
         }
+        return ok;
+    }
+
+    /**
+     * Remembers destination(s) of given resource as "expected" and copies it, if
+     * resource is not filtered out. Filtered resources are simply not remembered, so
+     * that their destinations are removed as orphans during reconciliation.
+     * @param res
+     * @param monitor
+     * @return true only if this operation was successfull
+     */
+    private boolean mirror(IResource res, IProgressMonitor monitor) {
+        if (mirror == null) {
+            mirror = new DestinationMirror();
+        }
+        if (!matchFilter(res)) {
+            return true;
+        }
+        boolean ok = copy(res, monitor);
         if (ok) {
-            if (!clean || matchFilter(res)) {
-                ok = copy(res, monitor);
+            needRefreshAffectedProjects = true;
+        }
+        return ok;
+    }
+
+    /**
+     * Deletes all destination files and directories which were not expected during
+     * the clean build: they either do not exist in the project anymore or are
+     * filtered out by the mappings. Should be called only if the entire project was
+     * visited, otherwise valid destinations would be deleted too.
+     * @param monitor
+     * @return true only if all orphans were deleted
+     */
+    public boolean reconcileMirror(IProgressMonitor monitor) {
+        if (mirror == null) {
+            return true;
+        }
+        boolean commonState = true;
+        List<File> orphans = mirror.getOrphans(DestinationMirror.getRoots(mappings,
+                rootPath));
+        for (int i = 0; i < orphans.size() && !monitor.isCanceled(); i++) {
+            File child = orphans.get(i);
+            monitor.subTask("delete orphan: " + child);
+            SyncScheduler.Permit permit = scheduler.acquire(child, monitor);
+            if (permit == null) {
+                // cancelled while waiting
+                break;
+            }
+            boolean ok;
+            try {
+                ok = FS.delete(child, true, monitor, scheduler.getDevicePermitCount());
+            } finally {
+                permit.release();
             }
             if (ok) {
                 needRefreshAffectedProjects = true;
+            } else {
+                commonState = false;
+                FileSyncPlugin.log("Failed to delete orphaned external resource '"
+                        + child + "', mapped in project '"
+                        + projectProps.getProject().getName() + "'", null,
+                        IStatus.WARNING);
             }
         }
-        return ok;
+        mirror = null;
+        return commonState;
     }
 
     public void cleanUp(IProgressMonitor monitor) {
+        if (emptyParents != null && !monitor.isCanceled()) {
+            deleteEmptyParents(monitor);
+        }
+        emptyParents = null;
         if (needRefreshAffectedProjects) {
-            List/*<IContainer>*/containers = getAffectedResources();
+            List<IContainer> containers = getAffectedResources();
+            IResourceRuleFactory ruleFactory = ResourcesPlugin.getWorkspace().getRuleFactory();
+            ISchedulingRule currentRule = Job.getJobManager().currentRule();
+            final List<IContainer> outOfRule = new ArrayList<IContainer>();
+            ISchedulingRule outOfRuleRule = null;
             for (int i = 0; i < containers.size(); i++) {
-                IContainer container = (IContainer) containers.get(i);
-                try {
-                    // this will start all builder for the destination project too...
-                    // so that we could have "refresh forever"
-                    container.refreshLocal(IResource.DEPTH_INFINITE, monitor);
-                } catch (CoreException e) {
-                    FileSyncPlugin.log("Failed to refresh destination folder '"
-                            + container.getName() + "' after file sync", e,
-                            IStatus.WARNING);
+                IContainer container = containers.get(i);
+                ISchedulingRule refreshRule = ruleFactory.refreshRule(container);
+                if (currentRule != null && !currentRule.contains(refreshRule)) {
+                    // mapping was changed during the build: destination is not covered
+                    // by the builder rule, so refresh it later
+                    outOfRule.add(container);
+                    outOfRuleRule = MultiRule.combine(outOfRuleRule, refreshRule);
+                    continue;
+                }
+                long start = System.nanoTime();
+                refresh(container, monitor);
+                if (report != null) {
+                    report.addRefresh(System.nanoTime() - start);
                 }
             }
+            if (!outOfRule.isEmpty()) {
+                Job job = new Job("Refresh FileSync destinations") {
+                    @Override
+                    protected IStatus run(IProgressMonitor monitor1) {
+                        for (int i = 0; i < outOfRule.size(); i++) {
+                            refresh(outOfRule.get(i), monitor1);
+                        }
+                        return Status.OK_STATUS;
+                    }
+                };
+                job.setSystem(true);
+                job.setRule(outOfRuleRule);
+                job.schedule();
+            }
         }
-        copyDelegate = null;
+        copier = null;
+        mirror = null;
         needRefreshAffectedProjects = false;
         projectProps = null;
+        config = null;
+        successor = null;
         mappings = null;
+        matcher = null;
+        mappingMetrics = null;
+        report = null;
+    }
+
+    static void refresh(IContainer container, IProgressMonitor monitor) {
+        long start = System.nanoTime();
+        try {
+            // this will start all builder for the destination project too...
+            // so that we could have "refresh forever"
+            container.refreshLocal(IResource.DEPTH_INFINITE, monitor);
+        } catch (CoreException e) {
+            FileSyncPlugin.log("Failed to refresh destination folder '"
+                    + container.getName() + "' after file sync", e,
+                    IStatus.WARNING);
+        }
+        SyncMetrics.getDefault().recordLatency(SyncMetrics.OP_REFRESH, start);
+        if (SyncEvents.REFRESH_ENABLED) {
+            SyncEvents.record(SyncEvents.REFRESH, container.getProject(), start,
+                    container.getFullPath().toString());
+        }
+        if (TraceWriter.ENABLED) {
+            TraceWriter.span(TraceWriter.CAT_REFRESH, container.getFullPath().toString(),
+                    start);
+        }
+    }
+
+    /**
+     * Computes the rule from the settings only, without creating a wizard, so it is
+     * cheap enough to be called for each scheduled build.
+     * @param project
+     * @param config project settings
+     * @return the rule which covers the project itself and all workspace containers
+     * which could be refreshed after the sync. Destinations outside the workspace
+     * do not need any rule.
+     */
+    public static ISchedulingRule getSchedulingRule(IProject project,
+            MappingConfig config) {
+        FileMapping[] mappings = config.getMappings();
+        if (mappings == null) {
+            return project;
+        }
+        IResourceRuleFactory ruleFactory = ResourcesPlugin.getWorkspace().getRuleFactory();
+        ISchedulingRule rule = project;
+        List<IContainer> containers = getAffectedResources(mappings, config
+                .getRootPath());
+        for (int i = 0; i < containers.size(); i++) {
+            rule = MultiRule.combine(rule, ruleFactory.refreshRule(containers.get(i)));
+        }
+        return rule;
     }
 
     /**
@@ -284,8 +501,13 @@ public class SyncWizard {
      * destination targets. It is NOT the list of *really* affected resources (if build was
      * cancelled or exception etc).
      */
-    private List getAffectedResources() {
-        ArrayList list = new ArrayList();
+    private List<IContainer> getAffectedResources() {
+        return getAffectedResources(mappings, rootPath);
+    }
+
+    private static List<IContainer> getAffectedResources(FileMapping[] mappings,
+            IPath rootPath) {
+        List<IContainer> list = new ArrayList<IContainer>();
         for (int i = 0; i < mappings.length; i++) {
             IContainer[] containers = mappings[i].getDestinationContainers();
             if (containers.length > 0) {
@@ -296,7 +518,7 @@ public class SyncWizard {
                 }
             }
         }
-        if (usesDefaultOutputFolder() && rootPath != null) {
+        if (rootPath != null && MappingMatcher.usesDefaultDestination(mappings)) {
             IContainer[] containers = ResourcesPlugin.getWorkspace().getRoot()
                     .findContainersForLocation(rootPath);
             if (containers.length > 0) {
@@ -326,78 +548,45 @@ public class SyncWizard {
             return false;
         }
 
-        List destinationFiles = getDestinationFiles(mappingList, sourceRoot, relativePath);
+        SyncOperation operation = createOperation(mappingList, sourceRoot, relativePath);
 
-        if (destinationFiles == null) {
+        if (operation == null) {
             return false;
         }
-        boolean isContainer = isContainer(sourceRoot);
-        if (isContainer) {
+        if (mirror != null) {
+            for (int i = 0; i < operation.size(); i++) {
+                mirror.add(operation.getDestination(i), operation.isFolder());
+            }
+        }
+        if (operation.isFolder()) {
             // this is directory, so we should create it
-            return createDirs(sourceRoot, destinationFiles, monitor);
+            return createDirs(sourceRoot, operation, monitor);
         }
 
         boolean commonState = true;
         File sourceFile = getSourceFile(sourceRoot);
         // only required if we need to substitute variables
-        Boolean hasTextType = null;
-        for (int i = 0; i < mappingList.size() && !monitor.isCanceled(); i++) {
-            FileMapping fm = (FileMapping) mappingList.get(i);
-            File destinationFile = fm.getCurrentDestFile();
-            if(destinationFile == null){
-                continue;
+        boolean typeChecked = false;
+        boolean hasTextType = false;
+        for (int i = 0; i < operation.size() && !monitor.isCanceled(); i++) {
+            FileMapping fm = operation.getMapping(i);
+            File destinationFile = operation.getDestination(i);
+            boolean substitute = operation.isSubstitute(i);
+            if (substitute && !typeChecked) {
+                hasTextType = hasTextContentType((IFile) sourceRoot);
+                typeChecked = true;
             }
-            boolean ok;
-
-            /*
-             * single file
-             */
-            if (!destinationFile.canWrite() || destinationFile.isDirectory()) {
-                ok = FS.delete(destinationFile, false);
-                if (!ok) {
-                    commonState = false;
-                    FileSyncPlugin.log("Failed to clean old external resource '"
-                            + destinationFile + "' mapped in project '"
-                            + sourceRoot.getProject().getName() + "'", null,
-                            IStatus.WARNING);
-                    continue;
-                }
+            SyncScheduler.Permit permit = scheduler.acquire(destinationFile, monitor);
+            if (permit == null) {
+                // cancelled while waiting
+                break;
             }
-            ok = FS.create(destinationFile, true);
-            if (!ok) {
-                commonState = false;
-                FileSyncPlugin.log("Failed to create new external resource '"
-                        + destinationFile + "', mapped in project '"
-                        + sourceRoot.getProject().getName() + "'", null, IStatus.WARNING);
-                continue;
-            }
-
-            if (fm.getVariablesPath() != null && fm.getVariables() != null) {
-                if(hasTextType == null){
-                    hasTextType = Boolean.valueOf(hasTextContentType((IFile) sourceRoot));
-                }
-                if (hasTextType.booleanValue()) {
-                    initCopyDelegate((IFile) sourceRoot, fm);
-                    ok = copyDelegate.copy(sourceFile, destinationFile);
-                } else {
-                    FileSyncPlugin.log("Variable substitution not used for '"
-                            + destinationFile
-                            + "' (not a text file), mapped in project '"
-                            + sourceRoot.getProject().getName() + "'", null,
-                            IStatus.WARNING);
-                    ok = FS.copy(sourceFile, destinationFile,
-                            useCurrentDateForDestinationFiles);
-                }
-            } else {
-                ok = FS.copy(sourceFile, destinationFile,
-                        useCurrentDateForDestinationFiles);
-            }
-
-            if (!ok) {
-                commonState = false;
-                FileSyncPlugin.log("Failed to copy to external resource '"
-                        + destinationFile + "', mapped in project '"
-                        + sourceRoot.getProject().getName() + "'", null, IStatus.WARNING);
+            try {
+                boolean ok = copyFile(sourceRoot, fm, sourceFile, destinationFile, substitute
+                        && hasTextType);
+                commonState &= ok;
+            } finally {
+                permit.release();
             }
         }
         if (monitor.isCanceled()) {
@@ -408,11 +597,48 @@ public class SyncWizard {
         return commonState;
     }
 
-    private boolean createDirs(IResource sourceRoot, List/*<File>*/destinationFiles,
+    /**
+     * Copy single file to given destination. The caller has to hold the I/O permit.
+     * @return true if the file was copied
+     */
+    private boolean copyFile(IResource sourceRoot, FileMapping fm, File sourceFile,
+            File destinationFile, boolean substitute) {
+        MappingMetrics metrics = mappingMetrics.get(fm);
+        metrics.examined();
+        if (report != null) {
+            report.addChecked();
+        }
+        long start = System.nanoTime();
+        boolean upToDate = copier.isUpToDate(sourceFile, destinationFile);
+        SyncMetrics.getDefault().recordLatency(SyncMetrics.OP_STAT, start);
+        if (upToDate) {
+            metrics.skipped();
+            return true;
+        }
+        start = System.nanoTime();
+        String encoding = substitute ? getCharset((IFile) sourceRoot) : null;
+        boolean ok = copier.copy(sourceFile, destinationFile, fm, substitute, encoding);
+        if (ok) {
+            long nanos = System.nanoTime() - start;
+            long bytes = substitute ? destinationFile.length() : sourceFile.length();
+            if (substitute) {
+                metrics.substituted(bytes);
+            } else {
+                metrics.copied(bytes);
+            }
+            if (report != null) {
+                report.addCopy(sourceRoot.getFullPath().toString(), bytes, nanos,
+                        substitute);
+            }
+        }
+        return ok;
+    }
+
+    private boolean createDirs(IResource sourceRoot, SyncOperation operation,
             IProgressMonitor monitor) {
         boolean commonState = true;
-        for (int i = 0; i < destinationFiles.size() && !monitor.isCanceled(); i++) {
-            File destinationFile = (File) destinationFiles.get(i);
+        for (int i = 0; i < operation.size() && !monitor.isCanceled(); i++) {
+            File destinationFile = operation.getDestination(i);
             boolean ok = FS.create(destinationFile, false);
             if (!ok) {
                 commonState = false;
@@ -444,19 +670,45 @@ public class SyncWizard {
             return true;
         }
 
-        List destinationFiles = getDestinationFiles(mappingList, sourceRoot, relativePath);
-        if (destinationFiles == null || destinationFiles.isEmpty()) {
+        SyncOperation operation = createOperation(mappingList, sourceRoot, relativePath);
+        if (operation == null) {
             return true;
         }
+        SyncOperation kept = successor == null ? null : successor
+                .createOperation(sourceRoot);
         boolean commonState = true;
         File rootFile = rootPath == null ? null : rootPath.toFile();
-        for (int i = 0; i < destinationFiles.size() && !monitor.isCanceled(); i++) {
-            File destinationFile = (File) destinationFiles.get(i);
+        for (int i = 0; i < operation.size() && !monitor.isCanceled(); i++) {
+            FileMapping fm = operation.getMapping(i);
+            File destinationFile = operation.getDestination(i);
             if (destinationFile.equals(rootFile)) {
                 // never delete root destination path !!!
                 continue;
             }
-            boolean result = FS.delete(destinationFile, clean);
+            if (kept != null && kept.contains(destinationFile)) {
+                // still used with the new settings
+                continue;
+            }
+            SyncScheduler.Permit permit = scheduler.acquire(destinationFile, monitor);
+            if (permit == null) {
+                // cancelled while waiting
+                break;
+            }
+            boolean existed = destinationFile.exists();
+            long start = System.nanoTime();
+            boolean result;
+            try {
+                result = FS.delete(destinationFile, clean, monitor, scheduler
+                        .getDevicePermitCount());
+            } finally {
+                permit.release();
+            }
+            if (result && existed) {
+                mappingMetrics.get(fm).deleted();
+                if (report != null) {
+                    report.addDelete(destinationFile.getPath(), System.nanoTime() - start);
+                }
+            }
             if (!result && destinationFile.isFile()) {
                 commonState = false;
                 FileSyncPlugin.log("Failed to delete the external resource '"
@@ -466,14 +718,11 @@ public class SyncWizard {
         }
         IContainer parent = sourceRoot.getParent();
         if (commonState && parent != null) {
-            // try to delete parent directory, if it is empty and is in the mapping
-            IPath path = parent.getProjectRelativePath();
-            if (path.toString().length() != 0 && matchFilter(path, true)) {
-                // start recursion, ignore result value cause this was not explicit requested
-                //boolean parentDeleted = delete(parent, clean, monitor);
-                delete(parent, clean, monitor);
-                // does we need log for this ??? I think not...
+            // parent directory will be deleted at the end, if it is empty and is in the mapping
+            if (emptyParents == null) {
+                emptyParents = new TreeSet<IContainer>(DEEPEST_FIRST);
             }
+            emptyParents.add(parent);
         }
         if (monitor.isCanceled()) {
             FileSyncPlugin.log("Cancelled by user, failed to delete *all* resources, "
@@ -483,21 +732,71 @@ public class SyncWizard {
         return commonState;
     }
 
+    /**
+     * Tries to delete destination directories of remembered parents of deleted
+     * resources, if they are empty and in the mapping. Each directory is tried only
+     * once, deepest first; if it is deleted, its parent is tried too.
+     * @param monitor
+     */
+    private void deleteEmptyParents(IProgressMonitor monitor) {
+        File rootFile = rootPath == null ? null : rootPath.toFile();
+        IContainer container;
+        while ((container = emptyParents.pollFirst()) != null && !monitor.isCanceled()) {
+            IPath path = container.getProjectRelativePath();
+            if (path.isEmpty() || !matchFilter(path, true)) {
+                continue;
+            }
+            List mappingList = getMappings(path, true, false);
+            if (mappingList == null) {
+                continue;
+            }
+            SyncOperation operation = createOperation(mappingList, container, path);
+            if (operation == null) {
+                continue;
+            }
+            SyncOperation kept = successor == null ? null : successor
+                    .createOperation(container);
+            boolean deleted = false;
+            for (int i = 0; i < operation.size(); i++) {
+                File destinationFile = operation.getDestination(i);
+                if (destinationFile.equals(rootFile)) {
+                    // never delete root destination path !!!
+                    continue;
+                }
+                if (kept != null && kept.contains(destinationFile)) {
+                    continue;
+                }
+                // ignore result value cause this was not explicit requested
+                FS.delete(destinationFile, false);
+                deleted |= !destinationFile.exists();
+            }
+            IContainer parent = container.getParent();
+            if (deleted && parent != null) {
+                emptyParents.add(parent);
+            }
+        }
+    }
+
     /**
      * @param source
      * @return File object, corresponding to given resource. This file could be
      * deleted or not yet created.
      */
     protected File getSourceFile(IResource source) {
-        IWorkspace workspace = ResourcesPlugin.getWorkspace();
         // linked resources will be resolved here!
         IPath rawPath = source.getRawLocation();
-
+        if (rawPath.isAbsolute()) {
+            // no path variable: the usual case, nothing to resolve
+            return rawPath.toFile();
+        }
         // here we should resolve path variables,
         // probably existing at first place of path
-        IPathVariableManager pathManager = workspace.getPathVariableManager();
-        rawPath = pathManager.resolvePath(rawPath);
-        return rawPath.toFile();
+        IPath location = PathVariableHelper.resolveLocation(rawPath);
+        if (location == null) {
+            // not a file system path variable: let the platform try it
+            location = source.getLocation();
+        }
+        return location == null ? rawPath.toFile() : location.toFile();
     }
 
     /**
@@ -542,85 +841,25 @@ public class SyncWizard {
         //             */
         //            return false;
         //        }
-        for (int i = 0; i < mappings.length; i++) {
-            FileMapping fm = mappings[i];
-            if (fm.getSourcePath().isPrefixOf(path)) {
-                char[][] excl = fm.fullExclusionPatternChars();
-                char[][] incl = fm.fullInclusionPatternChars();
-                boolean ex = isExcluded(path, incl, excl, isFolder);
-                if (!ex) {
-                    //                    System.out.println("match: " + path + " to " + fm);
-                    return true;
-                }
-            }
-        }
-        return false;
+        return matcher.matchFilter(path, isFolder);
     }
 
-    /*
-     * Copy from org.eclipse.jdt.internal.core.util.Util
-     *
-     * Returns whether the given resource path matches one of the inclusion/exclusion
-     * patterns.
-     * NOTE: should not be asked directly using pkg root pathes
-     * @see IClasspathEntry#getInclusionPatterns
-     * @see IClasspathEntry#getExclusionPatterns
+    /**
+     * @see MappingMatcher#isExcluded(IPath, char[][], char[][], boolean)
      */
     public final static boolean isExcluded(IPath resourcePath,
             char[][] inclusionPatterns, char[][] exclusionPatterns, boolean isFolderPath) {
-        if (inclusionPatterns == null && exclusionPatterns == null) {
-            return false;
-        }
-        return isExcluded(resourcePath.toString().toCharArray(), inclusionPatterns,
+        return MappingMatcher.isExcluded(resourcePath, inclusionPatterns,
                 exclusionPatterns, isFolderPath);
     }
 
-    /*
-     * Copy from org.eclipse.jdt.internal.compiler.util.Util.isExcluded
-     *
-     * ToDO (philippe) should consider promoting it to CharOperation
-     * Returns whether the given resource path matches one of the inclusion/exclusion
-     * patterns.
-     * NOTE: should not be asked directly using pkg root pathes
-     * @see IClasspathEntry#getInclusionPatterns
-     * @see IClasspathEntry#getExclusionPatterns
+    /**
+     * @see MappingMatcher#isExcluded(char[], char[][], char[][], boolean)
      */
     public final static boolean isExcluded(char[] path, char[][] inclusionPatterns,
             char[][] exclusionPatterns, boolean isFolderPath) {
-        if (inclusionPatterns == null && exclusionPatterns == null) {
-            return false;
-        }
-
-        inclusionCheck: if (inclusionPatterns != null) {
-            for (int i = 0, length = inclusionPatterns.length; i < length; i++) {
-                char[] pattern = inclusionPatterns[i];
-                char[] folderPattern = pattern;
-                if (isFolderPath) {
-                    int lastSlash = CharOperation.lastIndexOf('/', pattern);
-                    if (lastSlash != -1 && lastSlash != pattern.length - 1) { // trailing slash -> adds '**' for free (see http://ant.apache.org/manual/dirtasks.html)
-                        int star = CharOperation.indexOf('*', pattern, lastSlash);
-                        if ((star == -1 || star >= pattern.length - 1 || pattern[star + 1] != '*')) {
-                            folderPattern = CharOperation.subarray(pattern, 0, lastSlash);
-                        }
-                    }
-                }
-                if (CharOperation.pathMatch(folderPattern, path, true, '/')) {
-                    break inclusionCheck;
-                }
-            }
-            return true; // never included
-        }
-        if (isFolderPath) {
-            path = CharOperation.concat(path, new char[] { '*' }, '/');
-        }
-        if (exclusionPatterns != null) {
-            for (int i = 0, length = exclusionPatterns.length; i < length; i++) {
-                if (CharOperation.pathMatch(exclusionPatterns[i], path, true, '/')) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return MappingMatcher.isExcluded(path, inclusionPatterns, exclusionPatterns,
+                isFolderPath);
     }
 
     /**
@@ -645,94 +884,82 @@ public class SyncWizard {
      * @return true
      */
     protected boolean mappingExists(IPath path, boolean isFolder) {
-        for (int i = 0; i < mappings.length; i++) {
-            FileMapping fm = mappings[i];
-            if (fm.getSourcePath().isPrefixOf(path)) {
-                return true;
-            }
+        return matcher.mappingExists(path);
+    }
+
+    /**
+     * @param resource
+     * @return null, if there are no matching mappings, or operation with all
+     * destinations of given resource
+     */
+    SyncOperation createOperation(IResource resource) {
+        IPath relativePath = resource.getProjectRelativePath();
+        List mappingList = getMappings(relativePath,
+                resource.getType() == IResource.FOLDER, false);
+        if (mappingList == null) {
+            return null;
         }
-        return false;
+        return createOperation(mappingList, resource, relativePath);
     }
 
     /**
      * We assume, that file mapping exist for given resource, otherwise
      * it would result in NPE
      * @param source
-     * @return null, if there are no matching mappings, or non-empty list with
-     * not - initialized File objects (that means, files could not
-     * yet exist on file system).
+     * @return null, if there are no matching mappings, or operation with at least one
+     * destination (destination files could not yet exist on file system).
      */
-    protected List/*<File>*/getDestinationFiles(List mappingList, IResource source, IPath relativePath) {
+    protected SyncOperation createOperation(List mappingList, IResource source,
+            IPath relativePath) {
+        return createOperation(mappingList, source.getRawLocation(), relativePath,
+                isContainer(source));
+    }
 
-        List fileList = new ArrayList();
-        IPath absSourcePath = source.getRawLocation();
+    /**
+     * Resolves the destinations of given resource for all given mappings. The mappings
+     * are not modified.
+     * @param mappingList
+     * @param absSourcePath raw location of the source resource
+     * @param relativePath project relative path of the source resource
+     * @param folder true if the source resource is a container
+     * @return null, if there are no matching mappings, or operation with at least one
+     * destination
+     * @see #createOperation(List, IResource, IPath)
+     */
+    protected SyncOperation createOperation(List mappingList, IPath absSourcePath,
+            IPath relativePath, boolean folder) {
+        SyncOperation operation = null;
         for (int i = 0; i < mappingList.size(); i++) {
             FileMapping fm = (FileMapping) mappingList.get(i);
-            fm.setCurrentDestFile(null);
-
-            IPath destinationPath = fm.getDestinationPath();
-            IPath sourcePath = fm.getSourcePath();
-            boolean useGlobal = destinationPath == null;
-            if (useGlobal) {
-                destinationPath = rootPath;
-            }
-            if (sourcePath.isEmpty() || destinationPath == null) {
+            IPath destinationPath = MappingMatcher.getDestinationPath(fm, relativePath,
+                    rootPath);
+            if (destinationPath == null) {
                 continue;
             }
-            if (sourcePath.isPrefixOf(relativePath)) {
-                destinationPath = destinationPath.append(relativePath
-                        .removeFirstSegments(sourcePath.segmentCount()));
-            } else {
-                // ???
-                destinationPath = destinationPath.append(relativePath);
-            }
             if (absSourcePath.equals(destinationPath)) {
-                FileSyncPlugin.log("Source and destination are the same: '" + sourcePath
+                FileSyncPlugin.log("Source and destination are the same: '"
+                        + fm.getSourcePath()
                         + "', please check mapping for project "
                         + projectProps.getProject().getName(), null, IStatus.WARNING);
                 continue;
             }
-            File destFile = destinationPath.toFile();
-            fm.setCurrentDestFile(destFile);
-            fileList.add(destFile);
-        }
-        if (fileList.isEmpty()) {
-            return null;
+            if (operation == null) {
+                operation = new SyncOperation(relativePath, folder, mappingList.size());
+            }
+            operation.add(fm, destinationPath.toFile());
         }
-        return fileList;
+        return operation;
     }
 
     /**
      * @param path
      * @param isFolder true if given path should denote folder
      * @return null if there no matching mappings, or not-empty list with
-     * FileMapping objects
+     * FileMapping objects. The list may be shared and must not be modified
      */
     protected List/*<FileMapping>*/getMappings(IPath path, boolean isFolder,
             boolean includeExcludes) {
-        ArrayList mappingList = null;
-        for (int i = 0; i < mappings.length; i++) {
-            FileMapping fm = mappings[i];
-            if (fm.getSourcePath().isPrefixOf(path)) {
-                if (includeExcludes) {
-                    if (mappingList == null) {
-                        mappingList = new ArrayList();
-                    }
-                    mappingList.add(fm);
-                    continue;
-                }
-                char[][] excl = fm.fullExclusionPatternChars();
-                char[][] incl = fm.fullInclusionPatternChars();
-                boolean ex = isExcluded(path, incl, excl, isFolder);
-                if (!ex) {
-                    if (mappingList == null) {
-                        mappingList = new ArrayList();
-                    }
-                    mappingList.add(fm);
-                }
-            }
-        }
-        return mappingList;
+        return matcher.getMappings(path, isFolder, includeExcludes);
     }
 
     //    /**
@@ -815,6 +1042,27 @@ public class SyncWizard {
         return projectProps;
     }
 
+    /**
+     * @param report timing report of the current build, may be null
+     */
+    public void setReport(BuildReport report) {
+        this.report = report;
+    }
+
+    /**
+     * @return timing report of the current build, may be null
+     */
+    public BuildReport getReport() {
+        return report;
+    }
+
+    private static IContentType getTextType() {
+        if (textType == null) {
+            textType = Platform.getContentTypeManager().getContentType(TEXT_TYPE_ID);
+        }
+        return textType;
+    }
+
     /**
      * @param file must be not null
      * @return true if the file has "text" content description.
@@ -829,7 +1077,7 @@ public class SyncWizard {
             if (contentType == null) {
                 return false;
             }
-            return contentType.isKindOf(TEXT_TYPE);
+            return contentType.isKindOf(getTextType());
             //
         } catch (CoreException e) {
             FileSyncPlugin.log(
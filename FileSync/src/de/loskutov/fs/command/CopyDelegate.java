@@ -9,6 +9,9 @@ import java.util.Properties;
 import org.eclipse.core.runtime.IStatus;
 
 import de.loskutov.fs.FileSyncPlugin;
+import de.loskutov.fs.metrics.SyncEvents;
+import de.loskutov.fs.metrics.SyncMetrics;
+import de.loskutov.fs.metrics.TraceWriter;
 
 /**
  * @author Coloma Escribano, Ignacio - initial idea and first implementation
@@ -45,9 +48,8 @@ public class CopyDelegate {
      */
     public boolean copy(File source, File destination) {
 
-        if (source == null || destination == null || !source.exists()
-                || !destination.exists() || source.isDirectory()
-                || destination.isDirectory()) {
+        if (source == null || destination == null || !FS.isCopyable(source)
+                || !FS.isCopyable(destination)) {
             if (FS.enableLogging) {
                 FileSyncPlugin.log("Could not copy file '" + source + "' to '"
                         + destination + "'", null, IStatus.WARNING);
@@ -55,21 +57,30 @@ public class CopyDelegate {
             return false;
         }
 
-        /*
-         * prevent from overhead on identical files - this works fine
-         * <b>only</b> if source and destination are on the same partition (=> the
-         * same filesystem). If both files are on different partitions, then
-         * 1) the file size could differ because of different chunk size
-         * 2) the file time could differ because of different timestamp
-         * formats on different file systems (e.g. NTFS and FAT)
-         */
-        if (!useCurrentDateForDestinationFiles
-                && destination.lastModified() == source.lastModified()
-                && destination.length() == source.length()) {
+        long start = System.nanoTime();
+        if (FS.isUpToDate(source, destination, useCurrentDateForDestinationFiles)) {
+            if (SyncEvents.COPY_ENABLED) {
+                SyncEvents.record(SyncEvents.COPY, FileSyncPlugin.PLUGIN_ID, start, source
+                        + " (skipped)");
+            }
             return true;
         }
 
-        return copyInternal(source, destination);
+        boolean success = copyInternal(source, destination);
+        long bytes = success ? destination.length() : 0;
+        if (success) {
+            SyncMetrics metrics = SyncMetrics.getDefault();
+            metrics.recordLatency(SyncMetrics.OP_SUBSTITUTE, start);
+            metrics.bytesWritten(bytes);
+        }
+        if (SyncEvents.COPY_ENABLED) {
+            SyncEvents.record(SyncEvents.COPY, FileSyncPlugin.PLUGIN_ID, start, source
+                    + (success ? " (substituted " + bytes + " bytes)" : " (failed)"));
+        }
+        if (TraceWriter.ENABLED) {
+            TraceWriter.span(TraceWriter.CAT_SUBSTITUTE, source.getPath(), start);
+        }
+        return success;
     }
 
 
@@ -12,11 +12,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.eclipse.core.runtime.IStatus;
@@ -27,8 +25,11 @@ import de.loskutov.fs.FileSyncPlugin;
  * @author Andrey
  */
 public class CopyDelegate1 extends CopyDelegate {
-    private Map<Pattern, String> patternToValue;
-    private Map<Pattern, String> patternToKey;
+    /** "${key}" strings, to check lines before matching */
+    private String[] tokens;
+    private String[] values;
+    /** reused for all lines, one per variable */
+    private Matcher[] matchers;
 
     @Override
     public void setPropertiesMap(Properties propertiesMap) {
@@ -58,13 +59,11 @@ public class CopyDelegate1 extends CopyDelegate {
             writer = new LineWriter(new FileOutputStream(destination), encoding);
             String line = null;
             while((line = reader.readLineToString()) != null){
-                for (Iterator<Pattern> i = patternToValue.keySet().iterator(); i.hasNext();) {
-                    Pattern pattern =  i.next();
-                    if(line.indexOf(patternToKey.get(pattern)) < 0 ){
+                for (int i = 0; i < tokens.length; i++) {
+                    if(line.indexOf(tokens[i]) < 0 ){
                         continue;
                     }
-                    String value = patternToValue.get(pattern);
-                    line = pattern.matcher(line).replaceAll(value);
+                    line = matchers[i].reset(line).replaceAll(values[i]);
                 }
                 writer.writeLine(line);
             }
@@ -113,13 +112,17 @@ public class CopyDelegate1 extends CopyDelegate {
     }
 
     private void initPatterns() {
-        patternToValue = new HashMap<Pattern, String>();
-        patternToKey = new HashMap<Pattern, String>();
         Set<String> keySet = variablesMap.stringPropertyNames();
+        tokens = new String[keySet.size()];
+        values = new String[tokens.length];
+        matchers = new Matcher[tokens.length];
+        int i = 0;
         for (String key : keySet) {
             Pattern pattern = Pattern.compile("\\$\\{" + key + "\\}");
-            patternToValue.put(pattern, variablesMap.getProperty(key));
-            patternToKey.put(pattern, key);
+            tokens[i] = "${" + key + "}";
+            values[i] = variablesMap.getProperty(key);
+            matchers[i] = pattern.matcher("");
+            i++;
         }
     }
 
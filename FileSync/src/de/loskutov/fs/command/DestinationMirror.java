@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.command;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Destination files and directories expected after a clean sync of the entire project
+ * (destination "mirrors" the project). Everything else found in the expected
+ * directories is an orphan: it either does not exist in the project anymore or is
+ * filtered out by the mappings.
+ * <p>
+ * Destination roots (the default destination and the destinations of the mappings)
+ * are often shared with other projects or mappings, so only directories below them
+ * are reconciled.
+ * @author Andrey
+ */
+public final class DestinationMirror {
+
+    private final Set<File> files;
+
+    /** in the order of visiting, parents first */
+    private final Set<File> dirs;
+
+    public DestinationMirror() {
+        super();
+        files = new HashSet<File>();
+        dirs = new LinkedHashSet<File>();
+    }
+
+    /**
+     * Remembers given destination as expected
+     * @param destination
+     * @param folder true if the destination is a directory
+     */
+    public void add(File destination, boolean folder) {
+        files.add(destination);
+        if (folder) {
+            dirs.add(destination);
+        }
+    }
+
+    /**
+     * @param mappings
+     * @param rootPath default destination, may be null
+     * @return default destination and destinations of all given mappings
+     */
+    public static Set<File> getRoots(FileMapping[] mappings, IPath rootPath) {
+        Set<File> roots = new HashSet<File>();
+        if (rootPath != null && !rootPath.isEmpty()) {
+            roots.add(rootPath.toFile());
+        }
+        for (int i = 0; i < mappings.length; i++) {
+            IPath path = mappings[i].getDestinationPath();
+            if (path != null && !path.isEmpty()) {
+                roots.add(path.toFile());
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Should be called only if the entire project was visited, otherwise valid
+     * destinations would be orphans too.
+     * @param roots destination roots, see {@link #getRoots(FileMapping[], IPath)}.
+     * They and their children are never orphans
+     * @return children of the expected directories which are not expected. Children
+     * of orphan directories are not listed
+     */
+    public List<File> getOrphans(Set<File> roots) {
+        List<File> orphans = new ArrayList<File>();
+        for (File dir : dirs) {
+            if (roots.contains(dir)) {
+                // may contain output of other projects or mappings
+                continue;
+            }
+            File[] children = dir.listFiles();
+            if (children == null) {
+                continue;
+            }
+            for (int i = 0; i < children.length; i++) {
+                File child = children[i];
+                if (!files.contains(child) && !roots.contains(child)) {
+                    orphans.add(child);
+                }
+            }
+        }
+        return orphans;
+    }
+}
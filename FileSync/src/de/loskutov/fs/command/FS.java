@@ -13,10 +13,15 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.util.List;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 
 import de.loskutov.fs.FileSyncPlugin;
+import de.loskutov.fs.metrics.SyncEvents;
+import de.loskutov.fs.metrics.SyncMetrics;
+import de.loskutov.fs.metrics.TraceWriter;
 
 /**
  * Utility class for file system related operations.
@@ -96,35 +101,69 @@ public final class FS {
      * @return true if source was successfully deleted or if it was not existing
      */
     public static boolean delete(File source, boolean recursive) {
+        return delete(source, recursive, null);
+    }
+
+    /**
+     * If "recursive" is false, then this is a single file/directory delete
+     * operation. Directory should be empty before it can be deleted.
+     * If "recursive" is true, then all children will be deleted too (in parallel,
+     * see {@link ParallelDelete}). Recursive delete does not stop on the first
+     * failure, but tries to delete as much as possible.
+     * @param source
+     * @param monitor may be null, used to report recursive delete progress
+     * @return true if source was successfully deleted or if it was not existing
+     */
+    public static boolean delete(File source, boolean recursive, IProgressMonitor monitor) {
+        return delete(source, recursive, monitor, ParallelDelete.THREADS);
+    }
+
+    /**
+     * Same as {@link #delete(File, boolean, IProgressMonitor)}, but recursive delete
+     * uses not more as given number of threads.
+     * @param source
+     * @param recursive
+     * @param monitor may be null, used to report recursive delete progress
+     * @param parallelism max. number of parallel delete operations, usually the
+     * number of I/O permits of the destination device
+     * @return true if source was successfully deleted or if it was not existing
+     */
+    public static boolean delete(File source, boolean recursive, IProgressMonitor monitor,
+            int parallelism) {
         if (source == null || !source.exists()) {
             return true;
         }
-        if (recursive) {
-            if (source.isDirectory()) {
-                File[] files = source.listFiles();
-                boolean ok = true;
-                for (int i = 0; i < files.length; i++) {
-                    ok = delete(files[i], true);
-                    if (!ok) {
-                        return false;
-                    }
+        long start = System.nanoTime();
+        boolean result;
+        if (recursive && source.isDirectory()) {
+            ParallelDelete delete = new ParallelDelete(monitor, parallelism);
+            result = delete.delete(source);
+            if (!result && enableLogging) {
+                List<File> failures = delete.getFailures();
+                StringBuffer sb = new StringBuffer();
+                for (int i = 0; i < failures.size() && i < 10; i++) {
+                    sb.append("\n\t").append(failures.get(i));
+                }
+                if (failures.size() > 10) {
+                    sb.append("\n\t...");
                 }
-            } /* comented out because this kind of decisions is for SyncWizard only
-             else {
-             File dir = source.getParentFile();
-             boolean ok = delete(source, false);
-             if(ok && dir.list().length == 0){
-             // delete parant directory, because it is now empty
-             // and we have a clean build
-             ok = delete(dir, false);
-             }
-             return ok;
-             } */
+                FileSyncPlugin.log("Could not delete " + failures.size()
+                        + " file(s) under '" + source + "':" + sb, null,
+                        IStatus.WARNING);
+            }
+        } else {
+            result = source.delete();
+            if (!result && !source.isDirectory() && enableLogging) {
+                FileSyncPlugin.log("Could not delete file '" + source + "'", null,
+                        IStatus.WARNING);
+            }
         }
-        boolean result = source.delete();
-        if (!result && !source.isDirectory() && enableLogging) {
-            FileSyncPlugin.log("Could not delete file '" + source + "'", null,
-                    IStatus.WARNING);
+        if (SyncEvents.DELETE_ENABLED) {
+            SyncEvents.record(SyncEvents.DELETE, FileSyncPlugin.PLUGIN_ID, start, source
+                    + (result ? "" : " (failed)"));
+        }
+        if (TraceWriter.ENABLED) {
+            TraceWriter.span(TraceWriter.CAT_DELETE, source.getPath(), start);
         }
         return result;
     }
@@ -139,9 +178,8 @@ public final class FS {
      */
     public static boolean copy(File source, File destination,
             boolean useCurrentDateForDestinationFiles) {
-        if (source == null || destination == null || !source.exists()
-                || !destination.exists() || source.isDirectory()
-                || destination.isDirectory()) {
+        if (source == null || destination == null || !isCopyable(source)
+                || !isCopyable(destination)) {
             if (enableLogging) {
                 FileSyncPlugin.log("Could not copy file '" + source + "' to '"
                         + destination + "'", null, IStatus.WARNING);
@@ -149,20 +187,16 @@ public final class FS {
             return false;
         }
 
-        /*
-         * prevent from overhead on identical files - this works fine
-         * <b>only</b> if source and destination are on the same partition (=> the
-         * same filesystem). If both files are on different partitions, then
-         * 1) the file size could differ because of different chunk size
-         * 2) the file time could differ because of different timestamp
-         * formats on different file systems (e.g. NTFS and FAT)
-         */
-        if (!useCurrentDateForDestinationFiles
-                && destination.lastModified() == source.lastModified()
-                && destination.length() == source.length()) {
+        long start = System.nanoTime();
+        if (isUpToDate(source, destination, useCurrentDateForDestinationFiles)) {
+            if (SyncEvents.COPY_ENABLED) {
+                SyncEvents.record(SyncEvents.COPY, FileSyncPlugin.PLUGIN_ID, start, source
+                        + " (skipped)");
+            }
             return true;
         }
 
+        long numbytes = 0;
         boolean success = true;
         FileInputStream fin = null; // Streams to the two files.
         FileOutputStream fout = null; // These are closed in the finally block.
@@ -178,7 +212,7 @@ public final class FS {
             out = fout.getChannel(); // get its channel
 
             // Query the size of the input file
-            long numbytes = in.size();
+            numbytes = in.size();
 
             // Bulk-transfer all bytes from one channel to the other.
             // This is a special feature of FileChannel channels.
@@ -232,7 +266,45 @@ public final class FS {
             }
 
         }
-
+        if (success) {
+            SyncMetrics metrics = SyncMetrics.getDefault();
+            metrics.recordLatency(SyncMetrics.OP_COPY, start);
+            metrics.bytesWritten(numbytes);
+        }
+        if (SyncEvents.COPY_ENABLED) {
+            SyncEvents.record(SyncEvents.COPY, FileSyncPlugin.PLUGIN_ID, start, source
+                    + (success ? " (copied " + numbytes + " bytes)" : " (failed)"));
+        }
+        if (TraceWriter.ENABLED) {
+            TraceWriter.span(TraceWriter.CAT_COPY, source.getPath(), start);
+        }
         return success;
     }
+
+    /**
+     * @return true if given file exists and is not a directory. Costs one file system
+     * call for regular files (the common case)
+     */
+    static boolean isCopyable(File file) {
+        return file.isFile() || (file.exists() && !file.isDirectory());
+    }
+
+    /**
+     * Prevents from overhead on identical files - this works fine
+     * <b>only</b> if source and destination are on the same partition (=> the
+     * same filesystem). If both files are on different partitions, then
+     * 1) the file size could differ because of different chunk size
+     * 2) the file time could differ because of different timestamp
+     * formats on different file systems (e.g. NTFS and FAT)
+     * @param source
+     * @param destination
+     * @param useCurrentDateForDestinationFiles if true, destination is never up to date
+     * @return true if destination has same time stamp and size as the source
+     */
+    public static boolean isUpToDate(File source, File destination,
+            boolean useCurrentDateForDestinationFiles) {
+        return !useCurrentDateForDestinationFiles
+                && destination.lastModified() == source.lastModified()
+                && destination.length() == source.length();
+    }
 }
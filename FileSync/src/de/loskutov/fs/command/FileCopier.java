@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.command;
+
+import java.io.File;
+
+import org.eclipse.core.runtime.IStatus;
+
+import de.loskutov.fs.FileSyncPlugin;
+
+/**
+ * Copies single mapped files to their destinations, with variables substitution if
+ * required. Used by the builder and by the standalone sync, so that both decide the
+ * same way if a destination is up to date and how an existing one is replaced.
+ * <p>
+ * Not thread safe: the copy delegate is reused for all files.
+ * @author Andrey
+ */
+public final class FileCopier {
+
+    private final boolean useCurrentDate;
+
+    /** used in log messages only */
+    private final String projectName;
+
+    private CopyDelegate copyDelegate;
+
+    /**
+     * @param useCurrentDate to use current date for destination files instead of the
+     * source file date
+     * @param projectName name of the project the files are mapped in
+     */
+    public FileCopier(boolean useCurrentDate, String projectName) {
+        super();
+        this.useCurrentDate = useCurrentDate;
+        this.projectName = projectName;
+    }
+
+    /**
+     * @param source
+     * @param destination
+     * @return true if the destination is an existing writable file which does not need
+     * to be copied again
+     */
+    public boolean isUpToDate(File source, File destination) {
+        return destination.isFile() && destination.canWrite()
+                && FS.isUpToDate(source, destination, useCurrentDate);
+    }
+
+    /**
+     * Replaces the destination with the source file. Read-only destinations and
+     * directories with the same name are deleted first.
+     * @param source
+     * @param destination
+     * @param fm mapping which produced the destination
+     * @param substitute true to substitute the variables of the mapping (source is
+     * a text file)
+     * @param encoding text encoding of the source, used only for substitution
+     * @return true if the file was copied
+     */
+    public boolean copy(File source, File destination, FileMapping fm,
+            boolean substitute, String encoding) {
+        if (!destination.canWrite() || destination.isDirectory()) {
+            if (!FS.delete(destination, false)) {
+                FileSyncPlugin.log("Failed to clean old external resource '"
+                        + destination + "', mapped in project '" + projectName + "'",
+                        null, IStatus.WARNING);
+                return false;
+            }
+        }
+        if (!FS.create(destination, true)) {
+            FileSyncPlugin.log("Failed to create new external resource '" + destination
+                    + "', mapped in project '" + projectName + "'", null,
+                    IStatus.WARNING);
+            return false;
+        }
+        boolean ok;
+        if (substitute) {
+            CopyDelegate delegate = getCopyDelegate();
+            delegate.setEncoding(encoding);
+            delegate.setPropertiesMap(fm.getVariables());
+            ok = delegate.copy(source, destination);
+        } else {
+            if (fm.getVariablesPath() != null && fm.getVariables() != null) {
+                FileSyncPlugin.log("Variable substitution not used for '" + destination
+                        + "' (not a text file), mapped in project '" + projectName + "'",
+                        null, IStatus.WARNING);
+            }
+            ok = FS.copy(source, destination, useCurrentDate);
+        }
+        if (!ok) {
+            FileSyncPlugin.log("Failed to copy to external resource '" + destination
+                    + "', mapped in project '" + projectName + "'", null,
+                    IStatus.WARNING);
+        }
+        return ok;
+    }
+
+    private CopyDelegate getCopyDelegate() {
+        if (copyDelegate == null) {
+            String delegate = System.getProperty("fs.copydelegate", null);
+            if ("CopyDelegate".equals(delegate)) {
+                copyDelegate = new CopyDelegate();
+            } else {
+                // this is always more performant solution. The first one is for tests only
+                copyDelegate = new CopyDelegate1();
+            }
+            copyDelegate.setUseCurrentDateForDestinationFiles(useCurrentDate);
+        }
+        return copyDelegate;
+    }
+}
@@ -8,7 +8,7 @@
  *******************************************************************************/
 package de.loskutov.fs.command;
 
-import java.io.File;
+import java.util.Arrays;
 import java.util.Properties;
 import java.util.StringTokenizer;
 
@@ -70,6 +70,9 @@ public class FileMapping {
 
     private static final char[][] ALL_CHARS = new char[][] { "**/*".toCharArray() };
 
+    /** structural fingerprint, 0 if not yet computed */
+    private long fingerprint;
+
     private final PathVariableHelper pathVariableHelper;
 
     private IPath variablesPath;
@@ -80,9 +83,6 @@ public class FileMapping {
 
     private String encoding;
 
-    /** only temporary solution during copy of files*/
-    private transient File currDestFile;
-
     /**
      *
      */
@@ -112,6 +112,7 @@ public class FileMapping {
             FileSyncPlugin.log("Path is not relative and will be ignored: " + variables,
                     null, IStatus.ERROR);
         }
+        getFingerprint();
     }
 
     /**
@@ -122,6 +123,58 @@ public class FileMapping {
         this();
         this.projectPath = projectPath;
         decode(fullMapping);
+        getFingerprint();
+    }
+
+    /**
+     * Creates mapping from already decoded (and compiled) parts, for example read from
+     * a cache. Only the destination is resolved again.
+     * @param sourcePath not null
+     * @param destination destination as written in the settings (with variables), may
+     * be null
+     * @param inclusionPatterns may be null
+     * @param exclusionPatterns may be null
+     * @param variablesPath project relative path, may be null
+     * @param inclusionChars see {@link #fullInclusionPatternChars()}, may be null
+     * @param exclusionChars see {@link #fullExclusionPatternChars()}, may be null
+     * @param projectPath
+     * @return new mapping
+     */
+    public static FileMapping create(IPath sourcePath, String destination,
+            IPath[] inclusionPatterns, IPath[] exclusionPatterns, IPath variablesPath,
+            char[][] inclusionChars, char[][] exclusionChars, IPath projectPath) {
+        FileMapping fm = new FileMapping();
+        fm.projectPath = projectPath;
+        fm.sourcePath = sourcePath;
+        if (!fm.isEmptyPath(destination)) {
+            fm.destinationPath = fm.pathVariableHelper.resolveVariable(destination,
+                    projectPath);
+        }
+        fm.inclusionPatterns = inclusionPatterns;
+        fm.exclusionPatterns = exclusionPatterns;
+        fm.variablesPath = variablesPath;
+        fm.fullCharInclusionPatterns = inclusionChars;
+        fm.fullCharExclusionPatterns = exclusionChars;
+        fm.getFingerprint();
+        return fm;
+    }
+
+    /**
+     * @param fullMapping encoded mapping
+     * @return destination part of given encoded mapping, as written (with variables),
+     * or null
+     * @see #encode()
+     */
+    public static String getDestinationToken(String fullMapping) {
+        if (fullMapping == null) {
+            return null;
+        }
+        StringTokenizer st = new StringTokenizer(fullMapping, MAP_SEPARATOR);
+        if (st.countTokens() < 2) {
+            return null;
+        }
+        st.nextToken();
+        return st.nextToken();
     }
 
     /**
@@ -268,6 +321,7 @@ public class FileMapping {
      */
     public void setDestinationPath(IPath destinationPath) {
         this.destinationPath = destinationPath;
+        fingerprint = 0;
     }
 
     /**
@@ -283,6 +337,7 @@ public class FileMapping {
     public void setExclusionPatterns(IPath[] exclusionPatterns) {
         this.exclusionPatterns = exclusionPatterns;
         fullCharExclusionPatterns = null;
+        fingerprint = 0;
     }
 
     /**
@@ -298,6 +353,16 @@ public class FileMapping {
     public void setInclusionPatterns(IPath[] inclusionPatterns) {
         this.inclusionPatterns = inclusionPatterns;
         fullCharInclusionPatterns = null;
+        fingerprint = 0;
+    }
+
+    /**
+     * @return true if this mapping has inclusion or exclusion patterns. If not,
+     * all files below the source path are mapped and patterns need not to be matched
+     */
+    public boolean hasPatterns() {
+        return (inclusionPatterns != null && inclusionPatterns.length > 0)
+        || (exclusionPatterns != null && exclusionPatterns.length > 0);
     }
 
     /**
@@ -366,8 +431,17 @@ public class FileMapping {
         if (!(obj instanceof FileMapping)) {
             return false;
         }
-        String mapAsString = encode();
-        return mapAsString.equals(((FileMapping) obj).encode());
+        FileMapping other = (FileMapping) obj;
+        return getFingerprint() == other.getFingerprint()
+        && equal(sourcePath, other.sourcePath)
+        && equal(destinationPath, other.destinationPath)
+        && equal(variablesPath, other.variablesPath)
+        && Arrays.equals(getInclusionPatterns(), other.getInclusionPatterns())
+        && Arrays.equals(getExclusionPatterns(), other.getExclusionPatterns());
+    }
+
+    private static boolean equal(IPath path1, IPath path2) {
+        return path1 == null ? path2 == null : path1.equals(path2);
     }
 
     /* (non-Javadoc)
@@ -375,8 +449,44 @@ public class FileMapping {
      */
     @Override
     public int hashCode() {
-        String mapAsString = encode();
-        return mapAsString.hashCode();
+        long fp = getFingerprint();
+        return (int) (fp ^ (fp >>> 32));
+    }
+
+    /**
+     * Structural 64 bit fingerprint (FNV-1a) of the source, resolved destination,
+     * patterns and variables path. Mappings with different fingerprints are not equal.
+     * Computed once, after decoding and after each change of the mapping.
+     * @return fingerprint, never 0
+     */
+    public long getFingerprint() {
+        long fp = fingerprint;
+        if (fp != 0) {
+            return fp;
+        }
+        fp = Fnv1a.OFFSET;
+        fp = hash(fp, sourcePath);
+        fp = hash(fp, destinationPath);
+        fp = hash(fp, variablesPath);
+        IPath[] patterns = getInclusionPatterns();
+        for (int i = 0; i < patterns.length; i++) {
+            fp = hash(fp, patterns[i]);
+        }
+        fp = Fnv1a.hash(fp, EMPTY_ENTRY);
+        patterns = getExclusionPatterns();
+        for (int i = 0; i < patterns.length; i++) {
+            fp = hash(fp, patterns[i]);
+        }
+        if (fp == 0) {
+            fp = Fnv1a.OFFSET;
+        }
+        fingerprint = fp;
+        return fp;
+    }
+
+    private static long hash(long fp, IPath path) {
+        fp = Fnv1a.hash(fp, path == null ? EMPTY_ENTRY : path.toPortableString());
+        return Fnv1a.hash(fp, MAP_SEPARATOR);
     }
 
     /**
@@ -429,13 +539,6 @@ public class FileMapping {
         return filePath;
     }
 
-    public File getCurrentDestFile(){
-        return currDestFile;
-    }
-    public void setCurrentDestFile(File currDestFile){
-        this.currDestFile = currDestFile;
-    }
-
     /**
      * @param encoding the encoding to set
      */
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.command;
+
+/**
+ * 64 bit FNV-1a hash of strings. Used for the mapping fingerprints and for the
+ * validation of the persisted mapping cache, so both must use the same function.
+ * @author Andrey
+ */
+public final class Fnv1a {
+
+    /** initial hash value */
+    public static final long OFFSET = 0xcbf29ce484222325L;
+
+    private static final long PRIME = 0x100000001b3L;
+
+    private Fnv1a() {
+        // don't instantiate me
+    }
+
+    /**
+     * @param hash current hash value, {@link #OFFSET} for the first value
+     * @param value
+     * @return hash value with all characters of given value added
+     */
+    public static long hash(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= PRIME;
+        }
+        return hash;
+    }
+}
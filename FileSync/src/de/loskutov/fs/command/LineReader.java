@@ -109,9 +109,7 @@ public class LineReader {
             // if found, return part of buffer, contains this line
             if (newLineEndIdx >= 0) {
                 line = new StringBuffer(newLineEndIdx - lastLineEndIdx);
-                line
-                .append(partOfArray(charBuffer, lastLineEndIdx + 1,
-                        newLineEndIdx + 1));
+                line.append(charBuffer, lastLineEndIdx + 1, newLineEndIdx - lastLineEndIdx);
                 lastLineEndIdx = newLineEndIdx;
                 return line;
             }
@@ -119,10 +117,9 @@ public class LineReader {
             // next line end char; or after '\r' char no chars found in buffer
             // and we should check next char for '\n'
             // save "unreaded" chars
-            char[] lastChars = partOfArray(charBuffer, lastLineEndIdx + 1,
-                    bufferEndIdx + 1);
-            line = new StringBuffer(lastChars.length);
-            line.append(lastChars);
+            int lastCharsCount = bufferEndIdx - lastLineEndIdx;
+            line = new StringBuffer(lastCharsCount + 80);
+            line.append(charBuffer, lastLineEndIdx + 1, lastCharsCount);
 
             // buffer is empty now
             bufferEndIdx = -1;
@@ -160,11 +157,11 @@ public class LineReader {
             int newPartEndIdx = newLineEndIdx < 0 ? bufferEndIdx + 1 : newLineEndIdx + 1;
 
             // add new part to line
-            char[] newPart = partOfArray(charBuffer, lastLineEndIdx + 1, newPartEndIdx);
+            int newPartCount = newPartEndIdx - (lastLineEndIdx + 1);
             if (line == null) {
-                line = new StringBuffer(newPart.length);
+                line = new StringBuffer(newPartCount);
             }
-            line.append(newPart);
+            line.append(charBuffer, lastLineEndIdx + 1, newPartCount);
 
             // re-set buffer end index, if buffer is full and line end is not found
             if (newLineEndIdx < 0 && bufferEndIdx + 1 == charBufferSize) { //
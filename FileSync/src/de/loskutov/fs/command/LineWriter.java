@@ -20,6 +20,9 @@ import java.io.UnsupportedEncodingException;
  */
 public class LineWriter extends OutputStreamWriter {
 
+    /** reused for all written lines */
+    private char[] lineChars;
+
     /**
      * @param out
      */
@@ -49,7 +52,12 @@ public class LineWriter extends OutputStreamWriter {
      * followed immediately by a linefeed.
      */
     public void writeLine(String line) throws IOException {
-        write(line.toCharArray(), 0, line.length());
+        int length = line.length();
+        if (lineChars == null || lineChars.length < length) {
+            lineChars = new char[Math.max(length, 256)];
+        }
+        line.getChars(0, length, lineChars, 0);
+        write(lineChars, 0, length);
     }
 
 }
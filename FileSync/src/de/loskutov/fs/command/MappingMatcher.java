@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.command;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.core.runtime.IPath;
+
+import de.loskutov.fs.builder.CharOperation;
+
+/**
+ * Matches project relative paths against file mappings and resolves their
+ * destinations. Works on paths only, without workspace resources, so that the
+ * builder and the standalone sync follow exactly the same mapping rules.
+ * <p>
+ * The mappings must not be modified while they are used by the matcher.
+ * @author Andrey
+ */
+public final class MappingMatcher {
+
+    /**
+     * Orders paths so that the deepest one comes first: children are deleted before
+     * their parents
+     */
+    public static final Comparator<IPath> DEEPEST_FIRST = new Comparator<IPath>() {
+        @Override
+        public int compare(IPath p1, IPath p2) {
+            int diff = p2.segmentCount() - p1.segmentCount();
+            if (diff != 0) {
+                return diff;
+            }
+            return p1.toString().compareTo(p2.toString());
+        }
+    };
+
+    private final FileMapping[] mappings;
+
+    /**
+     * For each mapping: unmodifiable list with this mapping only. Returned by
+     * getMappings() if only one mapping matches (common case), to avoid allocations
+     * for each visited resource
+     */
+    private final List<FileMapping>[] singleMappingLists;
+
+    /**
+     * @param mappings all known file mappings, not null
+     */
+    @SuppressWarnings("unchecked")
+    public MappingMatcher(FileMapping[] mappings) {
+        super();
+        this.mappings = mappings;
+        singleMappingLists = new List[mappings.length];
+        for (int i = 0; i < mappings.length; i++) {
+            singleMappingLists[i] = Collections.singletonList(mappings[i]);
+        }
+    }
+
+    /**
+     * @return all known mappings. The array must not be modified
+     */
+    public FileMapping[] getMappings() {
+        return mappings;
+    }
+
+    /**
+     * @param path project relative path
+     * @param isFolder true if given path should denote folder
+     * @param includeExcludes true to return mappings even if the path is excluded by
+     * their patterns
+     * @return null if there no matching mappings, or not-empty list with
+     * FileMapping objects. The list may be shared and must not be modified
+     */
+    public List<FileMapping> getMappings(IPath path, boolean isFolder,
+            boolean includeExcludes) {
+        // index of the first matching mapping, the list is created for the second one
+        int first = -1;
+        List<FileMapping> mappingList = null;
+        // converted only if needed, once for all mappings
+        char[] pathChars = null;
+        for (int i = 0; i < mappings.length; i++) {
+            FileMapping fm = mappings[i];
+            if (!fm.getSourcePath().isPrefixOf(path)) {
+                continue;
+            }
+            if (!includeExcludes && fm.hasPatterns()) {
+                if (pathChars == null) {
+                    pathChars = path.toString().toCharArray();
+                }
+                char[][] excl = fm.fullExclusionPatternChars();
+                char[][] incl = fm.fullInclusionPatternChars();
+                if (isExcluded(pathChars, incl, excl, isFolder)) {
+                    continue;
+                }
+            }
+            if (first < 0) {
+                first = i;
+                continue;
+            }
+            if (mappingList == null) {
+                mappingList = new ArrayList<FileMapping>();
+                mappingList.add(mappings[first]);
+            }
+            mappingList.add(fm);
+        }
+        if (mappingList != null) {
+            return mappingList;
+        }
+        return first < 0 ? null : singleMappingLists[first];
+    }
+
+    /**
+     * Check if given path is in included and not in excluded entries patterns
+     * in any one of known project files mappings.
+     * @param path project relative path
+     * @param isFolder
+     * @return true if at least one mapping accepts the path
+     */
+    public boolean matchFilter(IPath path, boolean isFolder) {
+        // converted only if needed, once for all mappings
+        char[] pathChars = null;
+        for (int i = 0; i < mappings.length; i++) {
+            FileMapping fm = mappings[i];
+            if (fm.getSourcePath().isPrefixOf(path)) {
+                if (!fm.hasPatterns()) {
+                    return true;
+                }
+                if (pathChars == null) {
+                    pathChars = path.toString().toCharArray();
+                }
+                char[][] excl = fm.fullExclusionPatternChars();
+                char[][] incl = fm.fullInclusionPatternChars();
+                if (!isExcluded(pathChars, incl, excl, isFolder)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param path project relative path
+     * @return true if given path is below the source folder of any mapping, regardless
+     * of the patterns
+     */
+    public boolean mappingExists(IPath path) {
+        for (int i = 0; i < mappings.length; i++) {
+            if (mappings[i].getSourcePath().isPrefixOf(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param path project relative path
+     * @return true if given path is a parent of (or same as) the source folder of any
+     * mapping
+     */
+    public boolean hasMappedChildren(IPath path) {
+        for (int i = 0; i < mappings.length; i++) {
+            if (path.isPrefixOf(mappings[i].getSourcePath())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if at least one mapping has no own destination and so uses the
+     * default destination
+     */
+    public boolean usesDefaultDestination() {
+        return usesDefaultDestination(mappings);
+    }
+
+    /**
+     * @param mappings
+     * @return true if at least one of given mappings has no own destination and so
+     * uses the default destination
+     */
+    public static boolean usesDefaultDestination(FileMapping[] mappings) {
+        for (int i = 0; i < mappings.length; i++) {
+            IPath path = mappings[i].getDestinationPath();
+            if (path == null || path.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param fm mapping which matches given path
+     * @param relativePath project relative path of the source
+     * @param rootPath default destination, may be null
+     * @return destination path of given source for given mapping, or null if the
+     * mapping is not usable (has empty source or no destination at all)
+     */
+    public static IPath getDestinationPath(FileMapping fm, IPath relativePath,
+            IPath rootPath) {
+        IPath destinationPath = fm.getDestinationPath();
+        IPath sourcePath = fm.getSourcePath();
+        if (destinationPath == null) {
+            destinationPath = rootPath;
+        }
+        if (sourcePath.isEmpty() || destinationPath == null) {
+            return null;
+        }
+        if (sourcePath.isPrefixOf(relativePath)) {
+            int sourceSegments = sourcePath.segmentCount();
+            return destinationPath.append(sourceSegments == 0 ? relativePath
+                    : relativePath.removeFirstSegments(sourceSegments));
+        }
+        // ???
+        return destinationPath.append(relativePath);
+    }
+
+    /*
+     * Copy from org.eclipse.jdt.internal.core.util.Util
+     *
+     * Returns whether the given resource path matches one of the inclusion/exclusion
+     * patterns.
+     * NOTE: should not be asked directly using pkg root pathes
+     * @see IClasspathEntry#getInclusionPatterns
+     * @see IClasspathEntry#getExclusionPatterns
+     */
+    public static boolean isExcluded(IPath resourcePath, char[][] inclusionPatterns,
+            char[][] exclusionPatterns, boolean isFolderPath) {
+        if (inclusionPatterns == null && exclusionPatterns == null) {
+            return false;
+        }
+        return isExcluded(resourcePath.toString().toCharArray(), inclusionPatterns,
+                exclusionPatterns, isFolderPath);
+    }
+
+    /*
+     * Copy from org.eclipse.jdt.internal.compiler.util.Util.isExcluded
+     *
+     * ToDO (philippe) should consider promoting it to CharOperation
+     * Returns whether the given resource path matches one of the inclusion/exclusion
+     * patterns.
+     * NOTE: should not be asked directly using pkg root pathes
+     * @see IClasspathEntry#getInclusionPatterns
+     * @see IClasspathEntry#getExclusionPatterns
+     */
+    public static boolean isExcluded(char[] path, char[][] inclusionPatterns,
+            char[][] exclusionPatterns, boolean isFolderPath) {
+        if (inclusionPatterns == null && exclusionPatterns == null) {
+            return false;
+        }
+
+        inclusionCheck: if (inclusionPatterns != null) {
+            for (int i = 0, length = inclusionPatterns.length; i < length; i++) {
+                char[] pattern = inclusionPatterns[i];
+                char[] folderPattern = pattern;
+                if (isFolderPath) {
+                    int lastSlash = CharOperation.lastIndexOf('/', pattern);
+                    if (lastSlash != -1 && lastSlash != pattern.length - 1) { // trailing slash -> adds '**' for free (see http://ant.apache.org/manual/dirtasks.html)
+                        int star = CharOperation.indexOf('*', pattern, lastSlash);
+                        if ((star == -1 || star >= pattern.length - 1 || pattern[star + 1] != '*')) {
+                            folderPattern = CharOperation.subarray(pattern, 0, lastSlash);
+                        }
+                    }
+                }
+                if (CharOperation.pathMatch(folderPattern, path, true, '/')) {
+                    break inclusionCheck;
+                }
+            }
+            return true; // never included
+        }
+        if (isFolderPath) {
+            path = CharOperation.concat(path, new char[] { '*' }, '/');
+        }
+        if (exclusionPatterns != null) {
+            for (int i = 0, length = exclusionPatterns.length; i < length; i++) {
+                if (CharOperation.pathMatch(exclusionPatterns[i], path, true, '/')) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.command;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+/**
+ * Recursive delete of big directory trees. The tree is split by the calling thread
+ * into independent subtrees, which are then deleted in parallel by a small shared
+ * thread pool, with not more threads as given parallelism. Failures do not stop the operation: everything which can be deleted
+ * will be deleted, and all failed paths are collected.
+ * <p>
+ * Progress monitor is only updated from the calling thread.
+ * @author Andrey
+ */
+public final class ParallelDelete {
+
+    /** max. number of threads deleting at the same time */
+    public static final int THREADS = Math.max(2, Math.min(8, Runtime.getRuntime()
+            .availableProcessors()));
+
+    /** how many subtrees we want to have per thread to balance the work */
+    private static final int TASKS_PER_THREAD = 4;
+
+    /** how often the progress should be reported, ms */
+    private static final long REPORT_INTERVAL = 500;
+
+    private static ThreadPoolExecutor executor;
+
+    private final IProgressMonitor monitor;
+
+    private final int parallelism;
+
+    private final AtomicLong deleted;
+
+    private final List<File> failures;
+
+    private volatile boolean cancelled;
+
+    private long startTime;
+
+    public ParallelDelete(IProgressMonitor monitor) {
+        this(monitor, THREADS);
+    }
+
+    /**
+     * @param monitor may be null
+     * @param parallelism max. number of subtrees deleted at the same time, should not
+     * exceed the number of parallel I/O operations allowed on the destination device
+     */
+    public ParallelDelete(IProgressMonitor monitor, int parallelism) {
+        super();
+        this.monitor = monitor == null ? new NullProgressMonitor() : monitor;
+        this.parallelism = Math.max(1, Math.min(THREADS, parallelism));
+        deleted = new AtomicLong();
+        failures = Collections.synchronizedList(new ArrayList<File>());
+    }
+
+    /**
+     * Deletes given file or directory with all children.
+     * @param root
+     * @return true if root was successfully deleted or if it was not existing
+     */
+    public boolean delete(File root) {
+        if (root == null || !root.exists()) {
+            return true;
+        }
+        startTime = System.currentTimeMillis();
+        if (!root.isDirectory()) {
+            deleteSingle(root);
+            return failures.isEmpty();
+        }
+
+        // directories which are already "opened" by us, in the breadth-first order
+        List<File> splitDirs = new ArrayList<File>();
+        LinkedList<File> frontier = new LinkedList<File>();
+        frontier.add(root);
+        int wantedTasks = parallelism * TASKS_PER_THREAD;
+        while (!frontier.isEmpty() && frontier.size() < wantedTasks) {
+            File dir = frontier.removeFirst();
+            splitDirs.add(dir);
+            File[] children = dir.listFiles();
+            if (children == null) {
+                continue;
+            }
+            for (int i = 0; i < children.length; i++) {
+                if (children[i].isDirectory()) {
+                    frontier.add(children[i]);
+                } else {
+                    deleteSingle(children[i]);
+                }
+            }
+        }
+
+        if (!frontier.isEmpty()) {
+            runParallel(frontier);
+        }
+
+        // children first
+        for (int i = splitDirs.size() - 1; i >= 0 && !isCancelled(); i--) {
+            deleteSingle(splitDirs.get(i));
+        }
+        reportProgress();
+        return failures.isEmpty() && !root.exists();
+    }
+
+    private void runParallel(List<File> subtrees) {
+        // not more workers as allowed, each one takes the next subtree from the queue
+        final Queue<File> queue = new ConcurrentLinkedQueue<File>(subtrees);
+        int workers = Math.min(parallelism, subtrees.size());
+        List<Future<?>> futures = new ArrayList<Future<?>>(workers);
+        ThreadPoolExecutor pool = getExecutor();
+        for (int i = 0; i < workers; i++) {
+            futures.add(pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    File dir;
+                    while ((dir = queue.poll()) != null) {
+                        deleteTree(dir);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get(REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    reportProgress();
+                    if (monitor.isCanceled()) {
+                        cancelled = true;
+                    }
+                } catch (InterruptedException e) {
+                    cancelled = true;
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    // should not happen, deleteTree does not throw
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sequential delete of the directory tree, used by worker threads
+     */
+    void deleteTree(File dir) {
+        if (cancelled) {
+            return;
+        }
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (int i = 0; i < children.length; i++) {
+                if (children[i].isDirectory()) {
+                    deleteTree(children[i]);
+                } else {
+                    deleteSingle(children[i]);
+                }
+            }
+        }
+        if (!cancelled) {
+            deleteSingle(dir);
+        }
+    }
+
+    private void deleteSingle(File file) {
+        if (file.delete()) {
+            deleted.incrementAndGet();
+        } else if (file.exists()) {
+            failures.add(file);
+        }
+    }
+
+    private boolean isCancelled() {
+        if (!cancelled && monitor.isCanceled()) {
+            cancelled = true;
+        }
+        return cancelled;
+    }
+
+    private void reportProgress() {
+        long count = deleted.get();
+        long time = Math.max(1, System.currentTimeMillis() - startTime);
+        monitor.subTask("deleted " + count + " files (" + (count * 1000 / time)
+                + " files/s)");
+    }
+
+    /**
+     * @return number of successfully deleted files and directories
+     */
+    public long getDeletedCount() {
+        return deleted.get();
+    }
+
+    /**
+     * @return files and directories which could not be deleted, never null
+     */
+    public List<File> getFailures() {
+        synchronized (failures) {
+            return new ArrayList<File>(failures);
+        }
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "FileSync delete "
+                                    + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            // no need to keep idle threads between builds
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+}
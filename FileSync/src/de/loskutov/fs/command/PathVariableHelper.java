@@ -8,13 +8,19 @@
  *******************************************************************************/
 package de.loskutov.fs.command;
 
+import java.io.File;
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.eclipse.core.resources.IPathVariableManager;
-import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.variables.IStringVariableManager;
 import org.eclipse.core.variables.VariablesPlugin;
 
@@ -26,6 +32,10 @@ import de.loskutov.fs.FileSyncPlugin;
  * of resolved variables for this path and their substitutes. Using same helper for
  * different paths can lead to unexpected issues if at least one of the paths contains a
  * variable part.
+ * <p>
+ * Resolved paths are cached for all helpers, until {@link #clearCache()} is called on
+ * variable or path variable changes. Paths with dynamic variables (except environment
+ * variables) are resolved each time.
  * @author Andrey
  */
 public class PathVariableHelper {
@@ -38,6 +48,36 @@ public class PathVariableHelper {
     /** some contributed variable */
     private Variable anyVariable;
 
+    /** used instead of the workspace location if the platform is not running */
+    private static IPath standaloneWorkspaceLocation;
+
+    private static final String ENV_VAR = "env_var";
+
+    private static final String ENV_VAR_PREFIX = "${" + ENV_VAR + ":";
+
+    /** resolved paths, key is the path and the project location */
+    private static final ConcurrentMap<String, Resolution> CACHE =
+        new ConcurrentHashMap<String, Resolution>();
+
+    /** incremented on each cache clear, to drop results of concurrent resolutions */
+    private static final AtomicInteger GENERATION = new AtomicInteger();
+
+    /**
+     * Resolved path together with the variables needed to un-resolve it again.
+     * Not modified after it is cached.
+     */
+    static final class Resolution {
+        final int generation;
+        IPath path;
+        String pathVariableName;
+        IPath pathVariableValue;
+        Variable anyVariable;
+
+        Resolution(int generation) {
+            this.generation = generation;
+        }
+    }
+
     static class Variable {
         final String variableValue;
         final String variableName;
@@ -121,28 +161,105 @@ public class PathVariableHelper {
         if(path == null || path.length() == 0){
             return null;
         }
+        String key = projectPath == null ? path : path + '\n'
+                + projectPath.toPortableString();
+        int generation = GENERATION.get();
+        Resolution resolution = CACHE.get(key);
+        if (resolution == null || resolution.generation != generation) {
+            resolution = new Resolution(generation);
+            resolution.path = resolve(path, projectPath, resolution);
+            if (isCacheable(path)) {
+                CACHE.put(key, resolution);
+            }
+        }
+        if (resolution.anyVariable != null) {
+            anyVariable = resolution.anyVariable;
+        }
+        if (resolution.pathVariableName != null) {
+            pathVariableName = resolution.pathVariableName;
+            pathVariableValue = resolution.pathVariableValue;
+        }
+        return resolution.path;
+    }
+
+    /**
+     * Resolves the raw location of a linked resource, which starts with a path variable.
+     * The value of the path variable is cached, so that it is resolved only once for
+     * all resources linked with it.
+     * @param rawLocation raw location of a resource
+     * @return resolved absolute location, given location if it is already absolute, or
+     * null if the path variable is not defined or does not point to the local file
+     * system
+     */
+    public static IPath resolveLocation(IPath rawLocation) {
+        if (rawLocation.isAbsolute()) {
+            return rawLocation;
+        }
+        if (rawLocation.segmentCount() == 0 || !Platform.isRunning()) {
+            return null;
+        }
+        String name = rawLocation.segment(0);
+        // mapping paths are never empty, so the keys don't clash
+        String key = "\n" + name;
+        int generation = GENERATION.get();
+        Resolution resolution = CACHE.get(key);
+        if (resolution == null || resolution.generation != generation) {
+            resolution = new Resolution(generation);
+            IPathVariableManager pvm = ResourcesPlugin.getWorkspace()
+                    .getPathVariableManager();
+            URI value = pvm.getURIValue(name);
+            if (value != null) {
+                value = pvm.resolveURI(value);
+            }
+            if (value != null && value.isAbsolute() && "file".equals(value.getScheme())) {
+                resolution.path = new Path(new File(value).getAbsolutePath());
+            }
+            CACHE.put(key, resolution);
+        }
+        if (resolution.path == null) {
+            return null;
+        }
+        return resolution.path.append(rawLocation.removeFirstSegments(1));
+    }
+
+    /**
+     * Forgets all resolved paths. Must be called if variables or path variables are
+     * changed.
+     */
+    public static void clearCache() {
+        GENERATION.incrementAndGet();
+        CACHE.clear();
+    }
+
+    /**
+     * @param path
+     * @param projectPath
+     * @param resolution receives the variables found in the path
+     * @return resolved path, or null
+     */
+    private static IPath resolve(String path, IPath projectPath, Resolution resolution) {
         // resolve //server/share/${env_var:CLIENT}/data to //server/share/andrei/data
         // or c:/${env_var:CLIENT}/data/${env_var:TODAY} to c:/andrei/data/20090131
-        IStringVariableManager manager = VariablesPlugin.getDefault().getStringVariableManager();
-        try {
-            String substitution = manager.performStringSubstitution(path);
-            if(!path.equals(substitution)){
-                anyVariable = new Variable(path, substitution);
-                path = substitution;
-            }
-        } catch (CoreException e) {
-            // ignore
+        String substitution = performStringSubstitution(path);
+        if(!path.equals(substitution)){
+            resolution.anyVariable = new Variable(path, substitution);
+            path = substitution;
         }
 
         IPath ipath;
-        IWorkspace workspace = ResourcesPlugin.getWorkspace();
         if(FS.isWin32() && path.indexOf("/") >= 0){
             path = path.replace('/', '\\');
         }
 
         if (path.startsWith(FileMapping.MAP_WORKSPACE_RELATIVE)) {
+            IPath workspaceLocation = getWorkspaceLocation();
+            if(workspaceLocation == null){
+                FileSyncPlugin.log("Cannot compute workspace relative path for: " + path,
+                        null, IStatus.ERROR);
+                return null;
+            }
             // make a real path relatetd to workspace
-            ipath = workspace.getRoot().getLocation().makeAbsolute().append(path.substring(1));
+            ipath = workspaceLocation.append(path.substring(1));
             return ipath;
         }
         if (path.startsWith(FileMapping.MAP_PROJECT_RELATIVE)) {
@@ -157,14 +274,16 @@ public class PathVariableHelper {
             return ipath;
         }
 
-        IPathVariableManager pvm = workspace.getPathVariableManager();
         ipath = new Path(path);
-        IPath path2 = pvm.resolvePath(ipath);
+        IPath path2 = resolveLocation(ipath);
+        if (path2 == null) {
+            path2 = ipath;
+        }
         if (!ipath.equals(path2)) {
             // here we could remember the path and variable
             // to be able later to encode it back
-            pathVariableName = ipath.segment(0);
-            pathVariableValue = path2.removeLastSegments(ipath.segmentCount() - 1);
+            resolution.pathVariableName = ipath.segment(0);
+            resolution.pathVariableValue = path2.removeLastSegments(ipath.segmentCount() - 1);
             ipath = path2.makeAbsolute();
         } else {
             // This is the case where we could have an unresolved path variable.
@@ -206,13 +325,12 @@ public class PathVariableHelper {
             return null;
         }
         // TODO un-resolve project
-        IPath workspaceLocation = ResourcesPlugin.getWorkspace().getRoot().getLocation()
-                .makeAbsolute();
+        IPath workspaceLocation = getWorkspaceLocation();
         String pathStr;
         if (projectPath != null && projectPath.isPrefixOf(path)) {
             pathStr = FileMapping.MAP_PROJECT_RELATIVE
                     + removeFirstSegments(path, projectPath.segmentCount());
-        } else if (workspaceLocation.isPrefixOf(path)) {
+        } else if (workspaceLocation != null && workspaceLocation.isPrefixOf(path)) {
             pathStr = FileMapping.MAP_WORKSPACE_RELATIVE
                     + removeFirstSegments(path, workspaceLocation.segmentCount());
         } else if (pathVariableValue != null && pathVariableValue.isPrefixOf(path)) {
@@ -227,6 +345,94 @@ public class PathVariableHelper {
         return pathStr;
     }
 
+    /**
+     * @param path
+     * @return false if the path contains dynamic variables, which could change without
+     * notification (environment variables are not changed while running)
+     */
+    private static boolean isCacheable(String path) {
+        if (!Platform.isRunning() || path.indexOf("${") < 0) {
+            // outside of Eclipse only environment variables are supported
+            return true;
+        }
+        IStringVariableManager manager = VariablesPlugin.getDefault()
+                .getStringVariableManager();
+        int start;
+        int from = 0;
+        while ((start = path.indexOf("${", from)) >= 0) {
+            int stop = path.indexOf('}', start);
+            if (stop < 0) {
+                break;
+            }
+            String name = path.substring(start + 2, stop);
+            int colon = name.indexOf(':');
+            if (colon >= 0) {
+                name = name.substring(0, colon);
+            }
+            if (!ENV_VAR.equals(name) && manager.getValueVariable(name) == null) {
+                return false;
+            }
+            from = stop;
+        }
+        return true;
+    }
+
+    /**
+     * Outside of Eclipse only "${env_var:NAME}" variables are supported.
+     * @param path
+     * @return path with all known variables substituted
+     */
+    private static String performStringSubstitution(String path) {
+        if (Platform.isRunning()) {
+            IStringVariableManager manager = VariablesPlugin.getDefault()
+                    .getStringVariableManager();
+            try {
+                return manager.performStringSubstitution(path);
+            } catch (CoreException e) {
+                // ignore
+                return path;
+            }
+        }
+        int start;
+        int from = 0;
+        while ((start = path.indexOf(ENV_VAR_PREFIX, from)) >= 0) {
+            int stop = path.indexOf('}', start);
+            if (stop < 0) {
+                break;
+            }
+            String value = System.getenv(path.substring(start + ENV_VAR_PREFIX.length(),
+                    stop));
+            if (value == null) {
+                from = stop;
+                continue;
+            }
+            path = path.substring(0, start) + value + path.substring(stop + 1);
+            from = start + value.length();
+        }
+        return path;
+    }
+
+    /**
+     * @return workspace location, or the location set by
+     * {@link #setStandaloneWorkspaceLocation(IPath)} if the platform is not running
+     * (may be null then)
+     */
+    private static IPath getWorkspaceLocation() {
+        if (!Platform.isRunning()) {
+            return standaloneWorkspaceLocation;
+        }
+        return ResourcesPlugin.getWorkspace().getRoot().getLocation().makeAbsolute();
+    }
+
+    /**
+     * To resolve workspace relative destinations if FileSync runs outside of Eclipse
+     * @param location workspace directory, may be null
+     */
+    public static void setStandaloneWorkspaceLocation(IPath location) {
+        standaloneWorkspaceLocation = location == null ? null : location.makeAbsolute();
+        clearCache();
+    }
+
     /**
      * Removes count segments *WITH* the device id. This is different to
      * implementation from Path class.
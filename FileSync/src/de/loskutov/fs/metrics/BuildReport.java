@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IConfigurationElement;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
+
+import de.loskutov.fs.FileSyncPlugin;
+import de.loskutov.fs.preferences.FileSyncConstants;
+
+/**
+ * Timing summary of a single FileSync build: phase breakdown, counters and the
+ * slowest files. Each build has its own report, which is not thread safe.
+ * <p>
+ * Reports are created only if enabled by the {@link FileSyncConstants#KEY_BUILD_REPORT}
+ * preference or by the "de.loskutov.FileSync/debug/buildReport" trace option. They
+ * are published to the log, or to the {@link Listener}s contributed to the
+ * "de.loskutov.FileSync.buildReportListeners" extension point (the FileSync console
+ * of the UI plugin). Listeners are created with the first report published to them,
+ * so that the contributing plugins are not activated if reports are disabled.
+ * @author Andrey
+ */
+public class BuildReport {
+
+    private static final String TRACE_OPTION = FileSyncPlugin.PLUGIN_ID
+            + "/debug/buildReport";
+
+    private static final boolean TRACE = Platform.isRunning()
+            && "true".equalsIgnoreCase(Platform.getDebugOption(TRACE_OPTION));
+
+    private static final String LISTENERS_POINT = FileSyncPlugin.PLUGIN_ID
+            + ".buildReportListeners";
+
+    /** contributed listeners, null until the first report is published to them */
+    private static List<Listener> listeners;
+
+    private static final Comparator<FileTime> FASTEST_FIRST = new Comparator<FileTime>() {
+        @Override
+        public int compare(FileTime f1, FileTime f2) {
+            return f1.nanos < f2.nanos ? -1 : (f1.nanos == f2.nanos ? 0 : 1);
+        }
+    };
+
+    private final String name;
+
+    private final String destination;
+
+    private final int topCount;
+
+    private final long start;
+
+    private long stop;
+
+    private long traversalNanos;
+
+    private long copyNanos;
+
+    private long substituteNanos;
+
+    private long deleteNanos;
+
+    private long refreshNanos;
+
+    private int checked;
+
+    private int copied;
+
+    private int deleted;
+
+    private long bytes;
+
+    /** the N slowest files, fastest of them at the head */
+    private final PriorityQueue<FileTime> slowest;
+
+    /**
+     * Receives finished build reports
+     */
+    public interface Listener {
+        /**
+         * @param report finished build report
+         */
+        void reportFinished(BuildReport report);
+    }
+
+    private static final class FileTime {
+        final String path;
+        final long nanos;
+
+        FileTime(String path, long nanos) {
+            this.path = path;
+            this.nanos = nanos;
+        }
+    }
+
+    private BuildReport(String name, String destination, int topCount) {
+        super();
+        this.name = name;
+        this.destination = destination;
+        this.topCount = topCount;
+        slowest = new PriorityQueue<FileTime>(topCount + 1, FASTEST_FIRST);
+        start = System.nanoTime();
+    }
+
+    /**
+     * @param buildName build kind and project name
+     * @return new report, or null if reports are disabled
+     */
+    public static BuildReport create(String buildName) {
+        String destination = FileSyncConstants.BUILD_REPORT_OFF;
+        int topCount = FileSyncConstants.DEFAULT_BUILD_REPORT_TOP_FILES;
+        if (Platform.isRunning()) {
+            destination = Platform.getPreferencesService().getString(
+                    FileSyncPlugin.PLUGIN_ID, FileSyncConstants.KEY_BUILD_REPORT,
+                    FileSyncConstants.BUILD_REPORT_OFF, null);
+            topCount = Platform.getPreferencesService().getInt(FileSyncPlugin.PLUGIN_ID,
+                    FileSyncConstants.KEY_BUILD_REPORT_TOP_FILES,
+                    FileSyncConstants.DEFAULT_BUILD_REPORT_TOP_FILES, null);
+        }
+        if (!TRACE && FileSyncConstants.BUILD_REPORT_OFF.equals(destination)) {
+            return null;
+        }
+        return new BuildReport(buildName, destination, Math.max(0, topCount));
+    }
+
+    private static synchronized List<Listener> getListeners() {
+        if (listeners != null) {
+            return listeners;
+        }
+        listeners = new ArrayList<Listener>();
+        if (!Platform.isRunning()) {
+            return listeners;
+        }
+        IConfigurationElement[] elements = Platform.getExtensionRegistry()
+                .getConfigurationElementsFor(LISTENERS_POINT);
+        for (int i = 0; i < elements.length; i++) {
+            try {
+                Object listener = elements[i].createExecutableExtension("class");
+                if (listener instanceof Listener) {
+                    listeners.add((Listener) listener);
+                } else {
+                    FileSyncPlugin.log("Build report listener contributed by '"
+                            + elements[i].getContributor().getName()
+                            + "' does not implement BuildReport.Listener", null,
+                            IStatus.WARNING);
+                }
+            } catch (CoreException e) {
+                FileSyncPlugin.log("Failed to create build report listener", e,
+                        IStatus.WARNING);
+            }
+        }
+        return listeners;
+    }
+
+    public void addTraversal(long nanos) {
+        traversalNanos += nanos;
+    }
+
+    /**
+     * @param path copied file
+     * @param size written bytes
+     * @param nanos copy duration
+     * @param substituted true if variables were substituted
+     */
+    public void addCopy(String path, long size, long nanos, boolean substituted) {
+        copied++;
+        bytes += size;
+        if (substituted) {
+            substituteNanos += nanos;
+        } else {
+            copyNanos += nanos;
+        }
+        addFile(path, nanos);
+    }
+
+    public void addChecked() {
+        checked++;
+    }
+
+    public void addDelete(String path, long nanos) {
+        deleted++;
+        deleteNanos += nanos;
+        addFile(path, nanos);
+    }
+
+    public void addRefresh(long nanos) {
+        refreshNanos += nanos;
+    }
+
+    private void addFile(String path, long nanos) {
+        if (topCount == 0) {
+            return;
+        }
+        if (slowest.size() == topCount) {
+            if (slowest.peek().nanos >= nanos) {
+                return;
+            }
+            slowest.poll();
+        }
+        slowest.add(new FileTime(path, nanos));
+    }
+
+    /**
+     * Finishes the report and publishes it to the listeners or to the log, according
+     * to the preferences.
+     */
+    public void finish() {
+        stop = System.nanoTime();
+        if (TRACE) {
+            System.out.println(this);
+        }
+        List<Listener> list = null;
+        if (FileSyncConstants.BUILD_REPORT_CONSOLE.equals(destination)) {
+            list = getListeners();
+        }
+        if (list != null && !list.isEmpty()) {
+            for (Listener listener : list) {
+                listener.reportFinished(this);
+            }
+        } else if (!FileSyncConstants.BUILD_REPORT_OFF.equals(destination)) {
+            FileSyncPlugin.log(toString(), null, IStatus.INFO);
+        }
+    }
+
+    private static long ms(long nanos) {
+        return nanos / 1000000;
+    }
+
+    @Override
+    public String toString() {
+        long total = stop - start;
+        StringBuffer sb = new StringBuffer("FileSync ").append(name).append(": ");
+        sb.append("traversal ").append(ms(traversalNanos)).append(" ms");
+        sb.append(", checked ").append(checked);
+        sb.append(", copied ").append(copied);
+        sb.append(", deleted ").append(deleted);
+        sb.append(", ").append(bytes).append(" bytes");
+        sb.append(", copy ").append(ms(copyNanos)).append(" ms");
+        sb.append(", substitution ").append(ms(substituteNanos)).append(" ms");
+        sb.append(", delete ").append(ms(deleteNanos)).append(" ms");
+        sb.append(", refresh ").append(ms(refreshNanos)).append(" ms");
+        sb.append(", total ").append(ms(total)).append(" ms");
+        long ioNanos = copyNanos + substituteNanos;
+        if (ioNanos > 0) {
+            long kbPerSecond = bytes * 1000000000L / 1024 / ioNanos;
+            sb.append(", ").append(kbPerSecond / 1024).append('.')
+            .append(kbPerSecond % 1024 * 10 / 1024).append(" MB/s");
+        }
+        if (!slowest.isEmpty()) {
+            List<FileTime> files = new ArrayList<FileTime>(slowest);
+            Collections.sort(files, Collections.reverseOrder(FASTEST_FIRST));
+            sb.append("; slowest:");
+            for (FileTime file : files) {
+                sb.append(' ').append(file.path).append(" (").append(ms(file.nanos))
+                .append(" ms)");
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a single file mapping
+ * @author Andrey
+ */
+public class MappingMetrics {
+
+    final AtomicLong examined = new AtomicLong();
+
+    final AtomicLong skipped = new AtomicLong();
+
+    final AtomicLong copied = new AtomicLong();
+
+    final AtomicLong substituted = new AtomicLong();
+
+    final AtomicLong deleted = new AtomicLong();
+
+    final AtomicLong bytesWritten = new AtomicLong();
+
+    MappingMetrics() {
+        super();
+    }
+
+    /** file was checked against the destination */
+    public void examined() {
+        examined.incrementAndGet();
+    }
+
+    /** destination was up to date */
+    public void skipped() {
+        skipped.incrementAndGet();
+    }
+
+    /** file was copied as is */
+    public void copied(long bytes) {
+        copied.incrementAndGet();
+        bytesWritten.addAndGet(bytes);
+    }
+
+    /** file was copied with variables substitution */
+    public void substituted(long bytes) {
+        substituted.incrementAndGet();
+        bytesWritten.addAndGet(bytes);
+    }
+
+    /** destination was deleted */
+    public void deleted() {
+        deleted.incrementAndGet();
+    }
+
+    public long getExamined() {
+        return examined.get();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public long getCopied() {
+        return copied.get();
+    }
+
+    public long getSubstituted() {
+        return substituted.get();
+    }
+
+    public long getDeleted() {
+        return deleted.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+}
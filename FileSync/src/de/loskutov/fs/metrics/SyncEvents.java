@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.metrics;
+
+import org.eclipse.core.runtime.PerformanceStats;
+import org.eclipse.core.runtime.Platform;
+
+import de.loskutov.fs.FileSyncPlugin;
+
+/**
+ * Performance events of the build and copy phases, reported through Eclipse
+ * {@link PerformanceStats}. Events are enabled in the ".options" file (together with
+ * "org.eclipse.core.runtime/perf=true"), the option value is the threshold in
+ * milliseconds: longer runs are reported as performance failures to the log.
+ * <p>
+ * Enablement cannot change during the platform life, so it is checked only once and
+ * disabled events cost one static field read.
+ * @author Andrey
+ */
+public final class SyncEvents {
+
+    public static final String BUILD = FileSyncPlugin.PLUGIN_ID + "/perf/build";
+
+    public static final String TRAVERSAL = FileSyncPlugin.PLUGIN_ID + "/perf/traversal";
+
+    public static final String PROPS = FileSyncPlugin.PLUGIN_ID + "/perf/props";
+
+    public static final String COPY = FileSyncPlugin.PLUGIN_ID + "/perf/copy";
+
+    public static final String DELETE = FileSyncPlugin.PLUGIN_ID + "/perf/delete";
+
+    public static final String REFRESH = FileSyncPlugin.PLUGIN_ID + "/perf/refresh";
+
+    public static final boolean BUILD_ENABLED = isEnabled(BUILD);
+
+    public static final boolean TRAVERSAL_ENABLED = isEnabled(TRAVERSAL);
+
+    public static final boolean PROPS_ENABLED = isEnabled(PROPS);
+
+    public static final boolean COPY_ENABLED = isEnabled(COPY);
+
+    public static final boolean DELETE_ENABLED = isEnabled(DELETE);
+
+    public static final boolean REFRESH_ENABLED = isEnabled(REFRESH);
+
+    private SyncEvents() {
+        // don't instantiate me
+    }
+
+    private static boolean isEnabled(String event) {
+        // without platform there are no debug options
+        return Platform.isRunning() && PerformanceStats.ENABLED
+                && PerformanceStats.isEnabled(event);
+    }
+
+    /**
+     * Should be called only if the event is enabled.
+     * @param event one of the event constants
+     * @param blame object responsible for the event, used to aggregate the events
+     * @param startNanos event start, as returned by {@link System#nanoTime()}
+     * @param context event details
+     */
+    public static void record(String event, Object blame, long startNanos, String context) {
+        long elapsed = (System.nanoTime() - startNanos) / 1000000;
+        PerformanceStats.getStats(event, blame).addRun(elapsed, context);
+    }
+}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+
+import de.loskutov.fs.FileSyncPlugin;
+import de.loskutov.fs.command.FileMapping;
+
+/**
+ * Registry of sync counters and latency histograms, exposed over JMX. All updates
+ * are lock free, so the registry is always on.
+ * @author Andrey
+ */
+public final class SyncMetrics implements SyncMetricsMXBean {
+
+    public static final String OBJECT_NAME = "de.loskutov.FileSync:type=SyncMetrics";
+
+    /** check if destination is up to date */
+    public static final String OP_STAT = "stat";
+
+    /** plain file copy */
+    public static final String OP_COPY = "copy";
+
+    /** copy with variables substitution */
+    public static final String OP_SUBSTITUTE = "substitute";
+
+    /** refresh of workspace destinations */
+    public static final String OP_REFRESH = "refresh";
+
+    private static final SyncMetrics INSTANCE = new SyncMetrics();
+
+    private static final String KEY_SEPARATOR = ": ";
+
+    private final ConcurrentMap<String, MappingMetrics> mappings;
+
+    private final Map<String, Histogram> latencies;
+
+    private final AtomicLong bytesWritten;
+
+    private ObjectName registeredName;
+
+    private SyncMetrics() {
+        super();
+        mappings = new ConcurrentHashMap<String, MappingMetrics>();
+        Map<String, Histogram> map = new LinkedHashMap<String, Histogram>();
+        map.put(OP_STAT, new Histogram());
+        map.put(OP_COPY, new Histogram());
+        map.put(OP_SUBSTITUTE, new Histogram());
+        map.put(OP_REFRESH, new Histogram());
+        latencies = Collections.unmodifiableMap(map);
+        bytesWritten = new AtomicLong();
+    }
+
+    public static SyncMetrics getDefault() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param projectName
+     * @param mapping
+     * @return counters for given mapping, never null
+     */
+    public MappingMetrics getMapping(String projectName, FileMapping mapping) {
+        String key = getKey(projectName, mapping);
+        MappingMetrics metrics = mappings.get(key);
+        if (metrics == null) {
+            metrics = new MappingMetrics();
+            MappingMetrics old = mappings.putIfAbsent(key, metrics);
+            if (old != null) {
+                metrics = old;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Removes counters of the project mappings which do not exist anymore
+     * @param projectName
+     * @param current current project mappings, empty if the project is gone
+     */
+    public void retainMappings(String projectName, FileMapping[] current) {
+        Set<String> keys = new HashSet<String>();
+        for (int i = 0; i < current.length; i++) {
+            keys.add(getKey(projectName, current[i]));
+        }
+        String prefix = projectName + KEY_SEPARATOR;
+        Iterator<String> it = mappings.keySet().iterator();
+        while (it.hasNext()) {
+            String key = it.next();
+            if (key.startsWith(prefix) && !keys.contains(key)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Source and resolved destination are unique within the project, see
+     * ProjectProperties.buildPathMap()
+     */
+    private static String getKey(String projectName, FileMapping mapping) {
+        IPath destination = mapping.getDestinationPath();
+        return projectName + KEY_SEPARATOR + mapping.getSourcePath() + " -> "
+                + (destination == null ? "[default]" : destination.toString());
+    }
+
+    /**
+     * @param operation one of OP_* constants
+     * @param startNanos operation start, as returned by {@link System#nanoTime()}
+     */
+    public void recordLatency(String operation, long startNanos) {
+        latencies.get(operation).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @param bytes written to the destination by a single copy operation
+     */
+    public void bytesWritten(long bytes) {
+        bytesWritten.addAndGet(bytes);
+    }
+
+    @Override
+    public Map<String, MappingMetrics> getMappings() {
+        return new TreeMap<String, MappingMetrics>(mappings);
+    }
+
+    @Override
+    public Map<String, Histogram> getLatencies() {
+        return latencies;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    @Override
+    public void reset() {
+        // counters are reset in place, because they are cached by running builds
+        for (MappingMetrics metrics : mappings.values()) {
+            metrics.examined.set(0);
+            metrics.skipped.set(0);
+            metrics.copied.set(0);
+            metrics.substituted.set(0);
+            metrics.deleted.set(0);
+            metrics.bytesWritten.set(0);
+        }
+        for (Histogram histogram : latencies.values()) {
+            histogram.reset();
+        }
+        bytesWritten.set(0);
+    }
+
+    /**
+     * Registers the registry on the platform MBean server
+     */
+    public synchronized void register() {
+        if (registeredName != null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+                registeredName = name;
+            }
+        } catch (JMException e) {
+            FileSyncPlugin.log("Failed to register FileSync metrics MBean", e,
+                    IStatus.WARNING);
+        }
+    }
+
+    public synchronized void unregister() {
+        if (registeredName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (JMException e) {
+            FileSyncPlugin.log("Failed to unregister FileSync metrics MBean", e,
+                    IStatus.WARNING);
+        }
+        registeredName = null;
+    }
+}
@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link SyncMetrics}, registered as
+ * {@value SyncMetrics#OBJECT_NAME}
+ * @author Andrey
+ */
+public interface SyncMetricsMXBean {
+
+    /**
+     * @return key is "project: source -> destination", value are the mapping counters
+     */
+    Map<String, MappingMetrics> getMappings();
+
+    /**
+     * @return key is the operation name (stat, copy, substitute, refresh), value is
+     * the latency histogram
+     */
+    Map<String, Histogram> getLatencies();
+
+    /**
+     * @return total number of bytes written by FileSync copy operations
+     */
+    long getBytesWritten();
+
+    /**
+     * Clears all counters
+     */
+    void reset();
+}
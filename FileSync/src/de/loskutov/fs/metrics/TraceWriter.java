@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.metrics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
+
+import de.loskutov.fs.FileSyncPlugin;
+
+/**
+ * Writes a timeline of the sync activity in the Chrome trace event format, which can
+ * be opened with "chrome://tracing" or Perfetto UI. Each span is a "complete" event
+ * with the thread id, so that parallel work and long tails are visible.
+ * <p>
+ * Enabled by the "de.loskutov.FileSync/debug/traceFile" option in ".options" or by the
+ * "fs.tracefile" system property, the value is the output file. The JSON array is
+ * closed on plugin stop, but the viewers accept not closed arrays too (for example
+ * if Eclipse was killed).
+ * @author Andrey
+ */
+public final class TraceWriter {
+
+    public static final String CAT_BUILD = "build";
+
+    public static final String CAT_VISIT = "visit";
+
+    public static final String CAT_COPY = "copy";
+
+    public static final String CAT_SUBSTITUTE = "substitute";
+
+    public static final String CAT_DELETE = "delete";
+
+    public static final String CAT_REFRESH = "refresh";
+
+    private static final String TRACE_OPTION = FileSyncPlugin.PLUGIN_ID + "/debug/traceFile";
+
+    private static final TraceWriter INSTANCE = createInstance();
+
+    /** true if trace is written, checked before creating any event data */
+    public static final boolean ENABLED = INSTANCE != null;
+
+    private final long startNanos;
+
+    private final Set<Long> knownThreads;
+
+    private Writer writer;
+
+    private boolean firstEvent;
+
+    private TraceWriter(Writer writer) {
+        super();
+        this.writer = writer;
+        startNanos = System.nanoTime();
+        knownThreads = new HashSet<Long>();
+        firstEvent = true;
+    }
+
+    private static TraceWriter createInstance() {
+        String fileName = System.getProperty("fs.tracefile");
+        if (fileName == null) {
+            fileName = getDebugOption();
+        }
+        if (fileName == null || fileName.trim().length() == 0) {
+            return null;
+        }
+        File file = new File(fileName.trim());
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+                    file), "UTF-8"));
+            out.write('[');
+            return new TraceWriter(out);
+        } catch (IOException e) {
+            FileSyncPlugin.log("Failed to create trace file: " + file, e, IStatus.WARNING);
+            return null;
+        }
+    }
+
+    /**
+     * @return trace option value, or null if the platform is not running or even not
+     * on the class path (standalone sync)
+     */
+    private static String getDebugOption() {
+        try {
+            return Platform.isRunning() ? Platform.getDebugOption(TRACE_OPTION) : null;
+        } catch (NoClassDefFoundError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes a span. Should be called only if {@link #ENABLED}.
+     * @param category one of CAT_* constants
+     * @param name span name (for example file path)
+     * @param start span start, as returned by {@link System#nanoTime()}
+     */
+    public static void span(String category, String name, long start) {
+        INSTANCE.write(category, name, start, System.nanoTime());
+    }
+
+    /**
+     * Closes the trace file, no spans are written anymore.
+     */
+    public static void close() {
+        if (INSTANCE != null) {
+            INSTANCE.closeWriter();
+        }
+    }
+
+    private synchronized void write(String category, String name, long start, long stop) {
+        if (writer == null) {
+            return;
+        }
+        Thread thread = Thread.currentThread();
+        long tid = thread.getId();
+        StringBuffer sb = new StringBuffer(200);
+        if (knownThreads.add(Long.valueOf(tid))) {
+            appendSeparator(sb);
+            sb.append("{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":1,\"tid\":").append(tid)
+            .append(",\"args\":{\"name\":");
+            appendString(sb, thread.getName());
+            sb.append("}}");
+        }
+        appendSeparator(sb);
+        sb.append("{\"ph\":\"X\",\"cat\":\"").append(category).append("\",\"name\":");
+        appendString(sb, name);
+        sb.append(",\"ts\":").append((start - startNanos) / 1000);
+        sb.append(",\"dur\":").append((stop - start) / 1000);
+        sb.append(",\"pid\":1,\"tid\":").append(tid).append('}');
+        try {
+            writer.write(sb.toString());
+            if (CAT_BUILD.equals(category)) {
+                // make the trace usable while Eclipse is running
+                writer.flush();
+            }
+        } catch (IOException e) {
+            FileSyncPlugin.log("Failed to write trace file, tracing stopped", e,
+                    IStatus.WARNING);
+            closeWriter();
+        }
+    }
+
+    private void appendSeparator(StringBuffer sb) {
+        if (firstEvent) {
+            firstEvent = false;
+            sb.append('\n');
+        } else {
+            sb.append(",\n");
+        }
+    }
+
+    private static void appendString(StringBuffer sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                String hex = Integer.toHexString(c);
+                sb.append("\\u");
+                for (int j = hex.length(); j < 4; j++) {
+                    sb.append('0');
+                }
+                sb.append(hex);
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    private synchronized void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write("\n]\n");
+            writer.close();
+        } catch (IOException e) {
+            FileSyncPlugin.log("Failed to close trace file", e, IStatus.WARNING);
+        }
+        writer = null;
+    }
+}
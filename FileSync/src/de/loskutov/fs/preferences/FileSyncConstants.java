@@ -17,4 +17,32 @@ package de.loskutov.fs.preferences;
 public interface FileSyncConstants {
     /** used for tests to not to open dialogs */
     String KEY_ASK_USER = "askUser";
+
+    /** max number of concurrent file operations of all FileSync builds together */
+    String KEY_MAX_PARALLEL_IO = "maxParallelIO";
+
+    int DEFAULT_MAX_PARALLEL_IO = 4;
+
+    /** max number of concurrent file operations on the same destination device */
+    String KEY_MAX_PARALLEL_IO_PER_DEVICE = "maxParallelIOPerDevice";
+
+    int DEFAULT_MAX_PARALLEL_IO_PER_DEVICE = 2;
+
+    /**
+     * where to publish per-build timing reports: one of {@link #BUILD_REPORT_OFF},
+     * {@link #BUILD_REPORT_LOG} or {@link #BUILD_REPORT_CONSOLE}
+     */
+    String KEY_BUILD_REPORT = "buildReport";
+
+    String BUILD_REPORT_OFF = "off";
+
+    String BUILD_REPORT_LOG = "log";
+
+    /** FileSync console, if the UI is available, log otherwise */
+    String BUILD_REPORT_CONSOLE = "console";
+
+    /** number of slowest files listed in the build report */
+    String KEY_BUILD_REPORT_TOP_FILES = "buildReportTopFiles";
+
+    int DEFAULT_BUILD_REPORT_TOP_FILES = 5;
 }
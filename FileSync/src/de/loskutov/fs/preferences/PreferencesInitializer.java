@@ -9,7 +9,8 @@
 package de.loskutov.fs.preferences;
 
 import org.eclipse.core.runtime.preferences.AbstractPreferenceInitializer;
-import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.core.runtime.preferences.DefaultScope;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 
 import de.loskutov.fs.FileSyncPlugin;
 
@@ -23,8 +24,16 @@ public class PreferencesInitializer extends AbstractPreferenceInitializer {
      */
     @Override
     public void initializeDefaultPreferences() {
-        IPreferenceStore store = FileSyncPlugin.getDefault().getPreferenceStore();
-        store.setDefault(FileSyncConstants.KEY_ASK_USER, true);
+        // no preference store here: the core bundle should not depend on JFace
+        IEclipsePreferences node = new DefaultScope().getNode(FileSyncPlugin.PLUGIN_ID);
+        node.putBoolean(FileSyncConstants.KEY_ASK_USER, true);
+        node.putInt(FileSyncConstants.KEY_MAX_PARALLEL_IO,
+                FileSyncConstants.DEFAULT_MAX_PARALLEL_IO);
+        node.putInt(FileSyncConstants.KEY_MAX_PARALLEL_IO_PER_DEVICE,
+                FileSyncConstants.DEFAULT_MAX_PARALLEL_IO_PER_DEVICE);
+        node.put(FileSyncConstants.KEY_BUILD_REPORT, FileSyncConstants.BUILD_REPORT_OFF);
+        node.putInt(FileSyncConstants.KEY_BUILD_REPORT_TOP_FILES,
+                FileSyncConstants.DEFAULT_BUILD_REPORT_TOP_FILES);
     }
 
 }
@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.properties;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+
+import de.loskutov.fs.FileSyncPlugin;
+import de.loskutov.fs.builder.FileSyncBuilder;
+import de.loskutov.fs.command.FileMapping;
+import de.loskutov.fs.command.Fnv1a;
+
+/**
+ * Binary cache of decoded mappings with compiled patterns, one file per project in
+ * the plugin state location. The cache is valid if the settings file has the same
+ * modification time and the mapping entries of the settings have the same hash as
+ * at the time the cache was written, so that mappings need not to be decoded again
+ * on startup.
+ * @author Andrey
+ */
+final class MappingCache {
+
+    private static final int MAGIC = 0x46534d43;
+
+    /** must be incremented on each change of the file format */
+    private static final int VERSION = 1;
+
+    private static final String CACHE_DIR = "mappings";
+
+    private MappingCache() {
+        super();
+    }
+
+    /**
+     * @param prefs
+     * @param keys all keys of the preferences
+     * @param projectPath project location
+     * @return hash of all mapping entries of the preferences, independent of the order
+     */
+    static long hash(IEclipsePreferences prefs, String[] keys, IPath projectPath) {
+        long hash = Fnv1a.hash(Fnv1a.OFFSET, String.valueOf(projectPath));
+        for (int i = 0; i < keys.length; i++) {
+            String key = keys[i];
+            if (key.startsWith(FileMapping.FULL_MAP_PREFIX)) {
+                long entry = Fnv1a.hash(Fnv1a.OFFSET, key);
+                hash += Fnv1a.hash(entry, String.valueOf(prefs.get(key, null)));
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @param project
+     * @param hash hash of the mapping entries, see {@link #hash(IEclipsePreferences,
+     * String[], IPath)}
+     * @return cached mappings, or null if the cache does not exist or is not valid
+     */
+    static FileMapping[] read(IProject project, long hash) {
+        File file = getCacheFile(project);
+        File settings = getSettingsFile(project);
+        if (file == null || settings == null || !file.isFile()) {
+            return null;
+        }
+        IPath projectPath = project.getLocation();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || in.readLong() != settings.lastModified()
+                    || in.readLong() != hash) {
+                return null;
+            }
+            int count = in.readInt();
+            FileMapping[] mappings = new FileMapping[count];
+            for (int i = 0; i < count; i++) {
+                IPath sourcePath = new Path(in.readUTF());
+                String destination = readString(in);
+                IPath[] inclusions = readPaths(in);
+                char[][] inclusionChars = readChars(in);
+                IPath[] exclusions = readPaths(in);
+                char[][] exclusionChars = readChars(in);
+                String variables = readString(in);
+                IPath variablesPath = variables == null ? null : new Path(variables);
+                mappings[i] = FileMapping.create(sourcePath, destination, inclusions,
+                        exclusions, variablesPath, inclusionChars, exclusionChars,
+                        projectPath);
+            }
+            return mappings;
+        } catch (IOException e) {
+            FileSyncPlugin.log("Mapping cache '" + file + "' is not readable and will be"
+                    + " ignored", e, IStatus.WARNING);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * @param project
+     * @param hash hash of the mapping entries, see {@link #hash(IEclipsePreferences,
+     * String[], IPath)}
+     * @param mappings decoded mappings
+     * @param prefs preferences the mappings are decoded from
+     * @param keys preference keys of the mappings, same order as the mappings
+     */
+    static void write(IProject project, long hash, FileMapping[] mappings,
+            IEclipsePreferences prefs, String[] keys) {
+        File file = getCacheFile(project);
+        File settings = getSettingsFile(project);
+        if (file == null || settings == null || !settings.isFile()) {
+            return;
+        }
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            return;
+        }
+        File tmpFile = null;
+        DataOutputStream out = null;
+        try {
+            tmpFile = File.createTempFile(file.getName(), ".tmp", dir);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+                    tmpFile)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(settings.lastModified());
+            out.writeLong(hash);
+            out.writeInt(mappings.length);
+            for (int i = 0; i < mappings.length; i++) {
+                FileMapping fm = mappings[i];
+                out.writeUTF(fm.getSourcePath().toPortableString());
+                String encoded = prefs.get(keys[i], null);
+                writeString(out, FileMapping.getDestinationToken(encoded));
+                IPath[] inclusions = fm.getInclusionPatterns();
+                writePaths(out, inclusions);
+                writeChars(out, inclusions.length == 0 ? null : fm
+                        .fullInclusionPatternChars());
+                IPath[] exclusions = fm.getExclusionPatterns();
+                writePaths(out, exclusions);
+                writeChars(out, exclusions.length == 0 ? null : fm
+                        .fullExclusionPatternChars());
+                IPath variablesPath = fm.getVariablesPath();
+                writeString(out, variablesPath == null ? null : variablesPath
+                        .toPortableString());
+            }
+            out.close();
+            out = null;
+            if (file.exists() && !file.delete()) {
+                return;
+            }
+            if (tmpFile.renameTo(file)) {
+                tmpFile = null;
+            }
+        } catch (IOException e) {
+            FileSyncPlugin.log("Failed to write mapping cache '" + file + "'", e,
+                    IStatus.WARNING);
+        } finally {
+            close(out);
+            if (tmpFile != null) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * @return cache file, or null if the plugin state location is not available
+     */
+    private static File getCacheFile(IProject project) {
+        FileSyncPlugin plugin = FileSyncPlugin.getDefault();
+        if (plugin == null) {
+            return null;
+        }
+        try {
+            return plugin.getStateLocation().append(CACHE_DIR).append(
+                    project.getName() + ".bin").toFile();
+        } catch (IllegalStateException e) {
+            // no instance location
+            return null;
+        }
+    }
+
+    private static File getSettingsFile(IProject project) {
+        IPath location = project.getLocation();
+        if (location == null) {
+            return null;
+        }
+        return location.append(FileSyncBuilder.SETTINGS_DIR).append(
+                FileSyncBuilder.SETTINGS_FILE).toFile();
+    }
+
+    private static void writeString(DataOutputStream out, String value)
+    throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writePaths(DataOutputStream out, IPath[] paths)
+    throws IOException {
+        out.writeInt(paths.length);
+        for (int i = 0; i < paths.length; i++) {
+            out.writeUTF(paths[i].toString());
+        }
+    }
+
+    private static IPath[] readPaths(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count == 0) {
+            return null;
+        }
+        IPath[] paths = new IPath[count];
+        for (int i = 0; i < count; i++) {
+            paths[i] = new Path(in.readUTF());
+        }
+        return paths;
+    }
+
+    private static void writeChars(DataOutputStream out, char[][] chars)
+    throws IOException {
+        out.writeInt(chars == null ? -1 : chars.length);
+        if (chars != null) {
+            for (int i = 0; i < chars.length; i++) {
+                out.writeUTF(new String(chars[i]));
+            }
+        }
+    }
+
+    private static char[][] readChars(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        char[][] chars = new char[count][];
+        for (int i = 0; i < count; i++) {
+            chars[i] = in.readUTF().toCharArray();
+        }
+        return chars;
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.properties;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+
+import de.loskutov.fs.command.FileMapping;
+import de.loskutov.fs.command.PathVariableHelper;
+
+/**
+ * Snapshot of the FileSync configuration of one project: mappings with compiled
+ * patterns and loaded variables, resolved default destination and the flags.
+ * <p>
+ * Snapshots are created by {@link ProjectProperties} each time the settings are read
+ * and published at once, so that a build sees either the old or the new
+ * configuration, but never a mix of both. The snapshot and its mappings must not be
+ * modified after creation.
+ * @author Andrey
+ */
+public final class MappingConfig {
+
+    private final FileMapping[] mappings;
+
+    private final IPath rootPath;
+
+    private final boolean cleanOnCleanBuild;
+
+    private final boolean useCurrentDate;
+
+    private final boolean includeTeamPrivate;
+
+    private final Long hashCode;
+
+    private final Set<IPath> variablesPaths;
+
+    /**
+     * @param mappings fully initialized mappings (with variables), not null
+     * @param prefs project preferences, may be null
+     * @param projectPath project location, may be null if project does not exist
+     */
+    MappingConfig(FileMapping[] mappings, IEclipsePreferences prefs, IPath projectPath) {
+        super();
+        this.mappings = mappings;
+        for (int i = 0; i < mappings.length; i++) {
+            // compile patterns now: the lazy caches must not be written concurrently
+            mappings[i].fullExclusionPatternChars();
+            mappings[i].fullInclusionPatternChars();
+        }
+        String root = get(prefs, ProjectProperties.KEY_DEFAULT_DESTINATION);
+        rootPath = projectPath == null ? null : new PathVariableHelper().resolveVariable(
+                root, projectPath);
+        cleanOnCleanBuild = prefs != null
+        && prefs.getBoolean(ProjectProperties.KEY_CLEAN_ON_CLEAN_BUILD, false);
+        useCurrentDate = prefs != null
+        && prefs.getBoolean(ProjectProperties.KEY_USE_CURRENT_DATE, false);
+        includeTeamPrivate = prefs != null
+        && prefs.getBoolean(ProjectProperties.KEY_INCLUDE_TEAM_PRIVATE, false);
+
+        long code = 31;
+        code += get(prefs, ProjectProperties.KEY_CLEAN_ON_CLEAN_BUILD).hashCode();
+        code += root.hashCode();
+        code += get(prefs, ProjectProperties.KEY_DEFAULT_VARIABLES).hashCode();
+        code += get(prefs, ProjectProperties.KEY_USE_CURRENT_DATE).hashCode();
+        code += get(prefs, ProjectProperties.KEY_INCLUDE_TEAM_PRIVATE).hashCode();
+        for (int i = 0; i < mappings.length; i++) {
+            code += mappings[i].getFingerprint();
+        }
+        hashCode = Long.valueOf(code);
+        variablesPaths = getVariablesPaths(mappings, get(prefs,
+                ProjectProperties.KEY_DEFAULT_VARIABLES));
+    }
+
+    private static Set<IPath> getVariablesPaths(FileMapping[] mappings, String defPath) {
+        Set<IPath> paths = new HashSet<IPath>();
+        for (int i = 0; i < mappings.length; i++) {
+            IPath variablesPath = mappings[i].getVariablesPath();
+            if (variablesPath != null) {
+                paths.add(variablesPath);
+                if (defPath.length() > 0) {
+                    // default variables are loaded with each variables file
+                    paths.add(new Path(defPath));
+                }
+            }
+        }
+        if (paths.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(paths);
+    }
+
+    private static String get(IEclipsePreferences prefs, String key) {
+        return prefs == null ? "" : prefs.get(key, "");
+    }
+
+    /**
+     * @return all mappings, never null. The array must not be modified
+     */
+    public FileMapping[] getMappings() {
+        return mappings;
+    }
+
+    /**
+     * @return resolved default destination, may be null or empty
+     */
+    public IPath getRootPath() {
+        return rootPath;
+    }
+
+    public boolean isCleanOnCleanBuild() {
+        return cleanOnCleanBuild;
+    }
+
+    public boolean isUseCurrentDate() {
+        return useCurrentDate;
+    }
+
+    public boolean isIncludeTeamPrivate() {
+        return includeTeamPrivate;
+    }
+
+    /**
+     * @return hash code of the settings, used to detect configuration changes
+     */
+    public Long getHashCode() {
+        return hashCode;
+    }
+
+    /**
+     * @return project relative paths of all variables files used by the mappings,
+     * including the default variables file, never null. The set must not be modified
+     */
+    public Set<IPath> getVariablesPaths() {
+        return variablesPaths;
+    }
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.properties;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IPath;
+
+import de.loskutov.fs.command.FileMapping;
+
+/**
+ * Semantic difference between two settings snapshots: mappings which are added and
+ * mappings which are removed. A changed mapping (other destination, patterns or
+ * variables) is both removed (old version) and added (new version).
+ * <p>
+ * If the difference cannot be applied to parts of the project (other resources are
+ * visited now), it is "full" and the entire project has to be synchronized.
+ * @author Andrey
+ */
+public final class MappingDiff {
+
+    private static final FileMapping[] NO_MAPPINGS = new FileMapping[0];
+
+    private static final Comparator<IPath> SHORTEST_FIRST = new Comparator<IPath>() {
+        @Override
+        public int compare(IPath p1, IPath p2) {
+            return p1.segmentCount() - p2.segmentCount();
+        }
+    };
+
+    private final boolean full;
+
+    private final FileMapping[] added;
+
+    private final FileMapping[] removed;
+
+    private MappingDiff(boolean full, FileMapping[] added, FileMapping[] removed) {
+        super();
+        this.full = full;
+        this.added = added;
+        this.removed = removed;
+    }
+
+    /**
+     * @param oldConfig settings the destinations are in sync with, may be null
+     * @param newConfig current settings, may be null
+     * @return difference, never null
+     */
+    public static MappingDiff compute(MappingConfig oldConfig, MappingConfig newConfig) {
+        if (oldConfig == null || newConfig == null
+                || oldConfig.isIncludeTeamPrivate() != newConfig.isIncludeTeamPrivate()) {
+            return new MappingDiff(true, NO_MAPPINGS, NO_MAPPINGS);
+        }
+        IPath oldRoot = oldConfig.getRootPath();
+        IPath newRoot = newConfig.getRootPath();
+        // mappings without own destination are changed with the default destination
+        boolean rootChanged = oldRoot == null ? newRoot != null : !oldRoot.equals(newRoot);
+        FileMapping[] added = subtract(newConfig.getMappings(), oldConfig.getMappings(),
+                rootChanged);
+        FileMapping[] removed = subtract(oldConfig.getMappings(), newConfig
+                .getMappings(), rootChanged);
+        return new MappingDiff(false, added, removed);
+    }
+
+    /**
+     * @return mappings from the first array without unchanged counterpart in the
+     * second one
+     */
+    private static FileMapping[] subtract(FileMapping[] mappings, FileMapping[] others,
+            boolean rootChanged) {
+        Map<FileMapping, FileMapping> index = new HashMap<FileMapping, FileMapping>();
+        for (int i = 0; i < others.length; i++) {
+            index.put(others[i], others[i]);
+        }
+        List<FileMapping> result = new ArrayList<FileMapping>();
+        for (int i = 0; i < mappings.length; i++) {
+            FileMapping fm = mappings[i];
+            FileMapping other = index.get(fm);
+            // variables are shared by the cache while the files are not changed
+            if (other == null || other.getVariables() != fm.getVariables()
+                    || (rootChanged && fm.getDestinationPath() == null)) {
+                result.add(fm);
+            }
+        }
+        if (result.isEmpty()) {
+            return NO_MAPPINGS;
+        }
+        return result.toArray(new FileMapping[result.size()]);
+    }
+
+    /**
+     * @return true if the entire project has to be synchronized
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    /**
+     * @return true if nothing has to be synchronized
+     */
+    public boolean isEmpty() {
+        return !full && added.length == 0 && removed.length == 0;
+    }
+
+    /**
+     * @return new or changed mappings (new version), never null
+     */
+    public FileMapping[] getAdded() {
+        return added;
+    }
+
+    /**
+     * @return removed or changed mappings (old version), never null
+     */
+    public FileMapping[] getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return project relative source paths of added and removed mappings, without
+     * paths below other returned paths
+     */
+    public IPath[] getAffectedRoots() {
+        List<IPath> paths = new ArrayList<IPath>();
+        addSourcePaths(added, paths);
+        addSourcePaths(removed, paths);
+        Collections.sort(paths, SHORTEST_FIRST);
+        List<IPath> roots = new ArrayList<IPath>();
+        for (IPath path : paths) {
+            boolean covered = false;
+            for (IPath root : roots) {
+                if (root.isPrefixOf(path)) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (!covered) {
+                roots.add(path);
+            }
+        }
+        return roots.toArray(new IPath[roots.size()]);
+    }
+
+    private static void addSourcePaths(FileMapping[] mappings, List<IPath> paths) {
+        for (int i = 0; i < mappings.length; i++) {
+            IPath sourcePath = mappings[i].getSourcePath();
+            if (sourcePath != null) {
+                paths.add(sourcePath);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (full) {
+            return "full";
+        }
+        return added.length + " added, " + removed.length + " removed";
+    }
+}
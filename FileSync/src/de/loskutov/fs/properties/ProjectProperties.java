@@ -9,19 +9,26 @@
 package de.loskutov.fs.properties;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.eclipse.core.resources.IPathVariableChangeEvent;
+import org.eclipse.core.resources.IPathVariableChangeListener;
 import org.eclipse.core.resources.IPathVariableManager;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.ProjectScope;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.IPath;
@@ -35,7 +42,6 @@ import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChang
 import org.eclipse.core.runtime.preferences.IEclipsePreferences.NodeChangeEvent;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
 import org.eclipse.core.runtime.preferences.IScopeContext;
-import org.eclipse.core.variables.IStringVariableManager;
 import org.eclipse.core.variables.IValueVariable;
 import org.eclipse.core.variables.IValueVariableListener;
 import org.eclipse.core.variables.VariablesPlugin;
@@ -44,6 +50,8 @@ import org.osgi.service.prefs.BackingStoreException;
 import de.loskutov.fs.FileSyncPlugin;
 import de.loskutov.fs.builder.FileSyncBuilder;
 import de.loskutov.fs.command.FileMapping;
+import de.loskutov.fs.command.PathVariableHelper;
+import de.loskutov.fs.metrics.SyncMetrics;
 
 /**
  * One mapping property should be like:
@@ -86,7 +94,7 @@ import de.loskutov.fs.command.FileMapping;
  </pre>
  * @author Andrey
  */
-public class ProjectProperties implements IPreferenceChangeListener, INodeChangeListener, IValueVariableListener, IResourceChangeListener {
+public class ProjectProperties implements IPreferenceChangeListener, INodeChangeListener {
 
     /**
      * Any valid file path for the default synchronizing target
@@ -97,8 +105,9 @@ public class ProjectProperties implements IPreferenceChangeListener, INodeChange
 
     /**
      * Default should be false - even if property not set.
-     * The values allowed are "true" or "false". If true, then the destination folder will
-     * be deleted before performing file synchronization into this folder.
+     * The values allowed are "true" or "false". If true, then on clean build all files
+     * in the destination folder which do not exist in (or are filtered out from) the
+     * source folder will be deleted, and only changed files will be copied.
      */
     public static final String KEY_CLEAN_ON_CLEAN_BUILD = "cleanOnCleanBuild";
 
@@ -119,29 +128,115 @@ public class ProjectProperties implements IPreferenceChangeListener, INodeChange
 
     private IEclipsePreferences preferences;
 
-    private boolean ignorePreferenceListeners;
+    private volatile boolean ignorePreferenceListeners;
 
-    boolean rebuildPathMap;
+    volatile boolean rebuildPathMap;
 
     /**
+     * Current configuration, replaced as a whole on each settings change.
      * Mapping is built as:
      * %sourcePath%|%destinationPath%|inclusionPatternList|exclusionPatternList[|variablesFileFath],
      * and inclusionPatternList/exclusionPatternList looks like:
      * %path%;%path%;... If an entry is missing, then it should be replaced with
      * ","
      */
-    private FileMapping[] mappings;
+    private final AtomicReference<MappingConfig> config =
+        new AtomicReference<MappingConfig>();
 
     /**
-     * key is IProject, value is corresponding ProjectProperties
+     * key is IProject, value is corresponding ProjectProperties. Accessed by builders,
+     * jobs and listeners from different threads. Entries are removed by
+     * {@link #PROJECT_LISTENER} if projects are closed, deleted or renamed
      */
-    private static Map projectsToProps = new HashMap();
+    private static final ConcurrentMap<IProject, ProjectProperties> projectsToProps =
+        new ConcurrentHashMap<IProject, ProjectProperties>();
 
-    private final List prefListeners;
+    /**
+     * Removes properties of closed, deleted or moved projects. Registered once, with
+     * the first created properties instance
+     */
+    private static final IResourceChangeListener PROJECT_LISTENER =
+        new IResourceChangeListener() {
+        @Override
+        public void resourceChanged(IResourceChangeEvent event) {
+            if (event.getType() != IResourceChangeEvent.POST_CHANGE) {
+                IResource resource = event.getResource();
+                if (resource instanceof IProject) {
+                    removeInstance((IProject) resource);
+                }
+                return;
+            }
+            // renamed or moved projects: only the top level of the delta is checked
+            IResourceDelta delta = event.getDelta();
+            if (delta == null) {
+                return;
+            }
+            IResourceDelta[] removed = delta.getAffectedChildren(IResourceDelta.REMOVED);
+            for (int i = 0; i < removed.length; i++) {
+                IResource resource = removed[i].getResource();
+                if (resource instanceof IProject) {
+                    removeInstance((IProject) resource);
+                }
+            }
+        }
+    };
 
-    private Long hashCode;
+    /**
+     * Re-reads the settings of projects with mappings if workspace path variables are
+     * changed. Registered with the first project which has mappings, see
+     * {@link #addVariableListeners()}
+     */
+    private static final IPathVariableChangeListener PATH_VARIABLE_LISTENER =
+        new IPathVariableChangeListener() {
+        @Override
+        public void pathVariableChanged(IPathVariableChangeEvent event) {
+            rebuildMappedProjects();
+        }
+    };
 
-    private JobChangeAdapter jobChangeAdapter;
+    /**
+     * Re-reads the settings of projects with mappings if string substitution variables
+     * are changed. Registered together with {@link #PATH_VARIABLE_LISTENER}
+     */
+    private static final IValueVariableListener VALUE_VARIABLE_LISTENER =
+        new IValueVariableListener() {
+        @Override
+        public void variablesAdded(IValueVariable[] variables) {
+            rebuildMappedProjects();
+        }
+
+        @Override
+        public void variablesRemoved(IValueVariable[] variables) {
+            rebuildMappedProjects();
+        }
+
+        @Override
+        public void variablesChanged(IValueVariable[] variables) {
+            rebuildMappedProjects();
+        }
+    };
+
+    /**
+     * Re-reads the settings of projects with mappings after a branch switch, to
+     * re-evaluate dynamic egit variables. Registered together with
+     * {@link #PATH_VARIABLE_LISTENER}
+     */
+    private static final JobChangeAdapter BRANCH_LISTENER = new JobChangeAdapter() {
+        @Override
+        public void done(IJobChangeEvent event) {
+            // XXX dirty trick to re-evaluate dynamic egit variables on branch change
+            if(!event.getJob().getClass().getName().contains("org.eclipse.egit.ui.internal.branch.BranchOperationUI")){
+                return;
+            }
+            rebuildMappedProjects();
+        }
+    };
+
+    private static boolean projectListenerAdded;
+
+    private static volatile boolean variableListenersAdded;
+
+    private final List prefListeners;
 
     public synchronized void addPreferenceChangeListener(FileSyncBuilder listener) {
         if (prefListeners.contains(listener)) {
@@ -187,32 +282,9 @@ public class ProjectProperties implements IPreferenceChangeListener, INodeChange
         buildPathMap(preferences);
         preferences.addPreferenceChangeListener(this);
         preferences.addNodeChangeListener(this);
-        IStringVariableManager manager = VariablesPlugin.getDefault().getStringVariableManager();
-        manager.addValueVariableListener(this);
-        jobChangeAdapter = new JobChangeAdapter(){
-            @Override
-            public void done(IJobChangeEvent event) {
-                // XXX dirty trick to re-evaluate dynamic egit variables on branch change
-                if(!event.getJob().getClass().getName().contains("org.eclipse.egit.ui.internal.branch.BranchOperationUI")){
-                    return;
-                }
-                rebuildPathMap();
-            }
-        };
-        Job.getJobManager().addJobChangeListener(jobChangeAdapter);
-        ResourcesPlugin.getWorkspace().addResourceChangeListener(this);
     }
 
     public static ProjectProperties getInstance(IResource resource) {
-        // sanity check
-        List projects = new ArrayList(projectsToProps.keySet());
-        for (int i = 0; i < projects.size(); i++) {
-            IProject project = (IProject) projects.get(i);
-            if (!project.isAccessible()) {
-                removeInstance(project);
-            }
-        }
-
         if (resource == null) {
             return null;
         }
@@ -220,36 +292,120 @@ public class ProjectProperties implements IPreferenceChangeListener, INodeChange
         if (project == null || !project.isAccessible()) {
             return null;
         }
-        ProjectProperties props = (ProjectProperties) projectsToProps.get(project);
+        ProjectProperties props = projectsToProps.get(project);
         if (props != null) {
             return props;
         }
+        addProjectListener();
         props = new ProjectProperties(project);
-        projectsToProps.put(project, props);
+        ProjectProperties existing = projectsToProps.putIfAbsent(project, props);
+        if (existing != null) {
+            // created concurrently by another thread. Dispose does not touch the
+            // metrics, which are shared with the existing instance
+            props.dispose();
+            return existing;
+        }
         return props;
     }
 
+    private static synchronized void addProjectListener() {
+        if (projectListenerAdded) {
+            return;
+        }
+        IWorkspace workspace = ResourcesPlugin.getWorkspace();
+        workspace.addResourceChangeListener(PROJECT_LISTENER,
+                IResourceChangeEvent.PRE_CLOSE | IResourceChangeEvent.PRE_DELETE
+                | IResourceChangeEvent.POST_CHANGE);
+        projectListenerAdded = true;
+    }
+
+    /**
+     * Registers the plugin-wide variable and branch listeners, which are needed only
+     * if at least one project has mappings
+     */
+    private static void addVariableListeners() {
+        if (variableListenersAdded) {
+            return;
+        }
+        synchronized (ProjectProperties.class) {
+            if (variableListenersAdded) {
+                return;
+            }
+            ResourcesPlugin.getWorkspace().getPathVariableManager().addChangeListener(
+                    PATH_VARIABLE_LISTENER);
+            VariablesPlugin.getDefault().getStringVariableManager()
+            .addValueVariableListener(VALUE_VARIABLE_LISTENER);
+            Job.getJobManager().addJobChangeListener(BRANCH_LISTENER);
+            variableListenersAdded = true;
+        }
+    }
+
+    private static void removeVariableListeners() {
+        synchronized (ProjectProperties.class) {
+            if (!variableListenersAdded) {
+                return;
+            }
+            ResourcesPlugin.getWorkspace().getPathVariableManager().removeChangeListener(
+                    PATH_VARIABLE_LISTENER);
+            VariablesPlugin.getDefault().getStringVariableManager()
+            .removeValueVariableListener(VALUE_VARIABLE_LISTENER);
+            Job.getJobManager().removeJobChangeListener(BRANCH_LISTENER);
+            variableListenersAdded = false;
+        }
+    }
+
+    /**
+     * Re-reads the settings of all projects which have mappings, after a change of
+     * path or string substitution variables
+     */
+    static void rebuildMappedProjects() {
+        PathVariableHelper.clearCache();
+        for (ProjectProperties props : projectsToProps.values()) {
+            FileMapping[] mappings = props.getMappings();
+            if (mappings != null && mappings.length > 0) {
+                props.rebuildPathMap();
+            }
+        }
+    }
+
     public static void removeInstance(IProject project) {
-        ProjectProperties removed = (ProjectProperties) projectsToProps.remove(project);
+        ProjectProperties removed = projectsToProps.remove(project);
         if(removed != null){
             removed.dispose();
+            // project is closed or deleted: its mappings are not synchronized anymore
+            SyncMetrics.getDefault().retainMappings(project.getName(),
+                    new FileMapping[0]);
         }
     }
 
+    /**
+     * Disposes all instances and stops listening for project changes. Called on
+     * plugin stop.
+     */
+    public static void removeAllInstances() {
+        synchronized (ProjectProperties.class) {
+            if (projectListenerAdded) {
+                IWorkspace workspace = ResourcesPlugin.getWorkspace();
+                workspace.removeResourceChangeListener(PROJECT_LISTENER);
+                projectListenerAdded = false;
+            }
+        }
+        removeVariableListeners();
+        for (IProject project : projectsToProps.keySet()) {
+            removeInstance(project);
+        }
+        PathVariableHelper.clearCache();
+        VariablesCache.clear();
+    }
+
     void dispose() {
         if(preferences != null){
             preferences.removeNodeChangeListener(this);
             preferences.removePreferenceChangeListener(this);
             preferences = null;
         }
-        IStringVariableManager manager = VariablesPlugin.getDefault().getStringVariableManager();
-        manager.removeValueVariableListener(this);
-        if(jobChangeAdapter != null) {
-            Job.getJobManager().removeJobChangeListener(jobChangeAdapter);
-        }
-        ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
         prefListeners.clear();
-        projectsToProps.remove(project);
+        projectsToProps.remove(project, this);
     }
 
     /**
@@ -259,7 +415,6 @@ public class ProjectProperties implements IPreferenceChangeListener, INodeChange
         if(prefs == null){
             return;
         }
-        hashCode = null;
 
         String[] keys;
         try {
@@ -271,47 +426,28 @@ public class ProjectProperties implements IPreferenceChangeListener, INodeChange
         }
         this.ignorePreferenceListeners = true;
 
-        ArrayList mappingList = new ArrayList(keys.length);
-        for (int i = 0; i < keys.length; i++) {
-            String key = keys[i];
-            if (key.startsWith(FileMapping.FULL_MAP_PREFIX)) {
-                FileMapping mapping = new FileMapping(prefs.get(key, null), project
-                        .getLocation());
-
-                if (mappingList.contains(mapping)) {
-                    FileSyncPlugin.log("Preferences contains duplicated " + "mapping: '"
-                            + mapping + "' for project '" + project.getName() + "'",
-                            null, IStatus.WARNING);
+        ArrayList mappingList = readMappings(prefs, keys);
+        ArrayList mappingList1 = new ArrayList(mappingList.size());
 
-                    prefs.remove(key);
-                } else {
-                    mappingList.add(mapping);
-                }
+        // mappings with same source and destination: the last one wins
+        boolean[] duplicates = new boolean[mappingList.size()];
+        Set<List<IPath>> sourceAndDestination = new HashSet<List<IPath>>();
+        for (int i = mappingList.size() - 1; i >= 0; i--) {
+            FileMapping fm = (FileMapping) mappingList.get(i);
+            if (!sourceAndDestination.add(Arrays.asList(new IPath[] {
+                    fm.getSourcePath(), fm.getDestinationPath() }))) {
+                duplicates[i] = true;
+                FileSyncPlugin.log("Preferences contains duplicated "
+                        + "mapping: '" + fm + "' for project '"
+                        + project.getName() + "'", null, IStatus.WARNING);
             }
         }
-        ArrayList mappingList1 = new ArrayList(mappingList.size());
 
-        while (mappingList.size() > 0) {
-            FileMapping fm1 = (FileMapping) mappingList.get(0);
-            IPath sourcePath = fm1.getSourcePath();
-            IPath destinationPath = fm1.getDestinationPath();
-            boolean duplicate = false;
-            for (int i = 1; i < mappingList.size(); i++) {
-                FileMapping fm2 = (FileMapping) mappingList.get(i);
-                if (sourcePath.equals(fm2.getSourcePath())) {
-                    if ((destinationPath != null && destinationPath.equals(fm2
-                            .getDestinationPath()))
-                            || destinationPath == null
-                            && fm2.getDestinationPath() == null) {
-                        duplicate = true;
-                        FileSyncPlugin.log("Preferences contains duplicated "
-                                + "mapping: '" + fm2 + "' for project '"
-                                + project.getName() + "'", null, IStatus.WARNING);
-                        break;
-                    }
-                }
-            }
-            if (!duplicate) {
+        // variables files are often shared by the mappings: read them once
+        VariablesCache.Session variables = new VariablesCache.Session();
+        for (int j = 0; j < duplicates.length; j++) {
+            FileMapping fm1 = (FileMapping) mappingList.get(j);
+            if (!duplicates[j]) {
                 mappingList1.add(fm1);
                 /*
                  * read properties file for variables, if defined.
@@ -319,7 +455,7 @@ public class ProjectProperties implements IPreferenceChangeListener, INodeChange
                  */
                 IPath varPath = fm1.getFullVariablesPath();
                 if (varPath != null) {
-                    Properties props = new Properties();
+                    Properties defaults = null;
                     String defPath = prefs.get(KEY_DEFAULT_VARIABLES, null);
                     File varFile = varPath.toFile();
                     if (defPath != null) {
@@ -327,7 +463,7 @@ public class ProjectProperties implements IPreferenceChangeListener, INodeChange
                                 .toOSString());
                         if (!varFile.equals(defFile)) {
                             if (defFile.exists()) {
-                                loadProps(defFile, props);
+                                defaults = loadProps(variables, defFile, null);
                             } else {
                                 fm1.setVariables(null);
                                 FileSyncPlugin.log("Default variables substitution file "
@@ -339,8 +475,7 @@ public class ProjectProperties implements IPreferenceChangeListener, INodeChange
                     }
 
                     if (varFile.exists()) {
-                        loadProps(varFile, props);
-                        fm1.setVariables(props);
+                        fm1.setVariables(loadProps(variables, varFile, defaults));
                     } else {
                         fm1.setVariables(null);
                         FileSyncPlugin.log("Variables substitution file not found: "
@@ -351,32 +486,87 @@ public class ProjectProperties implements IPreferenceChangeListener, INodeChange
 
                 }
             }
-            mappingList.remove(0);
         }
 
-        mappings = (FileMapping[]) mappingList1.toArray(new FileMapping[mappingList1
-                                                                        .size()]);
+        FileMapping[] mappings = (FileMapping[]) mappingList1
+        .toArray(new FileMapping[mappingList1.size()]);
+        setConfig(new MappingConfig(mappings, prefs, project.getLocation()));
 
         this.ignorePreferenceListeners = false;
         this.rebuildPathMap = false;
     }
 
-    private void loadProps(File file, Properties props) {
-        FileInputStream fis = null;
+    /**
+     * Decodes all mappings from given preferences, or reads them from the mapping cache
+     * if the preferences are not changed since the cache was written.
+     * @param prefs
+     * @param keys all preference keys
+     * @return list with unique mappings
+     */
+    private ArrayList<FileMapping> readMappings(IEclipsePreferences prefs, String[] keys) {
+        IPath location = project.getLocation();
+        long hash = MappingCache.hash(prefs, keys, location);
+        FileMapping[] cached = MappingCache.read(project, hash);
+        if (cached != null) {
+            return new ArrayList<FileMapping>(Arrays.asList(cached));
+        }
+        ArrayList<FileMapping> mappingList = new ArrayList<FileMapping>(keys.length);
+        List<String> mappingKeys = new ArrayList<String>(keys.length);
+        // equality is based on the mapping fingerprint
+        Set<FileMapping> uniqueMappings = new HashSet<FileMapping>();
+        boolean removed = false;
+        boolean cacheable = true;
+        for (int i = 0; i < keys.length; i++) {
+            String key = keys[i];
+            if (key.startsWith(FileMapping.FULL_MAP_PREFIX)) {
+                FileMapping mapping = new FileMapping(prefs.get(key, null), location);
+
+                if (!uniqueMappings.add(mapping)) {
+                    FileSyncPlugin.log("Preferences contains duplicated " + "mapping: '"
+                            + mapping + "' for project '" + project.getName() + "'",
+                            null, IStatus.WARNING);
+
+                    prefs.remove(key);
+                    removed = true;
+                } else {
+                    mappingList.add(mapping);
+                    mappingKeys.add(key);
+                    // broken entry (already logged) can't be cached
+                    cacheable &= mapping.getSourcePath() != null;
+                }
+            }
+        }
+        if (cacheable) {
+            if (removed) {
+                try {
+                    keys = prefs.keys();
+                } catch (BackingStoreException e) {
+                    return mappingList;
+                }
+                hash = MappingCache.hash(prefs, keys, location);
+            }
+            FileMapping[] mappings = mappingList.toArray(new FileMapping[mappingList
+                    .size()]);
+            MappingCache.write(project, hash, mappings, prefs, mappingKeys
+                    .toArray(new String[mappingKeys.size()]));
+        }
+        return mappingList;
+    }
+
+    /**
+     * @param variables variables files read during current rebuild
+     * @param file existing variables file
+     * @param defaults default variables, may be null
+     * @return shared (cached) variables, merged over the defaults, never null
+     */
+    private Properties loadProps(VariablesCache.Session variables, File file,
+            Properties defaults) {
         try {
-            fis = new FileInputStream(file);
-            props.load(fis);
+            return variables.load(file, defaults);
         } catch (IOException e) {
             FileSyncPlugin.log("Error during reading of properties file: '" + file
                     + "' for project '" + project.getName() + "'", null, IStatus.WARNING);
-        } finally {
-            if (fis != null) {
-                try {
-                    fis.close();
-                } catch (IOException e) {
-                    // ignore
-                }
-            }
+            return defaults != null ? defaults : new Properties();
         }
     }
 
@@ -408,7 +598,6 @@ public class ProjectProperties implements IPreferenceChangeListener, INodeChange
             return;
         }
         try {
-            hashCode = null;
             preferences.clear();
             preferences.sync();
             buildPathMap(preferences);
@@ -452,18 +641,41 @@ public class ProjectProperties implements IPreferenceChangeListener, INodeChange
     }
 
     /**
-     * @return Returns the mappings.
+     * @return current configuration snapshot, or null if the settings could not be
+     * read
+     */
+    public MappingConfig getConfig() {
+        return config.get();
+    }
+
+    /**
+     * @return Returns the mappings of the current configuration. The array must not
+     * be modified
      */
     public FileMapping[] getMappings() {
-        return mappings;
+        MappingConfig current = config.get();
+        return current == null ? null : current.getMappings();
     }
 
     /**
+     * Replaces the current configuration with a new one with given mappings
      * @param mappings
      *            The mappings to set.
      */
     public void setMappings(FileMapping[] mappings) {
-        this.mappings = mappings;
+        setConfig(new MappingConfig(mappings, preferences, project.getLocation()));
+    }
+
+    /**
+     * Publishes given configuration. The plugin-wide variable listeners are registered
+     * with the first configuration which has mappings
+     */
+    private void setConfig(MappingConfig newConfig) {
+        config.set(newConfig);
+        SyncMetrics.getDefault().retainMappings(project.getName(), newConfig.getMappings());
+        if (newConfig.getMappings().length > 0) {
+            addVariableListeners();
+        }
     }
 
     @Override
@@ -527,37 +739,11 @@ public class ProjectProperties implements IPreferenceChangeListener, INodeChange
     }
 
     public Long getHashCode(){
-        if(hashCode != null){
-            return hashCode;
-        }
-        long code = 31;
-        code += preferences.get(KEY_CLEAN_ON_CLEAN_BUILD, "").hashCode();
-        code += preferences.get(KEY_DEFAULT_DESTINATION, "").hashCode();
-        code += preferences.get(KEY_DEFAULT_VARIABLES, "").hashCode();
-        code += preferences.get(KEY_USE_CURRENT_DATE, "").hashCode();
-        code += preferences.get(KEY_INCLUDE_TEAM_PRIVATE, "").hashCode();
-        if(mappings != null){
-            for (int i = 0; i < mappings.length; i++) {
-                code += mappings[i].hashCode();
-            }
+        MappingConfig current = config.get();
+        if(current == null){
+            current = new MappingConfig(new FileMapping[0], preferences, null);
         }
-        hashCode = new Long(code);
-        return hashCode;
-    }
-
-    @Override
-    public void variablesAdded(IValueVariable[] variables) {
-        rebuildPathMap();
-    }
-
-    @Override
-    public void variablesRemoved(IValueVariable[] variables) {
-        rebuildPathMap();
-    }
-
-    @Override
-    public void variablesChanged(IValueVariable[] variables) {
-        rebuildPathMap();
+        return current.getHashCode();
     }
 
     void rebuildPathMap() {
@@ -569,14 +755,4 @@ public class ProjectProperties implements IPreferenceChangeListener, INodeChange
         rebuildPathMap = false;
         notifyListeners(prefs);
     }
-
-    @Override
-    public void resourceChanged(IResourceChangeEvent event) {
-        IResource resource = event.getResource();
-        if ((event.getType() == IResourceChangeEvent.PRE_CLOSE
-                || event.getType() == IResourceChangeEvent.PRE_DELETE)
-                && resource != null && resource.equals(project)) {
-            dispose();
-        }
-    }
 }
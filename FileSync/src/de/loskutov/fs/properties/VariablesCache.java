@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.properties;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+
+/**
+ * Parsed variables files, shared by all mappings and projects. A file is parsed again
+ * only if its content is changed. Cached files are validated by modification time and
+ * size. Modification time has 1 or 2 seconds resolution on some file systems, so if
+ * the file was read within this window after its last modification, a quick edit
+ * could keep the time stamp: only then the file is read again and compared by the
+ * CRC32 checksum. The merge of a variables file over the default variables file is
+ * cached together with the file.
+ * <p>
+ * Use a {@link Session} to check each file only once per settings rebuild.
+ * <p>
+ * Returned properties are shared and must not be modified.
+ * @author Andrey
+ */
+final class VariablesCache {
+
+    private static final ConcurrentMap<File, Layer> LAYERS =
+        new ConcurrentHashMap<File, Layer>();
+
+    private static final int BUFFER_SIZE = 4096;
+
+    /** coarsest known time stamp resolution (FAT) plus some tolerance, ms */
+    private static final long COARSE_TIMESTAMP_WINDOW = 3000;
+
+    /**
+     * Parsed file with the time stamp, size and content checksum it was parsed for
+     */
+    private static final class Layer {
+        final long lastModified;
+        final long checksum;
+        final int length;
+        final Properties variables;
+        /** time of the last read of the file content */
+        volatile long readTime;
+        /** last merge of this layer over some defaults, may be null */
+        volatile Merged merged;
+
+        Layer(long lastModified, long checksum, int length, Properties variables,
+                long readTime) {
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+            this.length = length;
+            this.variables = variables;
+            this.readTime = readTime;
+        }
+
+        /**
+         * @return true if the file could be changed after the last read without
+         * changing its time stamp
+         */
+        boolean isTimestampAmbiguous() {
+            return readTime - lastModified < COARSE_TIMESTAMP_WINDOW;
+        }
+    }
+
+    private static final class Merged {
+        final Properties defaults;
+        final Properties variables;
+
+        Merged(Properties defaults, Properties variables) {
+            this.defaults = defaults;
+            this.variables = variables;
+        }
+    }
+
+    /**
+     * Files already checked during one settings rebuild: each file is checked and
+     * read at most once per rebuild, even if it is used by many mappings. Not thread
+     * safe.
+     */
+    static final class Session {
+        private final Map<File, Layer> checked;
+
+        Session() {
+            super();
+            checked = new HashMap<File, Layer>();
+        }
+
+        /**
+         * @see VariablesCache#load(File, Properties)
+         */
+        Properties load(File file, Properties defaults) throws IOException {
+            Layer layer = checked.get(file);
+            if (layer == null) {
+                layer = getLayer(file);
+                checked.put(file, layer);
+            }
+            return merge(layer, defaults);
+        }
+    }
+
+    private VariablesCache() {
+        super();
+    }
+
+    /**
+     * @param file existing variables file
+     * @return variables of given file, never null
+     * @throws IOException if the file could not be read
+     */
+    static Properties load(File file) throws IOException {
+        return getLayer(file).variables;
+    }
+
+    /**
+     * @param file existing variables file
+     * @param defaults default variables, may be null
+     * @return variables of given file, added to the default variables (the file wins)
+     * @throws IOException if the file could not be read
+     */
+    static Properties load(File file, Properties defaults) throws IOException {
+        return merge(getLayer(file), defaults);
+    }
+
+    /**
+     * Forgets all parsed files
+     */
+    static void clear() {
+        LAYERS.clear();
+    }
+
+    private static Properties merge(Layer layer, Properties defaults) {
+        if (defaults == null) {
+            return layer.variables;
+        }
+        Merged merged = layer.merged;
+        if (merged != null && merged.defaults == defaults) {
+            return merged.variables;
+        }
+        Properties props = new Properties();
+        props.putAll(defaults);
+        props.putAll(layer.variables);
+        layer.merged = new Merged(defaults, props);
+        return props;
+    }
+
+    private static Layer getLayer(File file) throws IOException {
+        // time stamp first: if the file is changed while reading, it is read again
+        long lastModified = file.lastModified();
+        long length = file.length();
+        Layer layer = LAYERS.get(file);
+        if (layer != null && layer.lastModified == lastModified
+                && layer.length == length && !layer.isTimestampAmbiguous()) {
+            return layer;
+        }
+        long readTime = System.currentTimeMillis();
+        byte[] content = read(file);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        long checksum = crc.getValue();
+        if (layer != null && layer.lastModified == lastModified
+                && layer.checksum == checksum && layer.length == content.length) {
+            layer.readTime = readTime;
+            return layer;
+        }
+        Properties props = new Properties();
+        props.load(new ByteArrayInputStream(content));
+        layer = new Layer(lastModified, checksum, content.length, props, readTime);
+        LAYERS.put(file, layer);
+        return layer;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+        byte[] buf = new byte[BUFFER_SIZE];
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = fis.read(buf)) > 0) {
+                out.write(buf, 0, read);
+            }
+        } finally {
+            fis.close();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.standalone;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+
+import de.loskutov.fs.FileSyncPlugin;
+import de.loskutov.fs.builder.FileSyncBuilder;
+import de.loskutov.fs.command.FileMapping;
+import de.loskutov.fs.command.PathVariableHelper;
+import de.loskutov.fs.properties.ProjectProperties;
+
+/**
+ * FileSync project settings, read directly from the
+ * ".settings/de.loskutov.FileSync.prefs" file of the project, without Eclipse
+ * preferences API. Mappings are decoded and variable files are loaded the same way
+ * as {@link ProjectProperties} does it.
+ * @author Andrey
+ */
+public class ProjectConfig {
+
+    private final File projectDir;
+
+    private final File settingsFile;
+
+    private FileMapping[] mappings;
+
+    private IPath rootPath;
+
+    private boolean cleanOnCleanBuild;
+
+    private boolean useCurrentDate;
+
+    private boolean includeTeamPrivate;
+
+    /** settings and variables files, to detect configuration changes */
+    private Set<File> configFiles;
+
+    public ProjectConfig(File projectDir) {
+        super();
+        this.projectDir = projectDir.getAbsoluteFile();
+        settingsFile = new File(new File(this.projectDir, FileSyncBuilder.SETTINGS_DIR),
+                FileSyncBuilder.SETTINGS_FILE);
+    }
+
+    /**
+     * (Re-)reads the settings file
+     * @throws IOException if settings could not be read
+     * @throws IllegalArgumentException if settings are not usable
+     */
+    public void load() throws IOException {
+        Properties prefs = loadProps(settingsFile);
+        IPath projectPath = new Path(projectDir.getPath());
+
+        List<FileMapping> list = new ArrayList<FileMapping>();
+        configFiles = new LinkedHashSet<File>();
+        configFiles.add(settingsFile);
+        for (Object key : prefs.keySet()) {
+            if (!((String) key).startsWith(FileMapping.FULL_MAP_PREFIX)) {
+                continue;
+            }
+            FileMapping mapping = new FileMapping(prefs.getProperty((String) key),
+                    projectPath);
+            if (mapping.getSourcePath() == null || list.contains(mapping)) {
+                continue;
+            }
+            list.add(mapping);
+            IPath varPath = mapping.getFullVariablesPath();
+            if (varPath != null) {
+                File varFile = varPath.toFile();
+                configFiles.add(varFile);
+                Properties vars = new Properties();
+                String defPath = prefs.getProperty(ProjectProperties.KEY_DEFAULT_VARIABLES);
+                if (defPath != null) {
+                    File defFile = projectPath.append(defPath).toFile();
+                    configFiles.add(defFile);
+                    if (!defFile.equals(varFile)) {
+                        if (defFile.isFile()) {
+                            vars.putAll(loadProps(defFile));
+                        } else {
+                            FileSyncPlugin.log("Default variables substitution file "
+                                    + "not found: " + defFile + ", used in mapping: "
+                                    + mapping, null, IStatus.ERROR);
+                        }
+                    }
+                }
+                if (varFile.isFile()) {
+                    vars.putAll(loadProps(varFile));
+                    mapping.setVariables(vars);
+                } else {
+                    FileSyncPlugin.log("Variables substitution file not found: "
+                            + varFile + ", used in mapping: " + mapping, null,
+                            IStatus.ERROR);
+                }
+            }
+        }
+        if (list.isEmpty()) {
+            throw new IllegalArgumentException("FileSync mapping is missing in "
+                    + settingsFile);
+        }
+        mappings = list.toArray(new FileMapping[list.size()]);
+
+        String root = prefs.getProperty(ProjectProperties.KEY_DEFAULT_DESTINATION, "");
+        rootPath = new PathVariableHelper().resolveVariable(root, projectPath);
+        for (int i = 0; i < mappings.length; i++) {
+            if (mappings[i].getDestinationPath() == null
+                    && (rootPath == null || rootPath.isEmpty())) {
+                throw new IllegalArgumentException("Default target folder is required"
+                        + " by one of mappings but not specified in " + settingsFile);
+            }
+        }
+        cleanOnCleanBuild = Boolean.valueOf(
+                prefs.getProperty(ProjectProperties.KEY_CLEAN_ON_CLEAN_BUILD))
+                .booleanValue();
+        useCurrentDate = Boolean.valueOf(
+                prefs.getProperty(ProjectProperties.KEY_USE_CURRENT_DATE)).booleanValue();
+        includeTeamPrivate = Boolean.valueOf(
+                prefs.getProperty(ProjectProperties.KEY_INCLUDE_TEAM_PRIVATE))
+                .booleanValue();
+    }
+
+    private static Properties loadProps(File file) throws IOException {
+        Properties props = new Properties();
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            props.load(fis);
+        } finally {
+            fis.close();
+        }
+        return props;
+    }
+
+    public File getProjectDir() {
+        return projectDir;
+    }
+
+    public File getSettingsFile() {
+        return settingsFile;
+    }
+
+    public FileMapping[] getMappings() {
+        return mappings;
+    }
+
+    /**
+     * @return default destination, may be null
+     */
+    public IPath getRootPath() {
+        return rootPath;
+    }
+
+    public boolean isCleanOnCleanBuild() {
+        return cleanOnCleanBuild;
+    }
+
+    public boolean isUseCurrentDate() {
+        return useCurrentDate;
+    }
+
+    public boolean isIncludeTeamPrivate() {
+        return includeTeamPrivate;
+    }
+
+    /**
+     * @return the settings file and all variables files used by mappings
+     */
+    public Set<File> getConfigFiles() {
+        return configFiles;
+    }
+}
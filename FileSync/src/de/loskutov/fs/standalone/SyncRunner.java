@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.standalone;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+import de.loskutov.fs.command.PathVariableHelper;
+import de.loskutov.fs.metrics.TraceWriter;
+
+/**
+ * Runs FileSync mappings of one project without Eclipse, for example on build
+ * machines. Required on the class path are FileSync, org.eclipse.equinox.common,
+ * org.eclipse.core.runtime and org.eclipse.osgi (logging goes through the plugin
+ * class, which prints to the console if the plugin is not started), and
+ * org.osgi.service.prefs (contained in org.eclipse.equinox.preferences in older
+ * Eclipse versions). Workspace (org.eclipse.core.resources) is not used. Eclipse path
+ * variables are not available, but "${env_var:NAME}" and workspace relative
+ * destinations (with -workspace) are supported.
+ * <p>
+ * Usage: SyncRunner [-clean] [-watch [interval ms]] [-workspace dir]
+ * [-encoding name] projectDir
+ * <p>
+ * In the watch mode the project tree is polled with given interval (default 1000 ms),
+ * and only changed files are synchronized. Changes to the FileSync settings or
+ * variables files trigger full sync with the new configuration.
+ * @author Andrey
+ */
+public class SyncRunner {
+
+    private static final long DEFAULT_INTERVAL = 1000;
+
+    private final ProjectConfig config;
+
+    private final String encoding;
+
+    private TreeSync sync;
+
+    /** key is config file, value is the last known time stamp */
+    private Map<File, Long> configStamps;
+
+    public SyncRunner(ProjectConfig config, String encoding) {
+        super();
+        this.config = config;
+        this.encoding = encoding;
+    }
+
+    public static void main(String[] args) {
+        boolean clean = false;
+        boolean watch = false;
+        long interval = DEFAULT_INTERVAL;
+        String encoding = System.getProperty("file.encoding");
+        File projectDir = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("-clean".equals(arg)) {
+                clean = true;
+            } else if ("-watch".equals(arg)) {
+                watch = true;
+                if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                    interval = Long.parseLong(args[++i]);
+                }
+            } else if ("-workspace".equals(arg) && i + 1 < args.length) {
+                PathVariableHelper.setStandaloneWorkspaceLocation(new Path(new File(
+                        args[++i]).getAbsolutePath()));
+            } else if ("-encoding".equals(arg) && i + 1 < args.length) {
+                encoding = args[++i];
+            } else if (arg.startsWith("-") || projectDir != null) {
+                usage();
+                return;
+            } else {
+                projectDir = new File(arg);
+            }
+        }
+        if (projectDir == null) {
+            usage();
+            return;
+        }
+        if (!projectDir.isDirectory()) {
+            System.err.println("Project directory does not exist: " + projectDir);
+            System.exit(2);
+        }
+
+        if (TraceWriter.ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread("FileSync trace writer") {
+                @Override
+                public void run() {
+                    TraceWriter.close();
+                }
+            });
+        }
+        SyncRunner runner = new SyncRunner(new ProjectConfig(projectDir), encoding);
+        try {
+            runner.loadConfig();
+        } catch (IOException e) {
+            System.err.println("Failed to read FileSync settings: " + e);
+            System.exit(2);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+        TreeSync.Stats stats = runner.runFull(clean);
+        if (!watch) {
+            System.exit(stats.getFailed() == 0 ? 0 : 1);
+        }
+        try {
+            runner.watch(interval);
+        } catch (InterruptedException e) {
+            // exit
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: " + SyncRunner.class.getName()
+                + " [-clean] [-watch [interval ms]] [-workspace dir]"
+                + " [-encoding name] projectDir");
+        System.exit(2);
+    }
+
+    private void loadConfig() throws IOException {
+        config.load();
+        sync = new TreeSync(config, encoding);
+        configStamps = new HashMap<File, Long>();
+        for (File file : config.getConfigFiles()) {
+            configStamps.put(file, Long.valueOf(file.lastModified()));
+        }
+    }
+
+    private boolean isConfigChanged() {
+        for (Map.Entry<File, Long> entry : configStamps.entrySet()) {
+            if (entry.getKey().lastModified() != entry.getValue().longValue()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public TreeSync.Stats runFull(boolean clean) {
+        TreeSync.Stats stats = sync.fullSync(clean);
+        System.out.println((clean ? "Clean" : "Full") + " sync of "
+                + config.getProjectDir() + " - " + stats);
+        return stats;
+    }
+
+    /**
+     * Polls the project tree until the thread is interrupted.
+     * Java 6 has no file system notifications, so polling is the only portable way.
+     * @param interval poll interval in milliseconds
+     */
+    public void watch(long interval) throws InterruptedException {
+        TreeSnapshot snapshot = TreeSnapshot.scan(config.getProjectDir(), sync);
+        System.out.println("Watching " + snapshot.size() + " mapped entries in "
+                + config.getProjectDir() + " (poll interval " + interval + " ms)");
+        while (!Thread.currentThread().isInterrupted()) {
+            Thread.sleep(interval);
+            if (isConfigChanged()) {
+                try {
+                    loadConfig();
+                } catch (IOException e) {
+                    System.err.println("Failed to read FileSync settings: " + e);
+                    continue;
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage());
+                    continue;
+                }
+                runFull(false);
+                snapshot = TreeSnapshot.scan(config.getProjectDir(), sync);
+                continue;
+            }
+            TreeSnapshot current = TreeSnapshot.scan(config.getProjectDir(), sync);
+            List<IPath> changed = new ArrayList<IPath>();
+            List<IPath> removed = new ArrayList<IPath>();
+            current.diff(snapshot, changed, removed);
+            snapshot = current;
+            if (changed.isEmpty() && removed.isEmpty()) {
+                continue;
+            }
+            TreeSync.Stats stats = sync.incrementalSync(changed, removed);
+            System.out.println("Incremental sync - " + stats);
+        }
+    }
+}
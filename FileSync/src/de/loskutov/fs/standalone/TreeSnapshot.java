@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.standalone;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+/**
+ * State (time stamp and size) of all visited files in the project tree. Two
+ * snapshots taken one after another are compared to find changed files.
+ * @author Andrey
+ */
+public class TreeSnapshot {
+
+    private final Map<IPath, long[]> stamps;
+
+    private TreeSnapshot(Map<IPath, long[]> stamps) {
+        super();
+        this.stamps = stamps;
+    }
+
+    /**
+     * @param projectDir
+     * @param sync used to skip not mapped directories
+     * @return current state of the project tree
+     */
+    public static TreeSnapshot scan(File projectDir, TreeSync sync) {
+        Map<IPath, long[]> stamps = new HashMap<IPath, long[]>();
+        scan(projectDir, Path.EMPTY, sync, stamps);
+        return new TreeSnapshot(stamps);
+    }
+
+    private static void scan(File dir, IPath relativePath, TreeSync sync,
+            Map<IPath, long[]> stamps) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (int i = 0; i < children.length; i++) {
+            File child = children[i];
+            boolean isFolder = child.isDirectory();
+            IPath path = relativePath.append(child.getName());
+            if (!sync.isVisited(path, isFolder)) {
+                continue;
+            }
+            if (isFolder) {
+                // folder time stamp changes with children, only existence matters
+                stamps.put(path, new long[] { -1, -1 });
+                scan(child, path, sync, stamps);
+            } else {
+                stamps.put(path, new long[] { child.lastModified(), child.length() });
+            }
+        }
+    }
+
+    /**
+     * @param older previous state
+     * @param changed receives paths added or modified since older state
+     * @param removed receives paths which do not exist anymore
+     */
+    public void diff(TreeSnapshot older, List<IPath> changed, List<IPath> removed) {
+        for (Entry<IPath, long[]> entry : stamps.entrySet()) {
+            long[] old = older.stamps.get(entry.getKey());
+            long[] stamp = entry.getValue();
+            if (old == null || old[0] != stamp[0] || old[1] != stamp[1]) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (IPath path : older.stamps.keySet()) {
+            if (!stamps.containsKey(path)) {
+                removed.add(path);
+            }
+        }
+    }
+
+    public int size() {
+        return stamps.size();
+    }
+}
@@ -0,0 +1,345 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Andrey Loskutov.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * Contributor:  Andrey Loskutov - initial API and implementation
+ *******************************************************************************/
+package de.loskutov.fs.standalone;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+
+import de.loskutov.fs.FileSyncPlugin;
+import de.loskutov.fs.builder.SyncWizard;
+import de.loskutov.fs.command.DestinationMirror;
+import de.loskutov.fs.command.FS;
+import de.loskutov.fs.command.FileCopier;
+import de.loskutov.fs.command.FileMapping;
+import de.loskutov.fs.command.MappingMatcher;
+
+/**
+ * Sync engine working directly on the file system, for use outside of Eclipse. It
+ * walks plain directories instead of workspace resources, but shares path matching,
+ * destination computation and copying with {@link SyncWizard}: see
+ * {@link MappingMatcher}, {@link FileCopier} and {@link DestinationMirror}.
+ * Required class path is described in {@link SyncRunner}.
+ * @author Andrey
+ */
+public class TreeSync {
+
+    /** directories of the version control systems, skipped as team private */
+    private static final Set<String> TEAM_PRIVATE = new HashSet<String>();
+    static {
+        TEAM_PRIVATE.add(".git");
+        TEAM_PRIVATE.add(".svn");
+        TEAM_PRIVATE.add(".hg");
+        TEAM_PRIVATE.add("CVS");
+    }
+
+    private static final int TEXT_PROBE_SIZE = 8 * 1024;
+
+    private final ProjectConfig config;
+
+    private final String encoding;
+
+    private final MappingMatcher matcher;
+
+    private final FileCopier copier;
+
+    private Stats stats;
+
+    /** expected destinations during mirror (clean) pass, null otherwise */
+    private DestinationMirror mirror;
+
+    /**
+     * Statistics of a single sync pass
+     */
+    public static class Stats {
+        int examined;
+        int copied;
+        int skipped;
+        int deleted;
+        int failed;
+        long bytes;
+        final long start = System.currentTimeMillis();
+        long stop;
+
+        @Override
+        public String toString() {
+            long time = Math.max(1, stop - start);
+            return "examined: " + examined + ", copied: " + copied + ", up to date: "
+                    + skipped + ", deleted: " + deleted + ", failed: " + failed
+                    + ", time: " + time + " ms, " + (bytes * 1000 / 1024 / 1024 / time)
+                    + " MB/s";
+        }
+
+        public int getExamined() {
+            return examined;
+        }
+
+        public int getCopied() {
+            return copied;
+        }
+
+        /**
+         * @return number of files not copied because destination was up to date
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public int getDeleted() {
+            return deleted;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return number of copied bytes
+         */
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    /**
+     * @param config loaded project configuration
+     * @param encoding text files encoding used for variables substitution
+     */
+    public TreeSync(ProjectConfig config, String encoding) {
+        super();
+        this.config = config;
+        this.encoding = encoding;
+        matcher = new MappingMatcher(config.getMappings());
+        copier = new FileCopier(config.isUseCurrentDate(), config.getProjectDir()
+                .getName());
+    }
+
+    /**
+     * Copies all mapped files. If "clean" is true and the project is configured to
+     * delete destination on clean build, destination files not matching any project
+     * file are deleted too.
+     * @return pass statistics
+     */
+    public Stats fullSync(boolean clean) {
+        stats = new Stats();
+        if (clean && config.isCleanOnCleanBuild()) {
+            mirror = new DestinationMirror();
+        }
+        walk(config.getProjectDir(), Path.EMPTY);
+        if (mirror != null) {
+            reconcileMirror();
+            mirror = null;
+        }
+        stats.stop = System.currentTimeMillis();
+        return stats;
+    }
+
+    /**
+     * Copies changed files and deletes destinations of removed files.
+     * @param changed project relative paths of added or changed files
+     * @param removed project relative paths of removed files or directories
+     * @return pass statistics
+     */
+    public Stats incrementalSync(List<IPath> changed, List<IPath> removed) {
+        stats = new Stats();
+        List<IPath> toDelete = new ArrayList<IPath>(removed);
+        Collections.sort(toDelete, MappingMatcher.DEEPEST_FIRST);
+        for (IPath path : toDelete) {
+            delete(path);
+        }
+        for (IPath path : changed) {
+            File file = new File(config.getProjectDir(), path.toOSString());
+            copy(file, path, file.isDirectory());
+        }
+        stats.stop = System.currentTimeMillis();
+        return stats;
+    }
+
+    /**
+     * @param path project relative path
+     * @param isFolder
+     * @return true if given path should be visited: it is mapped or may contain mapped
+     * children
+     */
+    public boolean isVisited(IPath path, boolean isFolder) {
+        if (isFolder && !config.isIncludeTeamPrivate()
+                && TEAM_PRIVATE.contains(path.lastSegment())) {
+            return false;
+        }
+        return matcher.mappingExists(path) || isFolder && matcher.hasMappedChildren(path);
+    }
+
+    private void walk(File dir, IPath relativePath) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (int i = 0; i < children.length; i++) {
+            File child = children[i];
+            boolean isFolder = child.isDirectory();
+            IPath path = relativePath.append(child.getName());
+            if (!isVisited(path, isFolder)) {
+                continue;
+            }
+            copy(child, path, isFolder);
+            if (isFolder) {
+                walk(child, path);
+            }
+        }
+    }
+
+    private void copy(File source, IPath path, boolean isFolder) {
+        stats.examined++;
+        List<FileMapping> mappingList = matcher.getMappings(path, isFolder, false);
+        if (mappingList == null) {
+            return;
+        }
+        // only required if we need to substitute variables
+        boolean textChecked = false;
+        boolean isText = false;
+        for (FileMapping fm : mappingList) {
+            File destination = getDestinationFile(fm, source, path);
+            if (destination == null) {
+                continue;
+            }
+            if (mirror != null) {
+                mirror.add(destination, isFolder);
+            }
+            if (isFolder) {
+                if (!FS.create(destination, false)) {
+                    stats.failed++;
+                    FileSyncPlugin.log("Failed to create external folder '" + destination
+                            + "'", null, IStatus.WARNING);
+                }
+                continue;
+            }
+            boolean substitute = fm.getVariablesPath() != null && fm.getVariables() != null;
+            if (substitute && !textChecked) {
+                isText = isTextFile(source);
+                textChecked = true;
+            }
+            if (copier.isUpToDate(source, destination)) {
+                stats.skipped++;
+            } else if (copier.copy(source, destination, fm, substitute && isText,
+                    encoding)) {
+                stats.copied++;
+                stats.bytes += source.length();
+            } else {
+                stats.failed++;
+            }
+        }
+    }
+
+    private void delete(IPath path) {
+        stats.examined++;
+        // removed files are not known to be files or folders anymore
+        List<FileMapping> mappingList = matcher.getMappings(path, false, false);
+        if (mappingList == null) {
+            mappingList = matcher.getMappings(path, true, false);
+            if (mappingList == null) {
+                return;
+            }
+        }
+        File rootFile = config.getRootPath() == null ? null : config.getRootPath()
+                .toFile();
+        File source = new File(config.getProjectDir(), path.toOSString());
+        for (FileMapping fm : mappingList) {
+            File destination = getDestinationFile(fm, source, path);
+            if (destination == null || destination.equals(rootFile)
+                    || !destination.exists()) {
+                continue;
+            }
+            // directories are deleted only if empty: children are deleted first
+            if (FS.delete(destination, false)) {
+                stats.deleted++;
+            } else if (destination.isFile()) {
+                stats.failed++;
+                FileSyncPlugin.log("Failed to delete the external resource '"
+                        + destination + "'", null, IStatus.WARNING);
+            }
+        }
+    }
+
+    /**
+     * Same as SyncWizard.reconcileMirror(), but without workspace
+     */
+    private void reconcileMirror() {
+        Set<File> roots = DestinationMirror.getRoots(config.getMappings(), config
+                .getRootPath());
+        for (File child : mirror.getOrphans(roots)) {
+            if (FS.delete(child, true)) {
+                stats.deleted++;
+            } else {
+                stats.failed++;
+                FileSyncPlugin.log("Failed to delete orphaned external resource '"
+                        + child + "'", null, IStatus.WARNING);
+            }
+        }
+    }
+
+    /**
+     * @return destination file for given mapping, or null if mapping is not usable
+     * @see SyncWizard#createOperation(List, org.eclipse.core.resources.IResource,
+     *      IPath)
+     */
+    private File getDestinationFile(FileMapping fm, File source, IPath relativePath) {
+        IPath destinationPath = MappingMatcher.getDestinationPath(fm, relativePath,
+                config.getRootPath());
+        if (destinationPath == null) {
+            return null;
+        }
+        File destination = destinationPath.toFile();
+        if (destination.getAbsoluteFile().equals(source.getAbsoluteFile())) {
+            FileSyncPlugin.log("Source and destination are the same: '" + fm.getSourcePath()
+                    + "', please check mapping for project " + config.getProjectDir(),
+                    null, IStatus.WARNING);
+            return null;
+        }
+        return destination;
+    }
+
+    /**
+     * Without content type manager we simply assume that files without zero bytes at
+     * the beginning are text files.
+     */
+    private static boolean isTextFile(File file) {
+        byte[] buf = new byte[TEXT_PROBE_SIZE];
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            int read = in.read(buf);
+            for (int i = 0; i < read; i++) {
+                if (buf[i] == 0) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            FileSyncPlugin.log("Failed to read file '" + file + "'", e, IStatus.WARNING);
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+}